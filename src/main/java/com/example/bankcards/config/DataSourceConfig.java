@@ -0,0 +1,83 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.entity.Card;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Транзакции только на чтение (@Transactional(readOnly = true)) уходят на реплики, остальные — на основную БД.
+ * Соединение берётся лениво, при первом запросе: к этому моменту менеджер транзакций уже пометил его
+ * как read-only, и LazyConnectionDataSourceProxy выбирает источник по этому признаку.
+ * Без app.datasource-replica-urls все соединения идут на основную БД.
+ * Каждое соединение при подключении получает ключ шифрования номеров карт в параметре сеанса {@link Card#ENCRYPTION_KEY_SETTING}.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties,
+                                             @Value("${encryption.secret}") String encryptionSecret) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        dataSource.setConnectionInitSql(encryptionKeyInitSql(encryptionSecret));
+        return dataSource;
+    }
+
+    // Для локальной проверки репликой может быть та же БД под отдельным пулом
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+        @Qualifier("primaryDataSource") DataSource primaryDataSource,
+        DataSourceProperties properties,
+        @Value("${app.datasource-replica-urls:}") List<String> replicaUrls,
+        @Value("${app.datasource-replica-username:${spring.datasource.username}}") String username,
+        @Value("${app.datasource-replica-password:${spring.datasource.password}}") String password,
+        @Value("${app.datasource-replica-pool-size:10}") int poolSize,
+        @Value("${encryption.secret}") String encryptionSecret,
+        MeterRegistry meterRegistry) {
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + replicas.size());
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setJdbcUrl(url.trim());
+            replica.setUsername(username);
+            replica.setPassword(password);
+            replica.setMaximumPoolSize(poolSize);
+            replica.setReadOnly(true);
+            replica.setConnectionInitSql(encryptionKeyInitSql(encryptionSecret));
+            replicas.add(replica);
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                 ReplicaRoutingDataSource replicaRoutingDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        if (replicaRoutingDataSource.hasReplicas()) {
+            dataSource.setReadOnlyDataSource(replicaRoutingDataSource);
+        }
+        return dataSource;
+    }
+
+    // set_config на уровне сеанса: значение живёт, пока пул держит соединение
+    static String encryptionKeyInitSql(String encryptionSecret) {
+        return "SELECT set_config('" + Card.ENCRYPTION_KEY_SETTING + "', '" + encryptionSecret.replace("'", "''") + "', false)";
+    }
+}
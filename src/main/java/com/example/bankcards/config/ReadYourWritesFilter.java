@@ -0,0 +1,89 @@
+package com.example.bankcards.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+import org.springframework.web.filter.OncePerRequestFilter;
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Чтение своих записей при работе с репликами. После фиксации пишущей транзакции ответ получает
+ * заголовок X-Session-LSN с позицией WAL основной БД; клиент, вернувший его в следующих запросах,
+ * читает только с реплик, которые эту позицию уже воспроизвели, а до тех пор — с основной БД.
+ * Запросы без заголовка читают с любой доступной реплики.
+ */
+@Component
+public class ReadYourWritesFilter extends OncePerRequestFilter implements TransactionExecutionListener {
+    public static final String SESSION_LSN_HEADER = "X-Session-LSN";
+
+    private static final Logger log = LoggerFactory.getLogger(ReadYourWritesFilter.class);
+    private static final ThreadLocal<HttpServletResponse> CURRENT_RESPONSE = new ThreadLocal<>();
+
+    private final ReplicaRoutingDataSource replicaRoutingDataSource;
+    private final boolean enabled;
+
+    public ReadYourWritesFilter(ReplicaRoutingDataSource replicaRoutingDataSource,
+                                @Value("${app.read-your-writes-enabled:true}") boolean enabled) {
+        this.replicaRoutingDataSource = replicaRoutingDataSource;
+        this.enabled = enabled && replicaRoutingDataSource.hasReplicas();
+    }
+
+    @Override
+    protected void doFilterInternal(
+        @NonNull HttpServletRequest request,
+        @NonNull HttpServletResponse response,
+        @NonNull FilterChain filterChain) throws ServletException, IOException {
+        if (!enabled) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        ReplicaRoutingDataSource.requireLsn(requiredLsn(request.getHeader(SESSION_LSN_HEADER)));
+        CURRENT_RESPONSE.set(response);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            CURRENT_RESPONSE.remove();
+            ReplicaRoutingDataSource.requireLsn(null);
+        }
+    }
+
+    // Позиция берётся после фиксации, поэтому она не ниже записи о фиксации транзакции
+    @Override
+    public void afterCommit(@NonNull TransactionExecution transaction, Throwable commitFailure) {
+        HttpServletResponse response = CURRENT_RESPONSE.get();
+        if (response == null || commitFailure != null || transaction.isReadOnly()
+            || !transaction.isNewTransaction() || response.isCommitted()) {
+            return;
+        }
+        try {
+            long lsn = replicaRoutingDataSource.currentPrimaryLsn();
+            Long required = ReplicaRoutingDataSource.requiredLsn();
+            // Последующие чтения в этом же запросе тоже должны видеть запись
+            ReplicaRoutingDataSource.requireLsn(required == null ? lsn : Math.max(required, lsn));
+            response.setHeader(SESSION_LSN_HEADER, ReplicaRoutingDataSource.formatLsn(lsn));
+        } catch (SQLException | IllegalArgumentException e) {
+            log.warn("Не удалось получить позицию WAL после фиксации: {}", e.getMessage());
+        }
+    }
+
+    // Некорректный токен не должен ослаблять гарантию: такие чтения идут на основную БД
+    private static Long requiredLsn(String header) {
+        if (header == null || header.isBlank()) {
+            return null;
+        }
+        try {
+            return ReplicaRoutingDataSource.parseLsn(header.trim());
+        } catch (IllegalArgumentException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.bankcards.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Источник соединений для транзакций только на чтение: реплики по кругу, при их недоступности — основная БД.
+ * Позиция воспроизведения WAL каждой реплики опрашивается по расписанию; если запросу нужна позиция не ниже
+ * заданной (чтение своих записей), реплики, которые её ещё не догнали, пропускаются.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    // На основной БД, подключённой как реплика (для локальной проверки), позицией считается текущая запись WAL
+    private static final String REPLAY_LSN_SQL =
+        "SELECT (CASE WHEN pg_is_in_recovery() THEN pg_last_wal_replay_lsn() ELSE pg_current_wal_lsn() END)::text";
+    private static final String PRIMARY_LSN_SQL = "SELECT pg_current_wal_lsn()::text";
+    private static final ThreadLocal<Long> REQUIRED_LSN = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter replicaConnections;
+    private final Counter primaryFallbacks;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<HikariDataSource> replicas, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        this.replicaConnections = meterRegistry.counter("datasource.routing", "target", "replica");
+        this.primaryFallbacks = meterRegistry.counter("datasource.routing", "target", "primary");
+    }
+
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    // Минимальная позиция WAL для чтений текущего потока; null — подходит любая реплика
+    public static void requireLsn(Long lsn) {
+        if (lsn == null) {
+            REQUIRED_LSN.remove();
+        } else {
+            REQUIRED_LSN.set(lsn);
+        }
+    }
+
+    public static Long requiredLsn() {
+        return REQUIRED_LSN.get();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Long required = REQUIRED_LSN.get();
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(replicas.size(), 1));
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!replica.healthy || (required != null && replica.replayLsn < required)) {
+                continue;
+            }
+            try {
+                Connection connection = replica.dataSource.getConnection();
+                replicaConnections.increment();
+                return connection;
+            } catch (SQLException e) {
+                replica.healthy = false;
+                log.warn("Реплика {} недоступна, чтение уходит на другую реплику или основную БД: {}",
+                    replica.dataSource.getPoolName(), e.getMessage());
+            }
+        }
+        primaryFallbacks.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Реплики используют учётные данные из конфигурации пулов");
+    }
+
+    // Вызывается после фиксации записи: эта позиция покрывает запись фиксации транзакции
+    public long currentPrimaryLsn() throws SQLException {
+        try (Connection connection = primary.getConnection()) {
+            return queryLsn(connection, PRIMARY_LSN_SQL);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.datasource-replica-lag-poll-milliseconds:500}")
+    public void refreshReplayLsn() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                replica.replayLsn = queryLsn(connection, REPLAY_LSN_SQL);
+                if (!replica.healthy) {
+                    log.info("Реплика {} снова доступна", replica.dataSource.getPoolName());
+                }
+                replica.healthy = true;
+            } catch (SQLException | IllegalArgumentException e) {
+                if (replica.healthy) {
+                    log.warn("Не удалось получить позицию WAL реплики {}: {}",
+                        replica.dataSource.getPoolName(), e.getMessage());
+                }
+                replica.healthy = false;
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    // Позиция WAL в виде "XXXXXXXX/XXXXXXXX" (pg_lsn) переводится в число для сравнения
+    public static long parseLsn(String lsn) {
+        int separator = lsn == null ? -1 : lsn.indexOf('/');
+        if (separator <= 0 || separator == lsn.length() - 1) {
+            throw new IllegalArgumentException("Некорректная позиция WAL: " + lsn);
+        }
+        long high = Long.parseLong(lsn.substring(0, separator), 16);
+        long low = Long.parseLong(lsn.substring(separator + 1), 16);
+        if (high > 0xFFFFFFFFL || low > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Некорректная позиция WAL: " + lsn);
+        }
+        return high << 32 | low;
+    }
+
+    public static String formatLsn(long lsn) {
+        return Long.toHexString(lsn >>> 32).toUpperCase() + "/" + Long.toHexString(lsn & 0xFFFFFFFFL).toUpperCase();
+    }
+
+    private static long queryLsn(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            return parseLsn(rs.getString(1));
+        }
+    }
+
+    private static final class Replica {
+        private final HikariDataSource dataSource;
+        // До первого опроса реплика считается отстающей от любой требуемой позиции
+        private volatile long replayLsn;
+        private volatile boolean healthy = true;
+
+        private Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+    }
+}
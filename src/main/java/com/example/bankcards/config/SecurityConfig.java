@@ -1,6 +1,12 @@
 package com.example.bankcards.config;
 
+import com.example.bankcards.security.BoundedPasswordEncoder;
+import com.example.bankcards.security.CalibratedBCryptPasswordEncoder;
 import com.example.bankcards.security.JwtAuthenticationFilter;
+import com.example.bankcards.security.RateLimitFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -9,18 +15,20 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import java.time.Duration;
 
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig {
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
+    private final RateLimitFilter rateLimitFilter;
 
-    public SecurityConfig(JwtAuthenticationFilter jwtAuthenticationFilter) {
+    public SecurityConfig(JwtAuthenticationFilter jwtAuthenticationFilter, RateLimitFilter rateLimitFilter) {
         this.jwtAuthenticationFilter = jwtAuthenticationFilter;
+        this.rateLimitFilter = rateLimitFilter;
     }
 
     @Bean
@@ -28,6 +36,9 @@ public class SecurityConfig {
         http
             .csrf(AbstractHttpConfigurer::disable)
             .authorizeHttpRequests(auth -> auth
+                // Асинхронная диспетчеризация лишь завершает уже авторизованный запрос (потоковая выгрузка)
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                .requestMatchers("/api/auth/logout").authenticated()
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/swagger-ui/**", "/v3/api-docs/**").permitAll()
                 .requestMatchers("/api/admin/**").hasRole("ADMIN")
@@ -35,7 +46,8 @@ public class SecurityConfig {
             )
             .sessionManagement(session ->
                 session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
-            .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
+            .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
+            .addFilterAfter(rateLimitFilter, JwtAuthenticationFilter.class);
 
         return http.build();
     }
@@ -45,8 +57,19 @@ public class SecurityConfig {
         return config.getAuthenticationManager();
     }
 
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    // app.bcrypt-cost > 0 фиксирует стоимость, иначе она подбирается при старте под app.bcrypt-target-milliseconds
+    @Bean(destroyMethod = "shutdown")
+    public PasswordEncoder passwordEncoder(@Value("${app.bcrypt-cost:0}") int cost,
+                                           @Value("${app.bcrypt-target-milliseconds:50}") long targetMilliseconds,
+                                           @Value("${app.bcrypt-min-cost:10}") int minCost,
+                                           @Value("${app.bcrypt-max-cost:16}") int maxCost,
+                                           @Value("${app.password-hashing-threads:2}") int threads,
+                                           @Value("${app.password-hashing-queue-capacity:32}") int queueCapacity,
+                                           @Value("${app.password-hashing-retry-after-seconds:1}") long retryAfterSeconds,
+                                           MeterRegistry meterRegistry) {
+        CalibratedBCryptPasswordEncoder bcrypt = cost > 0
+            ? new CalibratedBCryptPasswordEncoder(cost)
+            : CalibratedBCryptPasswordEncoder.calibrate(Duration.ofMillis(targetMilliseconds), minCost, maxCost);
+        return new BoundedPasswordEncoder(bcrypt, threads, queueCapacity, retryAfterSeconds, meterRegistry);
     }
 }
\ No newline at end of file
@@ -1,22 +1,35 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.card.CardExportFormat;
+import com.example.bankcards.dto.card.CardFilterDto;
 import com.example.bankcards.dto.card.CardRequestDto;
 import com.example.bankcards.dto.card.CardResponseDto;
+import com.example.bankcards.dto.card.CardSeekPageDto;
+import com.example.bankcards.dto.card.CardSortKey;
 import com.example.bankcards.dto.user.UserRequestDto;
 import com.example.bankcards.dto.user.UserResponseDto;
 import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.service.CardExportService;
 import com.example.bankcards.service.CardService;
+import com.example.bankcards.service.TokenRevocationService;
 import com.example.bankcards.service.UserService;
+import com.example.bankcards.util.MinorUnits;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -28,10 +41,20 @@ import java.util.List;
 public class AdminController {
     private final CardService cardService;
     private final UserService userService;
+    private final TokenRevocationService tokenRevocationService;
+    private final CardExportService cardExportService;
 
-    public AdminController(CardService cardService, UserService userService) {
+    @Value("${app.card-export-timeout-milliseconds:1800000}")
+    private long exportTimeoutMilliseconds;
+
+    public AdminController(CardService cardService,
+                           UserService userService,
+                           TokenRevocationService tokenRevocationService,
+                           CardExportService cardExportService) {
         this.cardService = cardService;
         this.userService = userService;
+        this.tokenRevocationService = tokenRevocationService;
+        this.cardExportService = cardExportService;
     }
 
     @GetMapping("/cards")
@@ -40,13 +63,27 @@ public class AdminController {
         return ResponseEntity.ok(cardService.getAllCards());
     }
 
+    // Длинный тайм-аут асинхронной обработки задан только для выгрузки, остальные запросы живут с тайм-аутом по умолчанию
+    @GetMapping("/cards/export")
+    @Operation(summary = "Stream all cards as NDJSON or CSV with constant memory use (admin only)")
+    public WebAsyncTask<Void> exportAllCards(
+        @RequestParam(defaultValue = "NDJSON") CardExportFormat format,
+        HttpServletResponse response) {
+        response.setContentType(format.getContentType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"cards." + format.getExtension() + "\"");
+        return new WebAsyncTask<>(exportTimeoutMilliseconds, () -> {
+            cardExportService.export(format, response.getOutputStream());
+            return null;
+        });
+    }
+
     @PostMapping("/cards")
     @Operation(summary = "Create card for any user (admin only)")
     public ResponseEntity<CardResponseDto> createCardForUser(
         @Valid @RequestBody CardRequestDto cardRequestDto,
         @RequestParam String username) {
         return ResponseEntity.status(HttpStatus.CREATED)
-            .body(cardService.createCard(cardRequestDto, username));
+            .body(cardService.createCard(cardRequestDto, userService.getUserByUsername(username).getId()));
     }
 
     @PatchMapping("/cards/{id}/status")
@@ -54,13 +91,21 @@ public class AdminController {
     public ResponseEntity<CardResponseDto> updateAnyCardStatus(
         @PathVariable Long id,
         @RequestParam CardStatus status) {
-        return ResponseEntity.ok(cardService.updateCardStatus(id, status, null));
+        return ResponseEntity.ok(cardService.updateAnyCardStatus(id, status));
+    }
+
+    @PatchMapping("/cards/{id}/balance-shards")
+    @Operation(summary = "Split card balance into shards for high-rate credits, 0 disables (admin only)")
+    public ResponseEntity<CardResponseDto> updateBalanceShards(
+        @PathVariable Long id,
+        @RequestParam int shards) {
+        return ResponseEntity.ok(cardService.updateBalanceShards(id, shards));
     }
 
     @DeleteMapping("/cards/{id}")
     @Operation(summary = "Delete any card (admin only)")
     public ResponseEntity<Void> deleteAnyCard(@PathVariable Long id) {
-        cardService.deleteCard(id, null);
+        cardService.deleteAnyCard(id);
         return ResponseEntity.noContent().build();
     }
 
@@ -78,23 +123,57 @@ public class AdminController {
         return ResponseEntity.noContent().build();
     }
 
+    @PostMapping("/users/{id}/revoke-tokens")
+    @Operation(summary = "Revoke all issued tokens of a user (admin only)")
+    public ResponseEntity<Void> revokeUserTokens(@PathVariable Long id) {
+        userService.revokeTokens(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/tokens/{jti}/revoke")
+    @Operation(summary = "Revoke a single JWT token by its jti claim (admin only)")
+    public ResponseEntity<Void> revokeToken(@PathVariable String jti) {
+        tokenRevocationService.revoke(jti);
+        return ResponseEntity.noContent().build();
+    }
+
     @GetMapping("/cards/filter")
     public ResponseEntity<Page<CardResponseDto>> getAllCardsWithFilters(
         @RequestParam(required = false) CardStatus status,
         @RequestParam(required = false) LocalDate expiryDateFrom,
         @RequestParam(required = false) LocalDate expiryDateTo,
-        @RequestParam(required = false) Double minBalance,
-        @RequestParam(required = false) Double maxBalance,
+        @RequestParam(required = false) BigDecimal minBalance,
+        @RequestParam(required = false) BigDecimal maxBalance,
         Pageable pageable) {
         return ResponseEntity.ok(
             cardService.getAllCardsWithFilters(
                 status,
                 expiryDateFrom,
                 expiryDateTo,
-                minBalance,
-                maxBalance,
+                MinorUnits.fromDecimalParam("minBalance", minBalance),
+                MinorUnits.fromDecimalParam("maxBalance", maxBalance),
                 pageable
             )
         );
     }
+
+    @GetMapping("/cards/filter/seek")
+    @Operation(summary = "Filter all cards with cursor (keyset) pagination; total count only on request (admin only)")
+    public ResponseEntity<CardSeekPageDto> seekAllCardsWithFilters(
+        @RequestParam(required = false) CardStatus status,
+        @RequestParam(required = false) LocalDate expiryDateFrom,
+        @RequestParam(required = false) LocalDate expiryDateTo,
+        @RequestParam(required = false) BigDecimal minBalance,
+        @RequestParam(required = false) BigDecimal maxBalance,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "20") int size,
+        @RequestParam(defaultValue = "ID") CardSortKey sortBy,
+        @RequestParam(defaultValue = "ASC") Sort.Direction direction,
+        @RequestParam(defaultValue = "false") boolean includeTotal) {
+        CardFilterDto filter = new CardFilterDto(status, expiryDateFrom, expiryDateTo,
+            MinorUnits.fromDecimalParam("minBalance", minBalance),
+            MinorUnits.fromDecimalParam("maxBalance", maxBalance),
+            null);
+        return ResponseEntity.ok(cardService.seekCards(filter, sortBy, direction, cursor, size, includeTotal));
+    }
 }
\ No newline at end of file
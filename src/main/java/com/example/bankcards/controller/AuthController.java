@@ -2,12 +2,15 @@ package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.user.UserRequestDto;
 import com.example.bankcards.dto.user.UserResponseDto;
+import com.example.bankcards.security.JwtUserPrincipal;
 import com.example.bankcards.service.AuthService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -36,4 +39,12 @@ public class AuthController {
         UserResponseDto createdUser = authService.register(userRequestDto);
         return ResponseEntity.status(HttpStatus.CREATED).body(createdUser);
     }
+
+    @PostMapping("/logout")
+    @Operation(summary = "Revoke the current JWT token")
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<Void> logout(@AuthenticationPrincipal JwtUserPrincipal principal) {
+        authService.logout(principal);
+        return ResponseEntity.noContent().build();
+    }
 }
\ No newline at end of file
@@ -1,71 +1,149 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.card.CardFilterDto;
 import com.example.bankcards.dto.card.CardRequestDto;
 import com.example.bankcards.dto.card.CardResponseDto;
+import com.example.bankcards.dto.card.CardSeekPageDto;
+import com.example.bankcards.dto.card.CardSortKey;
+import com.example.bankcards.dto.card.ETaggedDto;
+import com.example.bankcards.dto.ledger.LedgerEntryDto;
+import com.example.bankcards.dto.transfer.BatchTransferRequestDto;
+import com.example.bankcards.dto.transfer.BatchTransferResponseDto;
 import com.example.bankcards.dto.transfer.TransferRequestDto;
 import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.security.JwtUserPrincipal;
+import com.example.bankcards.service.CardLedgerService;
 import com.example.bankcards.service.CardService;
+import com.example.bankcards.service.IdempotencyService;
+import com.example.bankcards.util.MinorUnits;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/cards")
 @Tag(name = "Управление карточками", description = "Конечные точки для управления банковскими картами")
 @SecurityRequirement(name = "bearerAuth")
 public class CardController {
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private final CardService cardService;
+    private final IdempotencyService idempotencyService;
+    private final CardLedgerService cardLedgerService;
 
-    public CardController(CardService cardService) {
+    public CardController(CardService cardService,
+                          IdempotencyService idempotencyService,
+                          CardLedgerService cardLedgerService) {
         this.cardService = cardService;
+        this.idempotencyService = idempotencyService;
+        this.cardLedgerService = cardLedgerService;
     }
 
     @GetMapping
     @Operation(summary = "Получите карточки пользователей с разбивкой по страницам")
     public ResponseEntity<Page<CardResponseDto>> getUserCards(
         Pageable pageable,
-        @AuthenticationPrincipal UserDetails userDetails) {
-        return ResponseEntity.ok(cardService.getUserCards(pageable, userDetails.getUsername()));
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+        @AuthenticationPrincipal JwtUserPrincipal principal) {
+        String etag = null;
+        if (ifNoneMatch != null) {
+            etag = cardService.getUserCardsETag(principal.getId());
+            if (matches(ifNoneMatch, etag)) {
+                return notModified(etag);
+            }
+        }
+        return withETag(cardService.getUserCardsWithETag(pageable, principal.getId(), etag));
+    }
+
+    @GetMapping("/seek")
+    @Operation(summary = "Получите карточки пользователей по курсору, без подсчёта общего числа")
+    public ResponseEntity<CardSeekPageDto> seekUserCards(
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "20") int size,
+        @RequestParam(defaultValue = "ID") CardSortKey sortBy,
+        @RequestParam(defaultValue = "ASC") Sort.Direction direction,
+        @RequestParam(defaultValue = "false") boolean includeTotal,
+        @AuthenticationPrincipal JwtUserPrincipal principal) {
+        return ResponseEntity.ok(cardService.seekCards(CardFilterDto.ofUser(principal.getId()),
+            sortBy, direction, cursor, size, includeTotal));
     }
 
     @GetMapping("/all")
     @Operation(summary = "Получите все карточки пользователей без разбивки на страницы")
     public ResponseEntity<List<CardResponseDto>> getAllUserCards(
-        @AuthenticationPrincipal UserDetails userDetails) {
-        return ResponseEntity.ok(cardService.getAllUserCards(userDetails.getUsername()));
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+        @AuthenticationPrincipal JwtUserPrincipal principal) {
+        String etag = null;
+        if (ifNoneMatch != null) {
+            etag = cardService.getUserCardsETag(principal.getId());
+            if (matches(ifNoneMatch, etag)) {
+                return notModified(etag);
+            }
+        }
+        return withETag(cardService.getAllUserCardsWithETag(principal.getId(), etag));
     }
 
     @GetMapping("/{id}")
     @Operation(summary = "Получить карту по идентификатору")
     public ResponseEntity<CardResponseDto> getCardById(
         @PathVariable Long id,
-        @AuthenticationPrincipal UserDetails userDetails) {
-        return ResponseEntity.ok(cardService.getCardById(id, userDetails.getUsername()));
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+        @AuthenticationPrincipal JwtUserPrincipal principal) {
+        String etag = null;
+        if (ifNoneMatch != null) {
+            Optional<String> current = cardService.getCardETag(id, principal.getId());
+            if (current.isPresent() && matches(ifNoneMatch, current.get())) {
+                return notModified(current.get());
+            }
+            etag = current.orElse(null);
+        }
+        return withETag(cardService.getCardWithETag(id, principal.getId(), etag));
+    }
+
+    @GetMapping("/{id}/ledger")
+    @Operation(summary = "Журнал проводок карты на момент времени")
+    public ResponseEntity<Page<LedgerEntryDto>> getCardLedger(
+        @PathVariable Long id,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime asOf,
+        Pageable pageable,
+        @AuthenticationPrincipal JwtUserPrincipal principal) {
+        return ResponseEntity.ok(cardLedgerService.getCardLedger(id, principal.getId(), asOf, pageable));
     }
 
     @PostMapping
     @Operation(summary = "Создайте новую карточку")
     public ResponseEntity<CardResponseDto> createCard(
         @Valid @RequestBody CardRequestDto cardRequestDto,
-        @AuthenticationPrincipal UserDetails userDetails) {
-        return ResponseEntity.ok(cardService.createCard(cardRequestDto, userDetails.getUsername()));
+        @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+        @AuthenticationPrincipal JwtUserPrincipal principal) {
+        return ResponseEntity.ok(idempotencyService.execute(idempotencyKey, principal.getUsername(), "card.create",
+            cardRequestDto, CardResponseDto.class, () -> cardService.createCard(cardRequestDto, principal.getId())));
     }
 
     @PatchMapping("/{id}/status")
@@ -73,16 +151,16 @@ public class CardController {
     public ResponseEntity<CardResponseDto> updateCardStatus(
         @PathVariable Long id,
         @RequestParam CardStatus status,
-        @AuthenticationPrincipal UserDetails userDetails) {
-        return ResponseEntity.ok(cardService.updateCardStatus(id, status, userDetails.getUsername()));
+        @AuthenticationPrincipal JwtUserPrincipal principal) {
+        return ResponseEntity.ok(cardService.updateCardStatus(id, status, principal.getId()));
     }
 
     @DeleteMapping("/{id}")
     @Operation(summary = "Удалить карточку")
     public ResponseEntity<Void> deleteCard(
         @PathVariable Long id,
-        @AuthenticationPrincipal UserDetails userDetails) {
-        cardService.deleteCard(id, userDetails.getUsername());
+        @AuthenticationPrincipal JwtUserPrincipal principal) {
+        cardService.deleteCard(id, principal.getId());
         return ResponseEntity.noContent().build();
     }
 
@@ -90,23 +168,83 @@ public class CardController {
     @Operation(summary = "Перевод между картами пользователя")
     public ResponseEntity<Void> transferBetweenCards(
         @Valid @RequestBody TransferRequestDto transferRequest,
-        @AuthenticationPrincipal UserDetails userDetails) {
-        cardService.transferBetweenCards(transferRequest, userDetails.getUsername());
+        @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+        @AuthenticationPrincipal JwtUserPrincipal principal) {
+        idempotencyService.execute(idempotencyKey, principal.getUsername(), "card.transfer", transferRequest,
+            Void.class, () -> {
+                cardService.transferBetweenCards(transferRequest, principal.getId());
+                return null;
+            });
         return ResponseEntity.noContent().build();
     }
 
+    @PostMapping("/transfer/batch")
+    @Operation(summary = "Пакетный перевод между картами пользователя в одной транзакции")
+    public ResponseEntity<BatchTransferResponseDto> transferBatch(
+        @Valid @RequestBody BatchTransferRequestDto batchRequest,
+        @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+        @AuthenticationPrincipal JwtUserPrincipal principal) {
+        return ResponseEntity.ok(idempotencyService.execute(idempotencyKey, principal.getUsername(),
+            "card.transfer.batch", batchRequest, BatchTransferResponseDto.class,
+            () -> cardService.transferBatch(batchRequest, principal.getId())));
+    }
+
     @GetMapping("/filter")
     public ResponseEntity<Page<CardResponseDto>> filterCards(
         @RequestParam(required = false) CardStatus status,
         @RequestParam(required = false) LocalDate expiryDateFrom,
         @RequestParam(required = false) LocalDate expiryDateTo,
-        @RequestParam(required = false) Double minBalance,
-        @RequestParam(required = false) Double maxBalance,
+        @RequestParam(required = false) BigDecimal minBalance,
+        @RequestParam(required = false) BigDecimal maxBalance,
         Pageable pageable,
-        @AuthenticationPrincipal UserDetails userDetails) {
+        @AuthenticationPrincipal JwtUserPrincipal principal) {
         return ResponseEntity.ok(cardService.filterUserCards(
             status, expiryDateFrom, expiryDateTo,
-            minBalance, maxBalance,
-            userDetails.getUsername(), pageable));
+            MinorUnits.fromDecimalParam("minBalance", minBalance),
+            MinorUnits.fromDecimalParam("maxBalance", maxBalance),
+            principal.getId(), pageable));
+    }
+
+    @GetMapping("/filter/seek")
+    @Operation(summary = "Фильтр карточек пользователя по курсору")
+    public ResponseEntity<CardSeekPageDto> seekFilteredCards(
+        @RequestParam(required = false) CardStatus status,
+        @RequestParam(required = false) LocalDate expiryDateFrom,
+        @RequestParam(required = false) LocalDate expiryDateTo,
+        @RequestParam(required = false) BigDecimal minBalance,
+        @RequestParam(required = false) BigDecimal maxBalance,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "20") int size,
+        @RequestParam(defaultValue = "ID") CardSortKey sortBy,
+        @RequestParam(defaultValue = "ASC") Sort.Direction direction,
+        @RequestParam(defaultValue = "false") boolean includeTotal,
+        @AuthenticationPrincipal JwtUserPrincipal principal) {
+        CardFilterDto filter = new CardFilterDto(status, expiryDateFrom, expiryDateTo,
+            MinorUnits.fromDecimalParam("minBalance", minBalance),
+            MinorUnits.fromDecimalParam("maxBalance", maxBalance),
+            principal.getId());
+        return ResponseEntity.ok(cardService.seekCards(filter, sortBy, direction, cursor, size, includeTotal));
+    }
+
+    // Условный GET: If-None-Match сверяется с версией из БД до загрузки карт (слабое сравнение, RFC 9110)
+    private static boolean matches(String ifNoneMatch, String etag) {
+        ETag current = new ETag(etag, false);
+        return ETag.parse(ifNoneMatch).stream()
+            .anyMatch(tag -> tag.isWildcard() || tag.compare(current, false));
+    }
+
+    private static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+            .eTag(etag)
+            .cacheControl(CacheControl.noCache().cachePrivate())
+            .build();
+    }
+
+    // no-cache: клиент может хранить ответ, но обязан перепроверять его по ETag
+    private static <T> ResponseEntity<T> withETag(ETaggedDto<T> response) {
+        return ResponseEntity.ok()
+            .eTag(response.etag())
+            .cacheControl(CacheControl.noCache().cachePrivate())
+            .body(response.body());
     }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package com.example.bankcards.dto.card;
+
+import com.example.bankcards.exception.ValidationException;
+import org.springframework.data.domain.Sort;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+// Позиция последней выданной строки: значение ключа сортировки и id. Для клиента — непрозрачный токен
+public record CardCursor(CardSortKey sortKey, Sort.Direction direction, Comparable<?> value, long id) {
+    private static final String SEPARATOR = "|";
+
+    public static CardCursor after(CardSummaryDto card, CardSortKey sortKey, Sort.Direction direction) {
+        return new CardCursor(sortKey, direction, sortKey.valueOf(card), card.id());
+    }
+
+    public String encode() {
+        String raw = sortKey + SEPARATOR + direction + SEPARATOR + value + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Курсор действителен только для той же сортировки, с которой он был выдан
+    public static CardCursor decode(String token, CardSortKey sortKey, Sort.Direction direction) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+                .split("\\" + SEPARATOR, -1);
+            if (parts.length == 4 && CardSortKey.valueOf(parts[0]) == sortKey
+                && Sort.Direction.valueOf(parts[1]) == direction) {
+                return new CardCursor(sortKey, direction, sortKey.parse(parts[2]), Long.parseLong(parts[3]));
+            }
+        } catch (RuntimeException e) {
+            // ниже — общий ответ для повреждённого курсора
+        }
+        throw new ValidationException("Некорректный курсор",
+            Map.of("cursor", "Курсор повреждён или выдан для другой сортировки"));
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.bankcards.dto.card;
+
+import com.example.bankcards.entity.enums.CardStatus;
+import java.time.LocalDate;
+
+// Параметры фильтра карт; null — условие не задано. userId == null — выборка администратора по всем картам
+public record CardFilterDto(
+    CardStatus status,
+    LocalDate expiryDateFrom,
+    LocalDate expiryDateTo,
+    Long minBalance,
+    Long maxBalance,
+    Long userId
+) {
+    public static CardFilterDto ofUser(Long userId) {
+        return new CardFilterDto(null, null, null, null, null, userId);
+    }
+}
@@ -1,5 +1,9 @@
 package com.example.bankcards.dto.card;
 
+import com.example.bankcards.util.MinorUnitsJsonDeserializer;
+import com.example.bankcards.util.MinorUnitsJsonSerializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.Future;
 import jakarta.validation.constraints.NotBlank;
@@ -42,11 +46,11 @@ public class CardRequestDto {
     }
 
     @PositiveOrZero(message = "Баланс не может быть отрицательным")
-    public double getBalance() {
+    public long getBalance() {
         return balance;
     }
 
-    public void setBalance(@PositiveOrZero(message = "Баланс не может быть отрицательным") double balance) {
+    public void setBalance(@PositiveOrZero(message = "Баланс не может быть отрицательным") long balance) {
         this.balance = balance;
     }
 
@@ -55,6 +59,8 @@ public class CardRequestDto {
     private LocalDate expiryDate;
 
     @PositiveOrZero(message = "Баланс не может быть отрицательным")
-    @Schema(description = "Начальный баланс карты", example = "1000.0")
-    private double balance;
+    @Schema(description = "Начальный баланс карты", type = "number", example = "1000.00")
+    @JsonSerialize(using = MinorUnitsJsonSerializer.class)
+    @JsonDeserialize(using = MinorUnitsJsonDeserializer.class)
+    private long balance;
 }
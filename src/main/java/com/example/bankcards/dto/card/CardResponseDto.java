@@ -1,6 +1,10 @@
 package com.example.bankcards.dto.card;
 
 import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.util.MinorUnitsJsonDeserializer;
+import com.example.bankcards.util.MinorUnitsJsonSerializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import io.swagger.v3.oas.annotations.media.Schema;
 import java.time.LocalDate;
 
@@ -55,14 +59,16 @@ public class CardResponseDto {
         this.status = status;
     }
 
-    public double getBalance() {
+    public long getBalance() {
         return balance;
     }
 
-    public void setBalance(double balance) {
+    public void setBalance(long balance) {
         this.balance = balance;
     }
 
-    @Schema(description = "Баланс карты", example = "1000.0")
-    private double balance;
+    @Schema(description = "Баланс карты", type = "number", example = "1000.00")
+    @JsonSerialize(using = MinorUnitsJsonSerializer.class)
+    @JsonDeserialize(using = MinorUnitsJsonDeserializer.class)
+    private long balance;
 }
\ No newline at end of file
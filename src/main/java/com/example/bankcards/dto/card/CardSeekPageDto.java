@@ -0,0 +1,39 @@
+package com.example.bankcards.dto.card;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.List;
+
+public class CardSeekPageDto {
+    private List<CardResponseDto> items;
+
+    // null — страница последняя
+    private String nextCursor;
+
+    // Заполняется только по запросу includeTotal=true: подсчёт требует отдельного COUNT(*)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long totalElements;
+
+    public List<CardResponseDto> getItems() {
+        return items;
+    }
+
+    public void setItems(List<CardResponseDto> items) {
+        this.items = items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public Long getTotalElements() {
+        return totalElements;
+    }
+
+    public void setTotalElements(Long totalElements) {
+        this.totalElements = totalElements;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.bankcards.dto.card;
+
+import java.time.LocalDate;
+
+// Ключи сортировки постраничной выдачи по курсору; порядок всегда дополняется id для однозначности
+public enum CardSortKey {
+    ID("id"),
+    EXPIRY_DATE("expiryDate"),
+    BALANCE("balance");
+
+    private final String attribute;
+
+    CardSortKey(String attribute) {
+        this.attribute = attribute;
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    public Comparable<?> valueOf(CardSummaryDto card) {
+        return switch (this) {
+            case ID -> card.id();
+            case EXPIRY_DATE -> card.expiryDate();
+            case BALANCE -> card.balance();
+        };
+    }
+
+    public Comparable<?> parse(String value) {
+        return switch (this) {
+            case ID, BALANCE -> Long.valueOf(value);
+            case EXPIRY_DATE -> LocalDate.parse(value);
+        };
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.bankcards.dto.card;
+
+import com.example.bankcards.entity.enums.CardStatus;
+import java.time.LocalDate;
+
+// Проекция карты для списков: card_number не выбирается, поэтому pgp_sym_decrypt не вызывается.
+// balance — основная строка карты (по ней сортируют и строят курсор), pendingBalance — сумма её подбалансов
+public record CardSummaryDto(
+    Long id,
+    String cardLast4,
+    String holderName,
+    LocalDate expiryDate,
+    CardStatus status,
+    long balance,
+    long pendingBalance
+) {
+}
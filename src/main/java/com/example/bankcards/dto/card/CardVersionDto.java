@@ -0,0 +1,6 @@
+package com.example.bankcards.dto.card;
+
+// Версия строки карты для ETag: номер из последовательности cards_version_seq, меняется при каждом изменении строки.
+// Зачисления на горячую карту строку не меняют, поэтому к версии добавляется сумма подбалансов
+public record CardVersionDto(long version, long pendingBalance) {
+}
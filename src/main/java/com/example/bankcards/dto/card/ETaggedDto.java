@@ -0,0 +1,5 @@
+package com.example.bankcards.dto.card;
+
+// Ответ вместе с ETag, вычисленным в том же снимке данных
+public record ETaggedDto<T>(String etag, T body) {
+}
@@ -0,0 +1,6 @@
+package com.example.bankcards.dto.card;
+
+// Агрегированная версия карт пользователя. Версии растут монотонно, поэтому любое изменение, вставка или
+// удаление карты меняет пару (число карт, сумма версий)
+public record UserCardsVersionDto(long cardCount, long versionSum) {
+}
@@ -0,0 +1,99 @@
+package com.example.bankcards.dto.ledger;
+
+import com.example.bankcards.entity.enums.LedgerEntryType;
+import com.example.bankcards.util.MinorUnitsJsonDeserializer;
+import com.example.bankcards.util.MinorUnitsJsonSerializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public class LedgerEntryDto {
+    private Long id;
+
+    private UUID transferId;
+
+    private Long cardId;
+
+    private Long counterpartyCardId;
+
+    private LedgerEntryType entryType;
+
+    @Schema(description = "Сумма проводки: положительная — зачисление, отрицательная — списание", type = "number", example = "-100.00")
+    @JsonSerialize(using = MinorUnitsJsonSerializer.class)
+    @JsonDeserialize(using = MinorUnitsJsonDeserializer.class)
+    private long amount;
+
+    @Schema(description = "Баланс карты после проводки; null — зачисление на горячую карту ещё не сведено в основной баланс",
+        type = "number", example = "900.00", nullable = true)
+    @JsonSerialize(using = MinorUnitsJsonSerializer.class)
+    @JsonDeserialize(using = MinorUnitsJsonDeserializer.class)
+    private Long balanceAfter;
+
+    private LocalDateTime createdAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public UUID getTransferId() {
+        return transferId;
+    }
+
+    public void setTransferId(UUID transferId) {
+        this.transferId = transferId;
+    }
+
+    public Long getCardId() {
+        return cardId;
+    }
+
+    public void setCardId(Long cardId) {
+        this.cardId = cardId;
+    }
+
+    public Long getCounterpartyCardId() {
+        return counterpartyCardId;
+    }
+
+    public void setCounterpartyCardId(Long counterpartyCardId) {
+        this.counterpartyCardId = counterpartyCardId;
+    }
+
+    public LedgerEntryType getEntryType() {
+        return entryType;
+    }
+
+    public void setEntryType(LedgerEntryType entryType) {
+        this.entryType = entryType;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public void setAmount(long amount) {
+        this.amount = amount;
+    }
+
+    public Long getBalanceAfter() {
+        return balanceAfter;
+    }
+
+    public void setBalanceAfter(Long balanceAfter) {
+        this.balanceAfter = balanceAfter;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.bankcards.dto.transfer;
+
+public enum BatchTransferMode {
+    ATOMIC,
+    BEST_EFFORT
+}
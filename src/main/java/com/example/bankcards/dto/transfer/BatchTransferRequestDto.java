@@ -0,0 +1,31 @@
+package com.example.bankcards.dto.transfer;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import java.util.List;
+
+public class BatchTransferRequestDto {
+    @NotEmpty(message = "Список переводов не может быть пустым")
+    @Valid
+    private List<TransferRequestDto> transfers;
+
+    @Schema(description = "ATOMIC — все переводы или ни одного, BEST_EFFORT — применяются только успешные", example = "ATOMIC")
+    private BatchTransferMode mode;
+
+    public List<TransferRequestDto> getTransfers() {
+        return transfers;
+    }
+
+    public void setTransfers(List<TransferRequestDto> transfers) {
+        this.transfers = transfers;
+    }
+
+    public BatchTransferMode getMode() {
+        return mode;
+    }
+
+    public void setMode(BatchTransferMode mode) {
+        this.mode = mode;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.bankcards.dto.transfer;
+
+import java.util.List;
+
+public class BatchTransferResponseDto {
+    private BatchTransferMode mode;
+
+    private boolean committed;
+
+    private int applied;
+
+    private int failed;
+
+    private List<TransferResultDto> results;
+
+    public BatchTransferMode getMode() {
+        return mode;
+    }
+
+    public void setMode(BatchTransferMode mode) {
+        this.mode = mode;
+    }
+
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    public void setCommitted(boolean committed) {
+        this.committed = committed;
+    }
+
+    public int getApplied() {
+        return applied;
+    }
+
+    public void setApplied(int applied) {
+        this.applied = applied;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    public List<TransferResultDto> getResults() {
+        return results;
+    }
+
+    public void setResults(List<TransferResultDto> results) {
+        this.results = results;
+    }
+}
@@ -1,5 +1,9 @@
 package com.example.bankcards.dto.transfer;
 
+import com.example.bankcards.util.MinorUnitsJsonDeserializer;
+import com.example.bankcards.util.MinorUnitsJsonSerializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
@@ -12,11 +16,11 @@ public class TransferRequestDto {
     private Long destinationCardId;
 
     @Positive(message = "Сумма перевода должна быть положительной")
-    public double getAmount() {
+    public long getAmount() {
         return amount;
     }
 
-    public void setAmount(@Positive(message = "Сумма перевода должна быть положительной") double amount) {
+    public void setAmount(@Positive(message = "Сумма перевода должна быть положительной") long amount) {
         this.amount = amount;
     }
 
@@ -37,6 +41,8 @@ public class TransferRequestDto {
     }
 
     @Positive(message = "Сумма перевода должна быть положительной")
-    @Schema(description = "Сумма перевода", example = "100.0")
-    private double amount;
+    @Schema(description = "Сумма перевода", type = "number", example = "100.00")
+    @JsonSerialize(using = MinorUnitsJsonSerializer.class)
+    @JsonDeserialize(using = MinorUnitsJsonDeserializer.class)
+    private long amount;
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.example.bankcards.dto.transfer;
+
+public class TransferResultDto {
+    private int index;
+
+    private Long sourceCardId;
+
+    private Long destinationCardId;
+
+    private TransferResultStatus status;
+
+    private String message;
+
+    public TransferResultDto() {
+    }
+
+    public TransferResultDto(int index, TransferRequestDto transfer, TransferResultStatus status, String message) {
+        this.index = index;
+        this.sourceCardId = transfer.getSourceCardId();
+        this.destinationCardId = transfer.getDestinationCardId();
+        this.status = status;
+        this.message = message;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public Long getSourceCardId() {
+        return sourceCardId;
+    }
+
+    public void setSourceCardId(Long sourceCardId) {
+        this.sourceCardId = sourceCardId;
+    }
+
+    public Long getDestinationCardId() {
+        return destinationCardId;
+    }
+
+    public void setDestinationCardId(Long destinationCardId) {
+        this.destinationCardId = destinationCardId;
+    }
+
+    public TransferResultStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(TransferResultStatus status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.bankcards.dto.transfer;
+
+public enum TransferResultStatus {
+    APPLIED,
+    FAILED,
+    ROLLED_BACK
+}
@@ -1,7 +1,9 @@
 package com.example.bankcards.entity;
 
 import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.util.MinorUnitsConverter;
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
@@ -18,17 +20,28 @@ import java.time.LocalDate;
 @Entity
 @Table(name = "cards")
 public class Card {
+    // Ключ шифрования номера — параметр сеанса PostgreSQL, который пулы соединений задают при подключении
+    // (DataSourceConfig): в @ColumnTransformer заполнители свойств Spring не подставляются
+    public static final String ENCRYPTION_KEY_SETTING = "app.encryption_secret";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     @Column(name = "card_number", nullable = false)
     @ColumnTransformer(
-        read = "pgp_sym_decrypt(card_number::bytea, '${encryption.secret}')",
-        write = "pgp_sym_encrypt(?, '${encryption.secret}')"
+        read = "pgp_sym_decrypt(card_number::bytea, current_setting('" + ENCRYPTION_KEY_SETTING + "'))",
+        write = "pgp_sym_encrypt(?, current_setting('" + ENCRYPTION_KEY_SETTING + "'))"
     )
     private String cardNumber;
 
+    @Column(name = "card_number_hash")
+    private String cardNumberHash;
+
+    // Хранится открыто для маскирования в списках без расшифровки card_number
+    @Column(name = "card_last4", length = 4)
+    private String cardLast4;
+
     @Column(name = "holder_name", nullable = false)
     private String holderName;
 
@@ -40,7 +53,15 @@ public class Card {
     private CardStatus status;
 
     @Column(name = "balance", nullable = false, columnDefinition = "numeric(19,2)")
-    private double balance;
+    @Convert(converter = MinorUnitsConverter.class)
+    private long balance;
+
+    @Column(name = "balance_shards", nullable = false)
+    private int balanceShards;
+
+    // Заполняется в БД: значение по умолчанию и триггер trg_cards_bump_version
+    @Column(name = "version", nullable = false, insertable = false, updatable = false)
+    private long version;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
@@ -62,6 +83,22 @@ public class Card {
         this.cardNumber = cardNumber;
     }
 
+    public String getCardNumberHash() {
+        return cardNumberHash;
+    }
+
+    public void setCardNumberHash(String cardNumberHash) {
+        this.cardNumberHash = cardNumberHash;
+    }
+
+    public String getCardLast4() {
+        return cardLast4;
+    }
+
+    public void setCardLast4(String cardLast4) {
+        this.cardLast4 = cardLast4;
+    }
+
     public String getHolderName() {
         return holderName;
     }
@@ -86,14 +123,38 @@ public class Card {
         this.status = status;
     }
 
-    public double getBalance() {
+    // Статус с учётом срока действия: сохранённый статус может отставать до ночной сверки
+    public CardStatus effectiveStatus(LocalDate today) {
+        return effectiveStatus(status, expiryDate, today);
+    }
+
+    public static CardStatus effectiveStatus(CardStatus status, LocalDate expiryDate, LocalDate today) {
+        if (status != CardStatus.EXPIRED && expiryDate != null && expiryDate.isBefore(today)) {
+            return CardStatus.EXPIRED;
+        }
+        return status;
+    }
+
+    public long getBalance() {
         return balance;
     }
 
-    public void setBalance(double balance) {
+    public void setBalance(long balance) {
         this.balance = balance;
     }
 
+    public int getBalanceShards() {
+        return balanceShards;
+    }
+
+    public void setBalanceShards(int balanceShards) {
+        this.balanceShards = balanceShards;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
     public User getUser() {
         return user;
     }
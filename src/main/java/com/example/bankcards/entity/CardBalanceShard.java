@@ -0,0 +1,73 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import org.hibernate.annotations.Immutable;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Objects;
+
+// Подбаланс горячей карты. Пишется только через JDBC в CardBalanceShardService;
+// сущность нужна проекциям карт, которые суммируют подбалансы коррелированным подзапросом.
+// Баланс хранится в рублях без MinorUnitsConverter: к агрегату конвертер не применяется,
+// поэтому сумма переводится в копейки в самом запросе
+@Entity
+@Immutable
+@Table(name = "card_balance_shards")
+@IdClass(CardBalanceShard.Key.class)
+public class CardBalanceShard {
+    @Id
+    @Column(name = "card_id")
+    private Long cardId;
+
+    @Id
+    @Column(name = "shard")
+    private int shard;
+
+    @Column(name = "balance", nullable = false, columnDefinition = "numeric(19,2)")
+    private BigDecimal balance;
+
+    public Long getCardId() {
+        return cardId;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public static class Key implements Serializable {
+        private Long cardId;
+        private int shard;
+
+        public Key() {
+        }
+
+        public Key(Long cardId, int shard) {
+            this.cardId = cardId;
+            this.shard = shard;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key key)) {
+                return false;
+            }
+            return shard == key.shard && Objects.equals(cardId, key.cardId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(cardId, shard);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.bankcards.entity;
+
+import com.example.bankcards.entity.enums.LedgerEntryType;
+import com.example.bankcards.util.MinorUnitsConverter;
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import org.hibernate.annotations.Immutable;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Immutable
+@Table(name = "card_ledger_entries")
+public class CardLedgerEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "transfer_id", nullable = false)
+    private UUID transferId;
+
+    @Column(name = "card_id", nullable = false)
+    private Long cardId;
+
+    @Column(name = "counterparty_card_id")
+    private Long counterpartyCardId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "entry_type", nullable = false)
+    private LedgerEntryType entryType;
+
+    @Column(name = "amount", nullable = false, columnDefinition = "numeric(19,2)")
+    @Convert(converter = MinorUnitsConverter.class)
+    private long amount;
+
+    // null — зачисление на горячую карту, ещё не сведённое в основной баланс
+    @Column(name = "balance_after", columnDefinition = "numeric(19,2)")
+    @Convert(converter = MinorUnitsConverter.class)
+    private Long balanceAfter;
+
+    @Column(name = "created_at", nullable = false, insertable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    public CardLedgerEntry() {
+    }
+
+    public CardLedgerEntry(UUID transferId, Long cardId, Long counterpartyCardId,
+                           LedgerEntryType entryType, long amount, Long balanceAfter) {
+        this.transferId = transferId;
+        this.cardId = cardId;
+        this.counterpartyCardId = counterpartyCardId;
+        this.entryType = entryType;
+        this.amount = amount;
+        this.balanceAfter = balanceAfter;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public UUID getTransferId() {
+        return transferId;
+    }
+
+    public Long getCardId() {
+        return cardId;
+    }
+
+    public Long getCounterpartyCardId() {
+        return counterpartyCardId;
+    }
+
+    public LedgerEntryType getEntryType() {
+        return entryType;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public Long getBalanceAfter() {
+        return balanceAfter;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
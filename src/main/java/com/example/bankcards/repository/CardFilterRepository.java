@@ -0,0 +1,23 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.dto.card.CardCursor;
+import com.example.bankcards.dto.card.CardFilterDto;
+import com.example.bankcards.dto.card.CardSortKey;
+import com.example.bankcards.dto.card.CardSummaryDto;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import java.time.LocalDate;
+import java.util.List;
+
+// Запросы фильтра карт строятся через Criteria API: в SQL попадают только заданные условия,
+// поэтому PostgreSQL планирует каждую комбинацию отдельно и может использовать индексы
+public interface CardFilterRepository {
+    Page<CardSummaryDto> findSummaries(CardFilterDto filter, LocalDate today, Pageable pageable);
+
+    // Страница после курсора (after == null — первая страница) без OFFSET и без COUNT(*)
+    List<CardSummaryDto> seekSummaries(CardFilterDto filter, LocalDate today, CardSortKey sortKey,
+                                       Sort.Direction direction, CardCursor after, int limit);
+
+    long countSummaries(CardFilterDto filter, LocalDate today);
+}
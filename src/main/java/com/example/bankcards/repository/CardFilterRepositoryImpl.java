@@ -0,0 +1,166 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.dto.card.CardCursor;
+import com.example.bankcards.dto.card.CardFilterDto;
+import com.example.bankcards.dto.card.CardSortKey;
+import com.example.bankcards.dto.card.CardSummaryDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardBalanceShard;
+import com.example.bankcards.entity.enums.CardStatus;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CompoundSelection;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Фильтр карт на Criteria API. Условия добавляются только для заданных параметров, а статус с учётом срока
+ * действия раскрывается в сравнения по status и expiry_date, которые покрываются индексами.
+ * Постраничная выдача по курсору (keyset) начинается с условия (ключ, id) после последней выданной строки,
+ * поэтому глубина страницы не влияет на стоимость запроса.
+ * Все запросы — проекции с подсказками, как у {@link ReadOnlyQuery}.
+ */
+public class CardFilterRepositoryImpl implements CardFilterRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<CardSummaryDto> findSummaries(CardFilterDto filter, LocalDate today, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<CardSummaryDto> query = cb.createQuery(CardSummaryDto.class);
+        Root<Card> card = query.from(Card.class);
+        query.select(summary(cb, query, card))
+            .where(filterPredicates(cb, card, filter, today).toArray(Predicate[]::new))
+            .orderBy(QueryUtils.toOrders(pageable.getSort(), card, cb));
+
+        TypedQuery<CardSummaryDto> typedQuery = readOnly(entityManager.createQuery(query));
+        if (pageable.isPaged()) {
+            typedQuery.setFirstResult((int) pageable.getOffset()).setMaxResults(pageable.getPageSize());
+        }
+        return PageableExecutionUtils.getPage(typedQuery.getResultList(), pageable,
+            () -> countSummaries(filter, today));
+    }
+
+    @Override
+    public List<CardSummaryDto> seekSummaries(CardFilterDto filter, LocalDate today, CardSortKey sortKey,
+                                              Sort.Direction direction, CardCursor after, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<CardSummaryDto> query = cb.createQuery(CardSummaryDto.class);
+        Root<Card> card = query.from(Card.class);
+        query.select(summary(cb, query, card));
+
+        List<Predicate> predicates = filterPredicates(cb, card, filter, today);
+        Expression<Long> id = card.get("id");
+        boolean ascending = direction.isAscending();
+        if (sortKey == CardSortKey.ID) {
+            if (after != null) {
+                predicates.add(ascending ? cb.greaterThan(id, after.id()) : cb.lessThan(id, after.id()));
+            }
+            query.orderBy(ascending ? cb.asc(id) : cb.desc(id));
+        } else {
+            Expression<Comparable<Object>> key = card.get(sortKey.getAttribute());
+            if (after != null) {
+                predicates.add(afterKey(cb, key, id, after, ascending));
+            }
+            query.orderBy(ascending ? cb.asc(key) : cb.desc(key), ascending ? cb.asc(id) : cb.desc(id));
+        }
+        query.where(predicates.toArray(Predicate[]::new));
+
+        return readOnly(entityManager.createQuery(query)).setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public long countSummaries(CardFilterDto filter, LocalDate today) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<Card> card = query.from(Card.class);
+        query.select(cb.count(card)).where(filterPredicates(cb, card, filter, today).toArray(Predicate[]::new));
+        return readOnly(entityManager.createQuery(query)).getSingleResult();
+    }
+
+    private static <T> TypedQuery<T> readOnly(TypedQuery<T> query) {
+        return query.setHint(HibernateHints.HINT_READ_ONLY, true)
+            .setHint(HibernateHints.HINT_FLUSH_MODE, "COMMIT");
+    }
+
+    private CompoundSelection<CardSummaryDto> summary(CriteriaBuilder cb, CriteriaQuery<?> query, Root<Card> card) {
+        return cb.construct(CardSummaryDto.class,
+            card.get("id"), card.get("cardLast4"), card.get("holderName"), card.get("expiryDate"),
+            card.get("status"), card.get("balance"), pendingBalance(cb, query, card));
+    }
+
+    // То же, что CardRepository.PENDING_BALANCE: подбалансы суммируются только у строк с balance_shards > 0
+    private Expression<Long> pendingBalance(CriteriaBuilder cb, CriteriaQuery<?> query, Root<Card> card) {
+        Subquery<Long> shards = query.subquery(Long.class);
+        Root<CardBalanceShard> shard = shards.from(CardBalanceShard.class);
+        Expression<BigDecimal> sum = cb.coalesce(cb.sum(shard.<BigDecimal>get("balance")), cb.literal(BigDecimal.ZERO));
+        shards.select(cb.prod(sum, cb.literal(BigDecimal.valueOf(100))).as(Long.class))
+            .where(cb.equal(shard.get("cardId"), card.get("id")));
+        return cb.<Long>selectCase()
+            .when(cb.gt(card.get("balanceShards"), cb.literal(0)), shards)
+            .otherwise(cb.literal(0L));
+    }
+
+    // key >= v AND (key > v OR id > lastId): избыточная граница key >= v даёт индексу (key, id) точку входа,
+    // а не фильтрацию всех строк до курсора
+    @SuppressWarnings("unchecked")
+    private Predicate afterKey(CriteriaBuilder cb, Expression<Comparable<Object>> key, Expression<Long> id,
+                               CardCursor after, boolean ascending) {
+        Comparable<Object> value = (Comparable<Object>) after.value();
+        if (ascending) {
+            return cb.and(cb.greaterThanOrEqualTo(key, value),
+                cb.or(cb.greaterThan(key, value), cb.greaterThan(id, after.id())));
+        }
+        return cb.and(cb.lessThanOrEqualTo(key, value),
+            cb.or(cb.lessThan(key, value), cb.lessThan(id, after.id())));
+    }
+
+    // Карта считается EXPIRED и до ночной сверки, если срок уже прошёл. Вместо CASE по статусу условие
+    // записано сравнениями столбцов: status = :s AND expiry_date >= :today (или OR для EXPIRED)
+    private Predicate effectiveStatusIs(CriteriaBuilder cb, Root<Card> card, CardStatus status, LocalDate today) {
+        if (status == CardStatus.EXPIRED) {
+            return cb.or(cb.equal(card.get("status"), CardStatus.EXPIRED),
+                cb.lessThan(card.get("expiryDate"), today));
+        }
+        return cb.and(cb.equal(card.get("status"), status),
+            cb.greaterThanOrEqualTo(card.get("expiryDate"), today));
+    }
+
+    private List<Predicate> filterPredicates(CriteriaBuilder cb, Root<Card> card, CardFilterDto filter, LocalDate today) {
+        List<Predicate> predicates = new ArrayList<>();
+        if (filter.userId() != null) {
+            predicates.add(cb.equal(card.get("user").get("id"), filter.userId()));
+        }
+        if (filter.status() != null) {
+            predicates.add(effectiveStatusIs(cb, card, filter.status(), today));
+        }
+        if (filter.expiryDateFrom() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(card.get("expiryDate"), filter.expiryDateFrom()));
+        }
+        if (filter.expiryDateTo() != null) {
+            predicates.add(cb.lessThanOrEqualTo(card.get("expiryDate"), filter.expiryDateTo()));
+        }
+        if (filter.minBalance() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(card.get("balance"), filter.minBalance()));
+        }
+        if (filter.maxBalance() != null) {
+            predicates.add(cb.lessThanOrEqualTo(card.get("balance"), filter.maxBalance()));
+        }
+        return predicates;
+    }
+}
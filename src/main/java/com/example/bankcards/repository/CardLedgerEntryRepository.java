@@ -0,0 +1,19 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.CardLedgerEntry;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+
+@Repository
+public interface CardLedgerEntryRepository extends JpaRepository<CardLedgerEntry, Long> {
+    @Query("SELECT e FROM CardLedgerEntry e WHERE e.cardId = :cardId AND e.createdAt <= :asOf ORDER BY e.createdAt DESC, e.id DESC")
+    Page<CardLedgerEntry> findByCardIdAsOf(
+        @Param("cardId") Long cardId,
+        @Param("asOf") LocalDateTime asOf,
+        Pageable pageable);
+}
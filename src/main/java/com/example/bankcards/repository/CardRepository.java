@@ -1,43 +1,86 @@
 package com.example.bankcards.repository;
 
+import com.example.bankcards.dto.card.CardSummaryDto;
+import com.example.bankcards.dto.card.CardVersionDto;
+import com.example.bankcards.dto.card.UserCardsVersionDto;
 import com.example.bankcards.entity.Card;
-import com.example.bankcards.entity.User;
-import com.example.bankcards.entity.enums.CardStatus;
 import org.springframework.data.domain.Page;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
-import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface CardRepository extends JpaRepository<Card, Long> {
-    Page<Card> findByUser(User user, Pageable pageable);
-    Optional<Card> findByIdAndUser(Long id, User user);
-    List<Card> findByUser(User user);
-    boolean existsByCardNumber(String cardNumber);
-    boolean existsByCardNumberAndUser(String cardNumber, User user);
-
-    @Query("SELECT c FROM Card c ORDER BY c.id")
-    List<Card> findAllOrderedById();
-
-    @Query("SELECT c FROM Card c WHERE " +
-        "(:status IS NULL OR c.status = :status) AND " +
-        "(:expiryDateFrom IS NULL OR c.expiryDate >= :expiryDateFrom) AND " +
-        "(:expiryDateTo IS NULL OR c.expiryDate <= :expiryDateTo) AND " +
-        "(:minBalance IS NULL OR c.balance >= :minBalance) AND " +
-        "(:maxBalance IS NULL OR c.balance <= :maxBalance) AND " +
-        "(:userId IS NULL OR c.user.id = :userId)")
-    Page<Card> findWithFilters(
-        @Param("status") CardStatus status,
-        @Param("expiryDateFrom") LocalDate expiryDateFrom,
-        @Param("expiryDateTo") LocalDate expiryDateTo,
-        @Param("minBalance") Double minBalance,
-        @Param("maxBalance") Double maxBalance,
-        @Param("userId") Long userId,
-        Pageable pageable);
+public interface CardRepository extends JpaRepository<Card, Long>, CardFilterRepository {
+    // Несвёрнутые зачисления горячей карты суммируются в том же запросе, как в выгрузке CardExportService:
+    // подзапрос выполняется только для строк с balance_shards > 0 и читает подбалансы по первичному ключу
+    String PENDING_BALANCE = "CASE WHEN c.balanceShards > 0 THEN " +
+        "(SELECT cast(coalesce(sum(s.balance), 0) * 100 as Long) FROM CardBalanceShard s WHERE s.cardId = c.id) " +
+        "ELSE 0L END";
+
+    // Чтения для ответов API идут через проекцию без card_number: маска строится из card_last4.
+    // Проекция не создаёт сущностей, поэтому нет ни прокси пользователя, ни снимков для dirty checking
+    String SUMMARY_SELECT = "SELECT new com.example.bankcards.dto.card.CardSummaryDto(" +
+        "c.id, c.cardLast4, c.holderName, c.expiryDate, c.status, c.balance, " + PENDING_BALANCE + ") FROM Card c ";
+
+    // Владелец проверяется по внешнему ключу user_id, без загрузки пользователя
+    Optional<Card> findByIdAndUserId(Long id, Long userId);
+    boolean existsByIdAndUserId(Long id, Long userId);
+    // Номер карты зашифрован, поэтому поиск и уникальность — только по слепому индексу card_number_hash
+    boolean existsByCardNumberHash(String cardNumberHash);
+
+    @ReadOnlyQuery
+    @Query(value = SUMMARY_SELECT + "WHERE c.user.id = :userId",
+        countQuery = "SELECT count(c) FROM Card c WHERE c.user.id = :userId")
+    Page<CardSummaryDto> findSummariesByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @ReadOnlyQuery
+    @Query(SUMMARY_SELECT + "WHERE c.user.id = :userId ORDER BY c.id")
+    List<CardSummaryDto> findSummariesByUserId(@Param("userId") Long userId);
+
+    @ReadOnlyQuery
+    @Query(SUMMARY_SELECT + "ORDER BY c.id")
+    List<CardSummaryDto> findAllSummariesOrderedById();
+
+    @ReadOnlyQuery
+    @Query(SUMMARY_SELECT + "WHERE c.id = :id AND c.user.id = :userId")
+    Optional<CardSummaryDto> findSummaryByIdAndUserId(@Param("id") Long id, @Param("userId") Long userId);
+
+    // Проверки для условных GET: выбираются только версии, без полей карт; агрегат по пользователю
+    // читает строки владельца по idx_cards_user_id_id. Индекса по version нет: версия меняется при каждом
+    // обновлении строки, и такой индекс лишил бы обновления баланса HOT
+    @ReadOnlyQuery
+    @Query("SELECT new com.example.bankcards.dto.card.CardVersionDto(c.version, " + PENDING_BALANCE + ") " +
+        "FROM Card c WHERE c.id = :id AND c.user.id = :userId")
+    Optional<CardVersionDto> findVersionByIdAndUserId(@Param("id") Long id, @Param("userId") Long userId);
+
+    @ReadOnlyQuery
+    @Query("SELECT new com.example.bankcards.dto.card.UserCardsVersionDto(count(c), coalesce(sum(c.version), 0L)) " +
+        "FROM Card c WHERE c.user.id = :userId")
+    UserCardsVersionDto findCardsVersionByUserId(@Param("userId") Long userId);
+
+    // Строки блокируются в порядке возрастания id, поэтому встречные переводы не взаимоблокируются
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Card c WHERE c.id IN :ids AND c.user.id = :userId ORDER BY c.id")
+    List<Card> findAllByIdInAndUserIdForUpdate(@Param("ids") Collection<Long> ids, @Param("userId") Long userId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM Card c WHERE c.id = :id")
+    Optional<Card> findByIdForUpdate(@Param("id") Long id);
+
+    @Query(value = "SELECT set_config('lock_timeout', :timeout, true)", nativeQuery = true)
+    String setLocalLockTimeout(@Param("timeout") String timeout);
+
+    // Баланс хранится в копейках (long), в БД — numeric(19,2); арифметика выполняется в numeric без округлений
+    @Modifying
+    @Query(value = "UPDATE cards SET balance = balance + CAST(:delta AS numeric) / 100 WHERE id = :id", nativeQuery = true)
+    int addToBalance(@Param("id") Long id, @Param("delta") long delta);
 
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package com.example.bankcards.repository;
+
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.QueryHints;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Подсказки для запросов чтения: результат не попадает в контекст персистентности как изменяемый
+ * (без снимков для dirty checking), а запрос не вызывает автоматический flush, даже если выполняется
+ * внутри пишущей транзакции.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@QueryHints({
+    @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+    @QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "COMMIT")
+})
+public @interface ReadOnlyQuery {
+}
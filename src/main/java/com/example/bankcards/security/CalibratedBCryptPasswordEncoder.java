@@ -0,0 +1,71 @@
+package com.example.bankcards.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt с настраиваемой стоимостью. Стоимость хранится в самом хеше ($2a$NN$...),
+ * поэтому хеши с другой стоимостью по-прежнему проверяются, а upgradeEncoding
+ * сообщает о необходимости перехешировать пароль при следующем входе, только если стоимость хеша
+ * ниже стоимости этого узла. Узлы, откалиброванные по-разному, иначе перехешировали бы пароль
+ * при каждом входе то вверх, то вниз; хеши со стоимостью выше текущей остаются как есть.
+ */
+public class CalibratedBCryptPasswordEncoder extends BCryptPasswordEncoder {
+    private static final Logger log = LoggerFactory.getLogger(CalibratedBCryptPasswordEncoder.class);
+    private static final Pattern COST = Pattern.compile("^\\$2[aby]?\\$(\\d\\d)\\$");
+    private static final int MIN_COST = 4;
+    private static final int MAX_COST = 31;
+    private static final int SAMPLES = 3;
+
+    private final int cost;
+
+    public CalibratedBCryptPasswordEncoder(int cost) {
+        super(cost);
+        this.cost = cost;
+    }
+
+    // Подбирает наибольшую стоимость, при которой хеширование на этом узле укладывается в target,
+    // но не ниже minCost; время удваивается с каждой единицей стоимости, поэтому замер короткий
+    public static CalibratedBCryptPasswordEncoder calibrate(Duration target, int minCost, int maxCost) {
+        int chosen = Math.max(MIN_COST, minCost);
+        int ceiling = Math.min(MAX_COST, maxCost);
+        for (int candidate = MIN_COST; candidate <= ceiling; candidate++) {
+            long nanos = measure(candidate);
+            if (nanos > target.toNanos()) {
+                break;
+            }
+            chosen = Math.max(chosen, candidate);
+        }
+        chosen = Math.min(chosen, ceiling);
+        log.info("Стоимость BCrypt: {} (цель {} мс)", chosen, target.toMillis());
+        return new CalibratedBCryptPasswordEncoder(chosen);
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        Matcher matcher = COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) < cost;
+    }
+
+    private static long measure(int cost) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(cost);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < SAMPLES; i++) {
+            long startedAt = System.nanoTime();
+            encoder.encode("calibration");
+            best = Math.min(best, System.nanoTime() - startedAt);
+        }
+        return best;
+    }
+}
@@ -1,61 +1,117 @@
 package com.example.bankcards.security;
 
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.util.BoundedTtlCache;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
-import java.security.Key;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Date;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
 
 @Component
 public class JwtTokenProvider {
-    @Value("${app.jwt-secret}")
-    private String jwtSecret;
+    private static final String USER_ID_CLAIM = "userId";
+    private static final String ROLE_CLAIM = "role";
+    private static final String TOKEN_VERSION_CLAIM = "ver";
 
-    @Value("${app.jwt-expiration-milliseconds}")
-    private long jwtExpirationDate;
+    private final SecretKey key;
+    private final JwtParser parser;
+    private final long jwtExpirationDate;
+    // Проверенные токены: ключ — SHA-256 токена, запись живёт не дольше exp самого токена
+    private final BoundedTtlCache<String, Claims> verifiedTokens;
 
-    public String generateToken(Authentication authentication, Long userId) {
-        String username = authentication.getName();
+    public JwtTokenProvider(@Value("${app.jwt-secret}") String jwtSecret,
+                            @Value("${app.jwt-expiration-milliseconds}") long jwtExpirationDate,
+                            @Value("${app.jwt-cache-max-entries:10000}") int cacheMaxEntries,
+                            @Value("${app.jwt-cache-ttl-seconds:300}") long cacheTtlSeconds) {
+        this.key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+        this.parser = Jwts.parser().verifyWith(key).build();
+        this.jwtExpirationDate = jwtExpirationDate;
+        this.verifiedTokens = new BoundedTtlCache<>(cacheMaxEntries, Duration.ofSeconds(cacheTtlSeconds));
+    }
 
+    // Идентификатор, роль и версия токенов пользователя передаются в утверждениях,
+    // поэтому фильтру аутентификации не нужно загружать пользователя на каждый запрос
+    public String generateToken(User user) {
         Date currentDate = new Date();
         Date expireDate = new Date(currentDate.getTime() + jwtExpirationDate);
 
         return Jwts.builder()
-            .setSubject(username)
-            .claim("userId", userId)
-            .setIssuedAt(currentDate)
-            .setExpiration(expireDate)
-            .signWith(key(), SignatureAlgorithm.HS256)
+            .id(UUID.randomUUID().toString())
+            .subject(user.getUsername())
+            .claim(USER_ID_CLAIM, user.getId())
+            .claim(ROLE_CLAIM, user.getRole().name())
+            .claim(TOKEN_VERSION_CLAIM, user.getTokenVersion())
+            .issuedAt(currentDate)
+            .expiration(expireDate)
+            .signWith(key, Jwts.SIG.HS256)
             .compact();
     }
 
-    private Key key() {
-        return Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+    public Optional<Claims> parseClaims(String token) {
+        String digest = digest(token);
+        Claims cached = verifiedTokens.get(digest);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        try {
+            Claims claims = parser.parseSignedClaims(token).getPayload();
+            Date expiration = claims.getExpiration();
+            if (expiration != null) {
+                verifiedTokens.put(digest, claims, Duration.ofMillis(expiration.getTime() - System.currentTimeMillis()));
+            }
+            return Optional.of(claims);
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    // Токены без идентификатора (jti), роли или версии в утверждениях не принимаются
+    public Optional<JwtUserPrincipal> getPrincipal(String token) {
+        return parseClaims(token).flatMap(claims -> {
+            try {
+                Long userId = claims.get(USER_ID_CLAIM, Long.class);
+                String role = claims.get(ROLE_CLAIM, String.class);
+                Integer tokenVersion = claims.get(TOKEN_VERSION_CLAIM, Integer.class);
+                if (userId == null || role == null || tokenVersion == null
+                    || claims.getId() == null || claims.getExpiration() == null) {
+                    return Optional.empty();
+                }
+                return Optional.of(new JwtUserPrincipal(userId, claims.getSubject(), Role.valueOf(role), tokenVersion,
+                    claims.getId(), claims.getExpiration().toInstant()));
+            } catch (JwtException | IllegalArgumentException e) {
+                return Optional.empty();
+            }
+        });
     }
 
     public String getUsername(String token) {
-        Claims claims = Jwts.parser()
-            .setSigningKey(key())
-            .build()
-            .parseClaimsJws(token)
-            .getBody();
-        return claims.getSubject();
+        return parseClaims(token).map(Claims::getSubject).orElse(null);
     }
 
     public boolean validateToken(String token) {
+        return parseClaims(token).isPresent();
+    }
+
+    private static String digest(String token) {
         try {
-            Jwts.parser()
-                .setSigningKey(key())
-                .build()
-                .parseClaimsJws(token);
-            return true;
-        } catch (Exception e) {
-            return false;
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
         }
     }
-}
\ No newline at end of file
+}
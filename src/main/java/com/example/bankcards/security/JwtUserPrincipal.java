@@ -0,0 +1,65 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.enums.Role;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Пользователь запроса, восстановленный из утверждений JWT без обращения к таблице users.
+ */
+public class JwtUserPrincipal implements UserDetails {
+    private final Long id;
+    private final String username;
+    private final Role role;
+    private final int tokenVersion;
+    private final String tokenId;
+    private final Instant tokenExpiresAt;
+
+    public JwtUserPrincipal(Long id, String username, Role role, int tokenVersion,
+                            String tokenId, Instant tokenExpiresAt) {
+        this.id = id;
+        this.username = username;
+        this.role = role;
+        this.tokenVersion = tokenVersion;
+        this.tokenId = tokenId;
+        this.tokenExpiresAt = tokenExpiresAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    public Role getRole() {
+        return role;
+    }
+
+    public int getTokenVersion() {
+        return tokenVersion;
+    }
+
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    public Instant getTokenExpiresAt() {
+        return tokenExpiresAt;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return Collections.singleton(role);
+    }
+
+    @Override
+    public String getPassword() {
+        return null;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.util.KeyedRateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничивает частоту запросов по группам маршрутов. Ключ — имя пользователя из JWT,
+ * для анонимных запросов — IP клиента. Фильтр стоит после JwtAuthenticationFilter
+ * и не берёт блокировок: корзины обновляются через CAS в KeyedRateLimiter.
+ * IP клиента — getRemoteAddr: при server.forward-headers-strategy=native Tomcat подставляет в него адрес
+ * из X-Forwarded-For, только если запрос пришёл от доверенного прокси (server.tomcat.remoteip.internal-proxies).
+ * Заголовок от остальных отправителей игнорируется, поэтому подделать ключ им нельзя.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+    private static final String LIMIT_HEADER = "RateLimit-Limit";
+    private static final String REMAINING_HEADER = "RateLimit-Remaining";
+    private static final String RESET_HEADER = "RateLimit-Reset";
+
+    private final boolean enabled;
+    private final long idleNanos;
+    private final Map<RouteGroup, KeyedRateLimiter> limiters = new EnumMap<>(RouteGroup.class);
+    private final Map<RouteGroup, Counter> allowed = new EnumMap<>(RouteGroup.class);
+    private final Map<RouteGroup, Counter> rejected = new EnumMap<>(RouteGroup.class);
+
+    public RateLimitFilter(@Value("${app.rate-limit.enabled:true}") boolean enabled,
+                           @Value("${app.rate-limit.idle-seconds:600}") long idleSeconds,
+                           @Value("${app.rate-limit.auth.capacity:10}") int authCapacity,
+                           @Value("${app.rate-limit.auth.refill-per-second:1}") double authRefill,
+                           @Value("${app.rate-limit.reads.capacity:100}") int readsCapacity,
+                           @Value("${app.rate-limit.reads.refill-per-second:50}") double readsRefill,
+                           @Value("${app.rate-limit.transfers.capacity:20}") int transfersCapacity,
+                           @Value("${app.rate-limit.transfers.refill-per-second:10}") double transfersRefill,
+                           @Value("${app.rate-limit.admin.capacity:50}") int adminCapacity,
+                           @Value("${app.rate-limit.admin.refill-per-second:20}") double adminRefill,
+                           MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.idleNanos = TimeUnit.SECONDS.toNanos(idleSeconds);
+        limiters.put(RouteGroup.AUTH, new KeyedRateLimiter(authCapacity, authRefill));
+        limiters.put(RouteGroup.READS, new KeyedRateLimiter(readsCapacity, readsRefill));
+        limiters.put(RouteGroup.TRANSFERS, new KeyedRateLimiter(transfersCapacity, transfersRefill));
+        limiters.put(RouteGroup.ADMIN, new KeyedRateLimiter(adminCapacity, adminRefill));
+        for (RouteGroup group : RouteGroup.values()) {
+            String tag = group.name().toLowerCase();
+            allowed.put(group, meterRegistry.counter("http.rate.limit.requests", "group", tag, "outcome", "allowed"));
+            rejected.put(group, meterRegistry.counter("http.rate.limit.requests", "group", tag, "outcome", "rejected"));
+            meterRegistry.gauge("http.rate.limit.buckets", Tags.of("group", tag),
+                limiters.get(group), KeyedRateLimiter::size);
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(
+        @NonNull HttpServletRequest request,
+        @NonNull HttpServletResponse response,
+        @NonNull FilterChain filterChain) throws ServletException, IOException {
+        RouteGroup group = enabled ? RouteGroup.of(request) : null;
+        if (group == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        KeyedRateLimiter.Decision decision = limiters.get(group).tryAcquire(clientKey(request));
+        response.setHeader(LIMIT_HEADER, String.valueOf(decision.limit()));
+        response.setHeader(REMAINING_HEADER, String.valueOf(decision.remaining()));
+        response.setHeader(RESET_HEADER, String.valueOf(toSeconds(decision.resetNanos())));
+        if (!decision.allowed()) {
+            rejected.get(group).increment();
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(toSeconds(decision.retryAfterNanos())));
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write("Слишком много запросов, повторите попытку позже");
+            return;
+        }
+        allowed.get(group).increment();
+        filterChain.doFilter(request, response);
+    }
+
+    @Scheduled(fixedDelayString = "${app.rate-limit.eviction-interval-milliseconds:60000}")
+    public void evictIdleBuckets() {
+        limiters.values().forEach(limiter -> limiter.evictIdle(idleNanos));
+    }
+
+    private static String clientKey(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof JwtUserPrincipal principal) {
+            return "user:" + principal.getUsername();
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    private static long toSeconds(long nanos) {
+        return (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private enum RouteGroup {
+        AUTH,
+        READS,
+        TRANSFERS,
+        ADMIN;
+
+        // Все изменяющие запросы к картам (переводы, создание, смена статуса, удаление) относятся к TRANSFERS
+        private static RouteGroup of(HttpServletRequest request) {
+            String path = request.getRequestURI().substring(request.getContextPath().length());
+            if (path.startsWith("/api/auth/")) {
+                return AUTH;
+            }
+            if (path.startsWith("/api/admin/")) {
+                return ADMIN;
+            }
+            if (path.equals("/api/cards") || path.startsWith("/api/cards/")) {
+                return HttpMethod.GET.matches(request.getMethod()) ? READS : TRANSFERS;
+            }
+            return null;
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.example.bankcards.security;
 
 import com.example.bankcards.entity.User;
-import com.example.bankcards.exception.UserNotFoundException;
 import com.example.bankcards.repository.UserRepository;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -16,10 +15,13 @@ public class UserDetailsServiceImpl implements UserDetailsService {
         this.userRepository = userRepository;
     }
 
+    // Именно UsernameNotFoundException: на нём DaoAuthenticationProvider сверяет пароль с фиктивным хешем,
+    // и неизвестное имя отвечает так же долго и так же проходит через очередь хеширования, как известное.
+    // Любое другое исключение провайдер оборачивает без этой сверки
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         User user = userRepository.findByUsername(username)
-            .orElseThrow(() -> new UserNotFoundException("пользователь с именем пользователя не найден: " + username));
+            .orElseThrow(() -> new UsernameNotFoundException("пользователь с именем пользователя не найден: " + username));
         return user;
     }
 }
\ No newline at end of file
@@ -4,30 +4,44 @@ import com.example.bankcards.dto.user.UserRequestDto;
 import com.example.bankcards.dto.user.UserResponseDto;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.exception.AuthenticationException;
+import com.example.bankcards.exception.ServiceOverloadedException;
 import com.example.bankcards.repository.UserRepository;
 import com.example.bankcards.security.JwtTokenProvider;
+import com.example.bankcards.security.JwtUserPrincipal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 @Service
 public class AuthService {
+    private static final Logger log = LoggerFactory.getLogger(AuthService.class);
+
     private final AuthenticationManager authenticationManager;
     private final JwtTokenProvider jwtTokenProvider;
     private final UserRepository userRepository;
     private final UserService userService;
+    private final PasswordEncoder passwordEncoder;
+    private final TokenRevocationService tokenRevocationService;
 
     public AuthService(AuthenticationManager authenticationManager,
                        JwtTokenProvider jwtTokenProvider,
                        UserRepository userRepository,
-                       UserService userService
+                       UserService userService,
+                       PasswordEncoder passwordEncoder,
+                       TokenRevocationService tokenRevocationService
     ) {
         this.authenticationManager = authenticationManager;
         this.jwtTokenProvider = jwtTokenProvider;
         this.userRepository = userRepository;
         this.userService = userService;
+        this.passwordEncoder = passwordEncoder;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     public String authenticate(UserRequestDto userRequestDto) {
@@ -41,13 +55,37 @@ public class AuthService {
             SecurityContextHolder.getContext().setAuthentication(authentication);
             User user = userRepository.findByUsername(userRequestDto.getUsername())
                 .orElseThrow(() -> new AuthenticationException("User not found"));
-            return jwtTokenProvider.generateToken(authentication, user.getId());
+            rehashIfWeaker(user, userRequestDto.getPassword());
+            return jwtTokenProvider.generateToken(user);
+        } catch (InternalAuthenticationServiceException e) {
+            // Провайдер оборачивает ошибки загрузки пользователя; переполненная очередь хеширования — это 503
+            if (e.getCause() instanceof ServiceOverloadedException overloaded) {
+                throw overloaded;
+            }
+            throw new AuthenticationException("Invalid username or password");
         } catch (org.springframework.security.core.AuthenticationException e) {
             throw new AuthenticationException("Invalid username or password");
         }
     }
 
+    // Хеш с меньшей стоимостью BCrypt заменяется, пока известен открытый пароль. Вход уже прошёл проверку,
+    // поэтому при заполненной очереди хеширования замена откладывается до следующего входа, а не даёт 503
+    private void rehashIfWeaker(User user, String rawPassword) {
+        if (!passwordEncoder.upgradeEncoding(user.getPassword())) {
+            return;
+        }
+        try {
+            userService.updatePasswordHash(user.getId(), passwordEncoder.encode(rawPassword));
+        } catch (ServiceOverloadedException e) {
+            log.debug("Пересчёт хеша пароля пользователя {} отложен: очередь хеширования заполнена", user.getId());
+        }
+    }
+
     public UserResponseDto register(UserRequestDto userRequestDto) {
         return userService.createUser(userRequestDto);
     }
+
+    public void logout(JwtUserPrincipal principal) {
+        tokenRevocationService.revoke(principal.getTokenId(), principal.getId(), principal.getTokenExpiresAt());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,284 @@
+package com.example.bankcards.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Шина сброса локальных кэшей между узлами через PostgreSQL LISTEN/NOTIFY — единственную общую инфраструктуру.
+ * Ключи вида "пространство:id" копятся за транзакцию без повторов и уходят пачками через pg_notify перед фиксацией:
+ * NOTIFY транзакционен, поэтому другие узлы получают его только после коммита, а при откате — не получают вовсе.
+ * Ошибка pg_notify прерывает всю транзакцию PostgreSQL, поэтому перед фиксацией уведомления отправляются под точкой
+ * сохранения: при ошибке транзакция откатывается к ней и фиксируется без сброса, узлы догонят его по TTL кэшей.
+ * Каждый узел держит отдельное соединение-слушатель вне пула; после переподключения кэши сбрасываются целиком,
+ * так как уведомления за время разрыва потеряны.
+ */
+@Service
+public class CacheInvalidationBus {
+    private static final Logger log = LoggerFactory.getLogger(CacheInvalidationBus.class);
+
+    private static final String NOTIFY_SQL = "SELECT pg_notify(?, ?)";
+    private static final Pattern CHANNEL_NAME = Pattern.compile("[a-z_][a-z0-9_]*");
+    private static final char KEY_SEPARATOR = ',';
+    private static final char NAMESPACE_SEPARATOR = ':';
+    // Предел полезной нагрузки NOTIFY — 8000 байт
+    private static final int MAX_PAYLOAD_BYTES = 7900;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSourceProperties;
+    private final Map<String, Namespace> namespaces = new ConcurrentHashMap<>();
+    private final Counter published;
+    private final Counter received;
+    private final Counter fullFlushes;
+    private volatile boolean running;
+    private volatile Connection listenerConnection;
+    private Thread listenerThread;
+
+    @Value("${app.cache-invalidation-enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.cache-invalidation-channel:cache_invalidation}")
+    private String channel;
+
+    @Value("${app.cache-invalidation-poll-milliseconds:1000}")
+    private int pollMilliseconds;
+
+    @Value("${app.cache-invalidation-reconnect-milliseconds:5000}")
+    private long reconnectMilliseconds;
+
+    public CacheInvalidationBus(JdbcTemplate jdbcTemplate,
+                                DataSourceProperties dataSourceProperties,
+                                MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSourceProperties = dataSourceProperties;
+        this.published = meterRegistry.counter("cache.invalidation.published");
+        this.received = meterRegistry.counter("cache.invalidation.received");
+        this.fullFlushes = meterRegistry.counter("cache.invalidation.full.flushes");
+    }
+
+    // Кэш подписывается на своё пространство ключей: evict — сброс одного ключа, evictAll — полный сброс
+    public void subscribe(String namespace, Consumer<String> evict, Runnable evictAll) {
+        namespaces.put(namespace, new Namespace(evict, evictAll));
+    }
+
+    public void publish(String namespace, Object id) {
+        publish(namespace, List.of(id));
+    }
+
+    // В транзакции ключи копятся до beforeCommit; вне транзакции отправляются сразу
+    public void publish(String namespace, Collection<?> ids) {
+        if (!enabled || ids.isEmpty()) {
+            return;
+        }
+        List<String> keys = ids.stream().map(id -> namespace + NAMESPACE_SEPARATOR + id).toList();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            send(keys);
+            return;
+        }
+        pendingKeys().addAll(keys);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> pendingKeys() {
+        Set<String> pending = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (pending != null) {
+            return pending;
+        }
+        Set<String> keys = new LinkedHashSet<>();
+        TransactionSynchronizationManager.bindResource(this, keys);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                sendBeforeCommit(keys);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(CacheInvalidationBus.this);
+            }
+        });
+        return keys;
+    }
+
+    private void sendBeforeCommit(Collection<String> keys) {
+        List<String> payloads = payloads(keys);
+        try {
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                Savepoint savepoint = connection.setSavepoint();
+                try (PreparedStatement statement = connection.prepareStatement(NOTIFY_SQL)) {
+                    for (String payload : payloads) {
+                        statement.setString(1, channel);
+                        statement.setString(2, payload);
+                        statement.execute();
+                    }
+                } catch (SQLException e) {
+                    connection.rollback(savepoint);
+                    throw e;
+                }
+                connection.releaseSavepoint(savepoint);
+                return null;
+            });
+            published.increment(payloads.size());
+        } catch (RuntimeException e) {
+            log.warn("Не удалось отправить сброс кэша: {}", e.getMessage());
+        }
+    }
+
+    // Вне транзакции каждый pg_notify выполняется в своей автофиксации и не влияет на остальные
+    private void send(Collection<String> keys) {
+        for (String payload : payloads(keys)) {
+            try {
+                jdbcTemplate.query(NOTIFY_SQL, (RowCallbackHandler) rs -> { }, channel, payload);
+                published.increment();
+            } catch (RuntimeException e) {
+                // Узлы, пропустившие сброс, догонят его по TTL своих кэшей
+                log.warn("Не удалось отправить сброс кэша: {}", e.getMessage());
+            }
+        }
+    }
+
+    static List<String> payloads(Collection<String> keys) {
+        List<String> payloads = new ArrayList<>();
+        StringBuilder payload = new StringBuilder();
+        for (String key : keys) {
+            if (payload.length() > 0
+                && payload.length() + 1 + key.length() > MAX_PAYLOAD_BYTES) {
+                payloads.add(payload.toString());
+                payload.setLength(0);
+            }
+            if (payload.length() > 0) {
+                payload.append(KEY_SEPARATOR);
+            }
+            payload.append(key);
+        }
+        if (payload.length() > 0) {
+            payloads.add(payload.toString());
+        }
+        return payloads;
+    }
+
+    void dispatch(String payload) {
+        int start = 0;
+        while (start < payload.length()) {
+            int end = payload.indexOf(KEY_SEPARATOR, start);
+            if (end < 0) {
+                end = payload.length();
+            }
+            int separator = payload.indexOf(NAMESPACE_SEPARATOR, start);
+            if (separator > start && separator < end) {
+                Namespace namespace = namespaces.get(payload.substring(start, separator));
+                if (namespace != null) {
+                    namespace.evict().accept(payload.substring(separator + 1, end));
+                    received.increment();
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    void evictAll() {
+        namespaces.values().forEach(namespace -> namespace.evictAll().run());
+        fullFlushes.increment();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (!CHANNEL_NAME.matcher(channel).matches()) {
+            throw new IllegalStateException("Некорректное имя канала сброса кэша: " + channel);
+        }
+        running = true;
+        listenerThread = new Thread(this::listen, "cache-invalidation-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        Connection connection = listenerConnection;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.debug("Соединение слушателя уже закрыто", e);
+            }
+        }
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                listenerConnection = connection;
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                // Пока слушателя не было, чужие сбросы не доходили: локальные записи могли устареть
+                evictAll();
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollMilliseconds);
+                    if (notifications != null) {
+                        for (PGNotification notification : notifications) {
+                            dispatch(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (running) {
+                    log.warn("Соединение слушателя сброса кэша потеряно, переподключение: {}", e.getMessage());
+                    pause();
+                }
+            } finally {
+                listenerConnection = null;
+            }
+        }
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(reconnectMilliseconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private record Namespace(Consumer<String> evict, Runnable evictAll) {
+    }
+}
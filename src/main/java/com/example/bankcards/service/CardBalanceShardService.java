@@ -0,0 +1,187 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.MinorUnits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Баланс «горячей» карты (balance_shards > 0) разнесён на основную строку cards и подстроки card_balance_shards.
+ * Зачисления попадают в случайную подстроку и не блокируют основную строку на запись;
+ * списания и свёртка блокируют основную строку, затем подстроки — в этом порядке, поэтому взаимоблокировок нет.
+ * Проводка такого зачисления пишется без balance_after: баланс после неё назначается при свёртке,
+ * когда зачисление становится частью основного баланса.
+ */
+@Service
+public class CardBalanceShardService {
+    private static final Logger log = LoggerFactory.getLogger(CardBalanceShardService.class);
+
+    private static final String CREDIT_SQL =
+        "INSERT INTO card_balance_shards (card_id, shard, balance) VALUES (?, ?, ?) " +
+        "ON CONFLICT (card_id, shard) DO UPDATE SET balance = card_balance_shards.balance + EXCLUDED.balance";
+    private static final String LOCK_FOR_CREDIT_SQL =
+        "SELECT balance_shards FROM cards WHERE id = ? AND user_id = ? FOR SHARE";
+    private static final String PENDING_SQL =
+        "SELECT COALESCE(SUM(balance), 0) FROM card_balance_shards WHERE card_id = ?";
+    private static final String DRAIN_SQL =
+        "UPDATE card_balance_shards s SET balance = 0 " +
+        "FROM (SELECT shard, balance FROM card_balance_shards WHERE card_id = ? AND balance <> 0 " +
+        "ORDER BY shard FOR UPDATE) d " +
+        "WHERE s.card_id = ? AND s.shard = d.shard RETURNING d.balance";
+    private static final String DELETE_SHARDS_SQL =
+        "DELETE FROM card_balance_shards WHERE card_id = ? AND shard >= ?";
+    private static final String FOLD_JOB_NAME = "hot-card-fold";
+    // Горячие карты находятся по частичному индексу idx_cards_hot, подстроки — по первичному ключу
+    private static final String PENDING_CARDS_SQL =
+        "SELECT c.id FROM cards c WHERE c.balance_shards > 0 AND EXISTS " +
+        "(SELECT 1 FROM card_balance_shards s WHERE s.card_id = c.id AND s.balance <> 0)";
+    private static final String HOT_CARDS_SQL =
+        "SELECT id, balance_shards FROM cards WHERE balance_shards > 0";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CardRepository cardRepository;
+    private final CardLedgerService cardLedgerService;
+    private final JobLeaseService jobLeaseService;
+    private final CardCacheService cardCacheService;
+    private final TransactionTemplate transactionTemplate;
+    private volatile Map<Long, Integer> hotCards = Map.of();
+
+    @Value("${app.hot-card-fold-interval-milliseconds:1000}")
+    private long foldIntervalMilliseconds;
+
+    public CardBalanceShardService(JdbcTemplate jdbcTemplate,
+                                   CardRepository cardRepository,
+                                   CardLedgerService cardLedgerService,
+                                   JobLeaseService jobLeaseService,
+                                   CardCacheService cardCacheService,
+                                   PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cardRepository = cardRepository;
+        this.cardLedgerService = cardLedgerService;
+        this.jobLeaseService = jobLeaseService;
+        this.cardCacheService = cardCacheService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public boolean isHot(Long cardId) {
+        return hotCards.containsKey(cardId);
+    }
+
+    // Берёт FOR SHARE на строке карты под точкой сохранения и возвращает true, если у карты есть подбалансы.
+    // Иначе (подбалансы отключены после обновления локального списка) откат к точке сохранения снимает блокировку,
+    // и вызывающий код блокирует карту FOR UPDATE на том же месте в порядке id. Повышение FOR SHARE до FOR UPDATE
+    // в одной транзакции взаимоблокировало бы два таких зачисления на одну карту
+    public boolean lockForShardedCredit(Long cardId, Long userId) {
+        boolean sharded = Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            Savepoint savepoint = connection.setSavepoint();
+            try (PreparedStatement statement = connection.prepareStatement(LOCK_FOR_CREDIT_SQL)) {
+                statement.setLong(1, cardId);
+                statement.setLong(2, userId);
+                try (ResultSet rs = statement.executeQuery()) {
+                    if (rs.next() && rs.getInt(1) > 0) {
+                        connection.releaseSavepoint(savepoint);
+                        return true;
+                    }
+                }
+            } catch (SQLException e) {
+                connection.rollback(savepoint);
+                throw e;
+            }
+            connection.rollback(savepoint);
+            return false;
+        }));
+        if (!sharded) {
+            refreshHotCards();
+        }
+        return sharded;
+    }
+
+    // Вызывается под FOR SHARE на строке карты. Баланс после зачисления здесь не считается:
+    // параллельные зачисления не видят друг друга, и сумма подстрок дала бы повторяющиеся значения
+    public void credit(Card card, long amount) {
+        int shard = ThreadLocalRandom.current().nextInt(Math.max(1, card.getBalanceShards()));
+        jdbcTemplate.update(CREDIT_SQL, card.getId(), shard, MinorUnits.toDecimal(amount));
+    }
+
+    public long pendingBalance(Long cardId) {
+        BigDecimal pending = jdbcTemplate.queryForObject(PENDING_SQL, BigDecimal.class, cardId);
+        return pending != null ? MinorUnits.fromDecimal(pending) : 0L;
+    }
+
+    // Вызывается под FOR UPDATE на строке карты: обнуляет подстроки и возвращает снятую с них сумму,
+    // которую вызывающий код обязан перенести в основной баланс в той же транзакции.
+    // Блокировка ждёт все начатые зачисления, поэтому их проводки уже видны и получают balance_after
+    // от основного баланса карты до свёртки
+    public long drain(Card card) {
+        List<BigDecimal> drained = jdbcTemplate.query(DRAIN_SQL,
+            (rs, rowNum) -> rs.getBigDecimal(1), card.getId(), card.getId());
+        long total = 0;
+        for (BigDecimal amount : drained) {
+            total = Math.addExact(total, MinorUnits.fromDecimal(amount));
+        }
+        if (total != 0) {
+            cardLedgerService.postPendingCredits(card.getId(), card.getBalance());
+        }
+        return total;
+    }
+
+    public void deleteShardsFrom(Long cardId, int shardCount) {
+        jdbcTemplate.update(DELETE_SHARDS_SQL, cardId, shardCount);
+    }
+
+    // Свёртку за интервал выполняет один узел: запуск — номер интервала, аренда — через job_leases.
+    // Список горячих карт локальный, поэтому его обновляет каждый узел
+    @Scheduled(fixedDelayString = "${app.hot-card-fold-interval-milliseconds:1000}")
+    public void foldShards() {
+        String runKey = String.valueOf(System.currentTimeMillis() / Math.max(1, foldIntervalMilliseconds));
+        jobLeaseService.claim(FOLD_JOB_NAME, runKey, 1).ifPresent(lease -> {
+            for (Long cardId : jdbcTemplate.queryForList(PENDING_CARDS_SQL, Long.class)) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> fold(cardId));
+                } catch (RuntimeException e) {
+                    log.warn("Не удалось свернуть подбалансы карты {}: {}", cardId, e.getMessage());
+                }
+            }
+            jobLeaseService.complete(lease);
+        });
+        refreshHotCards();
+    }
+
+    private void fold(Long cardId) {
+        Card card = cardRepository.findByIdForUpdate(cardId).orElse(null);
+        if (card == null) {
+            return;
+        }
+        long drained = drain(card);
+        if (drained != 0) {
+            cardRepository.addToBalance(cardId, drained);
+            // Версия строки сменилась: закэшированный ETag владельца больше не совпадёт со свежим
+            cardCacheService.evictAfterCommit(card.getUser().getId());
+        }
+    }
+
+    public void refreshHotCards() {
+        Map<Long, Integer> loaded = new HashMap<>();
+        jdbcTemplate.query(HOT_CARDS_SQL, rs -> {
+            loaded.put(rs.getLong(1), rs.getInt(2));
+        });
+        hotCards = Map.copyOf(loaded);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.util.BoundedTtlCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Кэш чтений карт пользователя (списки, страницы и отдельные карты) с ограничением по числу пользователей и TTL.
+ * Все записи пользователя лежат в одном контейнере и сбрасываются вместе после фиксации изменяющей транзакции.
+ * Загрузка пишет результат в контейнер, полученный до чтения из БД: если за это время пользователя сбросили,
+ * контейнер уже недоступен и устаревший результат в кэш не попадёт. Сбросы рассылаются другим узлам через
+ * {@link CacheInvalidationBus}.
+ */
+@Service
+public class CardCacheService {
+    private static final String CACHE_NAME = "cards";
+    private static final String INVALIDATION_NAMESPACE = "cards";
+
+    private final CacheInvalidationBus invalidationBus;
+    private final BoundedTtlCache<Long, UserCards> users;
+    private final int maxEntriesPerUser;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final Counter invalidations;
+
+    public CardCacheService(CacheInvalidationBus invalidationBus,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.card-cache-max-users:10000}") int maxUsers,
+                            @Value("${app.card-cache-max-entries-per-user:32}") int maxEntriesPerUser,
+                            @Value("${app.card-cache-ttl-seconds:60}") long ttlSeconds) {
+        this.invalidationBus = invalidationBus;
+        this.users = new BoundedTtlCache<>(maxUsers, Duration.ofSeconds(ttlSeconds));
+        this.maxEntriesPerUser = maxEntriesPerUser;
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+            .tags("cache", CACHE_NAME, "result", "hit")
+            .register(meterRegistry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+            .tags("cache", CACHE_NAME, "result", "miss")
+            .register(meterRegistry);
+        FunctionCounter.builder("cache.evictions", users, BoundedTtlCache::evictionCount)
+            .tags("cache", CACHE_NAME)
+            .register(meterRegistry);
+        Gauge.builder("cache.size", users, BoundedTtlCache::size)
+            .tags("cache", CACHE_NAME)
+            .register(meterRegistry);
+        this.invalidations = meterRegistry.counter("cache.invalidations", "cache", CACHE_NAME);
+        invalidationBus.subscribe(INVALIDATION_NAMESPACE, userId -> evictLocal(Long.valueOf(userId)),
+            users::invalidateAll);
+    }
+
+    public <T> T get(Long userId, Object key, Supplier<T> loader) {
+        return get(userId, key, loader, value -> true);
+    }
+
+    // isCurrent отбраковывает запись, устаревшую без сброса (например, по уже известному свежему ETag):
+    // она перезагружается и заменяется
+    @SuppressWarnings("unchecked")
+    public <T> T get(Long userId, Object key, Supplier<T> loader, Predicate<T> isCurrent) {
+        UserCards entry = users.get(userId);
+        if (entry == null) {
+            entry = new UserCards();
+            users.put(userId, entry);
+        }
+        Object cached = entry.values.get(key);
+        if (cached != null && isCurrent.test((T) cached)) {
+            hits.increment();
+            return (T) cached;
+        }
+        misses.increment();
+        T value = loader.get();
+        if (value != null) {
+            if (entry.values.size() >= maxEntriesPerUser) {
+                entry.values.clear();
+            }
+            entry.values.put(key, value);
+        }
+        return value;
+    }
+
+    // Вызывается после фиксации изменений (вне транзакции)
+    public void evict(Long userId) {
+        evictAll(List.of(userId));
+    }
+
+    public void evictAll(Collection<Long> userIds) {
+        userIds.forEach(this::evictLocal);
+        invalidationBus.publish(INVALIDATION_NAMESPACE, userIds);
+    }
+
+    // Вызывается в изменяющей транзакции: до фиксации другие запросы ещё видят старые данные и могут их закэшировать.
+    // Другим узлам сброс уходит с фиксацией той же транзакции
+    public void evictAfterCommit(Long userId) {
+        invalidationBus.publish(INVALIDATION_NAMESPACE, userId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evictLocal(userId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evictLocal(userId);
+            }
+        });
+    }
+
+    private void evictLocal(Long userId) {
+        users.invalidate(userId);
+        invalidations.increment();
+    }
+
+    private static final class UserCards {
+        private final Map<Object, Object> values = new ConcurrentHashMap<>();
+    }
+}
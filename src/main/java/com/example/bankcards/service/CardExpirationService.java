@@ -1,30 +1,200 @@
 package com.example.bankcards.service;
 
-import com.example.bankcards.entity.Card;
-import com.example.bankcards.entity.enums.CardStatus;
-import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.entity.enums.CardExpiryMode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.sql.Date;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 @Service
 public class CardExpirationService {
-    private final CardRepository cardRepository;
+    private static final String JOB_NAME = "card-expiration";
+    // Кандидаты выбираются по ключу (expiry_date, id) через частичный индекс idx_cards_expiry_not_expired
+    // внутри диапазона раздела и блокируются в порядке id, как при переводах
+    private static final String EXPIRE_CHUNK_SQL =
+        "WITH candidates AS (" +
+        "  SELECT id FROM cards" +
+        "  WHERE status <> 'EXPIRED' AND expiry_date < ?" +
+        "  AND (expiry_date, id) > (?, ?) AND (expiry_date, id) <= (?, ?)" +
+        "  ORDER BY expiry_date, id LIMIT ?" +
+        "), locked AS (" +
+        "  SELECT id FROM cards WHERE id IN (SELECT id FROM candidates) ORDER BY id FOR UPDATE" +
+        ") " +
+        "UPDATE cards c SET status = 'EXPIRED' FROM locked WHERE c.id = locked.id " +
+        "RETURNING c.expiry_date, c.id, c.user_id";
+    // Последние ключи равных по числу кандидатов частей: один проход по тому же индексу
+    private static final String PLAN_SQL =
+        "SELECT expiry_date, id FROM (" +
+        "  SELECT expiry_date, id, part, lead(part) OVER (ORDER BY expiry_date, id) AS next_part FROM (" +
+        "    SELECT expiry_date, id, ntile(?) OVER (ORDER BY expiry_date, id) AS part FROM cards" +
+        "    WHERE status <> 'EXPIRED' AND expiry_date < ?" +
+        "  ) parts" +
+        ") bounds WHERE next_part IS DISTINCT FROM part ORDER BY expiry_date, id";
 
-    public CardExpirationService(CardRepository cardRepository) {
-        this.cardRepository = cardRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final JobLeaseService jobLeaseService;
+    private final CardCacheService cardCacheService;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter expiredCards;
+    private final Counter processedChunks;
+    private final Timer runTimer;
+    private final AtomicLong lastRunExpired = new AtomicLong();
+
+    @Value("${app.card-expiration-chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${app.card-expiration-partitions:8}")
+    private int partitions;
+
+    @Value("${app.card-expiry-mode:EAGER}")
+    private CardExpiryMode cardExpiryMode;
+
+    // В режиме LAZY сверка идёт мелкими порциями с паузами, чтобы не создавать пик записи и WAL
+    @Value("${app.card-expiration-lazy-chunk-size:100}")
+    private int lazyChunkSize;
+
+    @Value("${app.card-expiration-lazy-pause-milliseconds:200}")
+    private long lazyPauseMilliseconds;
+
+    public CardExpirationService(JdbcTemplate jdbcTemplate,
+                                 JobLeaseService jobLeaseService,
+                                 CardCacheService cardCacheService,
+                                 PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jobLeaseService = jobLeaseService;
+        this.cardCacheService = cardCacheService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.expiredCards = meterRegistry.counter("cards.expiration.expired");
+        this.processedChunks = meterRegistry.counter("cards.expiration.chunks");
+        this.runTimer = meterRegistry.timer("cards.expiration.run");
+        meterRegistry.gauge("cards.expiration.last.run.expired", lastRunExpired);
     }
 
-    @Transactional
-    public void checkAndUpdateExpiredCards() {
-        List<Card> cards = cardRepository.findAll();
+    // Разделы — непересекающиеся диапазоны ключа (expiry_date, id), поэтому каждый раздел проходит
+    // свой участок индекса один раз. Разделы распределяются между узлами через job_leases;
+    // каждая порция фиксируется в отдельной транзакции вместе с контрольной точкой раздела
+    public long checkAndUpdateExpiredCards() {
         LocalDate today = LocalDate.now();
-        cards.forEach(card -> {
-            if (card.getExpiryDate().isBefore(today) && card.getStatus() != CardStatus.EXPIRED) {
-                card.setStatus(CardStatus.EXPIRED);
-                cardRepository.save(card);
+        Supplier<List<JobLeaseService.Range>> planner = () -> plan(today);
+        Optional<JobLeaseService.Lease> firstLease =
+            jobLeaseService.claim(JOB_NAME, today.toString(), partitions, planner);
+        if (firstLease.isEmpty()) {
+            return 0L;
+        }
+        return runTimer.record(() -> {
+            long expired = 0;
+            for (Optional<JobLeaseService.Lease> lease = firstLease; lease.isPresent();
+                 lease = jobLeaseService.claim(JOB_NAME, today.toString(), partitions, planner)) {
+                expired += expirePartition(lease.get(), today);
             }
+            lastRunExpired.set(expired);
+            return expired;
         });
     }
-}
\ No newline at end of file
+
+    // Диапазоны строятся один раз на запуск. Первый диапазон открыт снизу, последний — сверху;
+    // без кандидатов остаётся один раздел, который просто завершится
+    private List<JobLeaseService.Range> plan(LocalDate today) {
+        List<Key> bounds = jdbcTemplate.query(PLAN_SQL,
+            (rs, rowNum) -> new Key(rs.getDate(1).toLocalDate(), rs.getLong(2)),
+            partitions, Date.valueOf(today));
+        List<JobLeaseService.Range> ranges = new ArrayList<>();
+        String start = null;
+        for (int i = 0; i < bounds.size() - 1; i++) {
+            String end = bounds.get(i).toString();
+            ranges.add(new JobLeaseService.Range(start, end));
+            start = end;
+        }
+        ranges.add(new JobLeaseService.Range(start, null));
+        return ranges;
+    }
+
+    private long expirePartition(JobLeaseService.Lease lease, LocalDate today) {
+        long expiredInPartition = 0;
+        Key lastKey = lease.checkpoint() != null ? Key.parse(lease.checkpoint()) : Key.FIRST;
+        Key end = lease.rangeEnd() != null ? Key.parse(lease.rangeEnd()) : Key.LAST;
+        boolean lazy = cardExpiryMode == CardExpiryMode.LAZY;
+        int limit = lazy ? lazyChunkSize : chunkSize;
+        while (true) {
+            Key from = lastKey;
+            Set<Long> userIds = new HashSet<>();
+            List<Key> expired = transactionTemplate.execute(status -> {
+                List<Key> keys = jdbcTemplate.query(EXPIRE_CHUNK_SQL,
+                    (rs, rowNum) -> {
+                        userIds.add(rs.getLong(3));
+                        return new Key(rs.getDate(1).toLocalDate(), rs.getLong(2));
+                    },
+                    Date.valueOf(today), Date.valueOf(from.expiryDate()), from.id(),
+                    Date.valueOf(end.expiryDate()), end.id(), limit);
+                if (!keys.isEmpty() && !jobLeaseService.checkpoint(lease, Collections.max(keys).toString())) {
+                    status.setRollbackOnly();
+                    return null;
+                }
+                return keys;
+            });
+            if (expired == null) {
+                return expiredInPartition;
+            }
+            if (expired.isEmpty()) {
+                jobLeaseService.complete(lease);
+                return expiredInPartition;
+            }
+            // Порция уже зафиксирована: сбрасываем кэш карт владельцев
+            cardCacheService.evictAll(userIds);
+            processedChunks.increment();
+            expiredCards.increment(expired.size());
+            expiredInPartition += expired.size();
+            lastKey = Collections.max(expired);
+            if (lazy && !pause()) {
+                return expiredInPartition;
+            }
+        }
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(lazyPauseMilliseconds);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private record Key(LocalDate expiryDate, long id) implements Comparable<Key> {
+        private static final Key FIRST = new Key(LocalDate.of(1, 1, 1), 0L);
+        private static final Key LAST = new Key(LocalDate.of(9999, 12, 31), Long.MAX_VALUE);
+
+        private static Key parse(String checkpoint) {
+            int separator = checkpoint.indexOf('/');
+            return new Key(LocalDate.parse(checkpoint.substring(0, separator)),
+                Long.parseLong(checkpoint.substring(separator + 1)));
+        }
+
+        @Override
+        public String toString() {
+            return expiryDate + "/" + id;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byDate = expiryDate.compareTo(other.expiryDate);
+            return byDate != 0 ? byDate : Long.compare(id, other.id);
+        }
+    }
+}
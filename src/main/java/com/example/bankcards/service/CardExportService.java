@@ -0,0 +1,117 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.card.CardExportFormat;
+import com.example.bankcards.dto.card.CardResponseDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.util.CardUtils;
+import com.example.bankcards.util.MinorUnits;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Потоковая выгрузка всех карт. Строки читаются курсором PostgreSQL порциями по fetch size
+ * (курсор открывается только при выключенном autocommit, поэтому чтение идёт в read-only транзакции)
+ * и сразу пишутся в поток ответа: сущности и контекст персистентности не создаются, память не зависит от размера таблицы.
+ */
+@Service
+public class CardExportService {
+    // Подбалансы горячих карт суммируются в том же запросе, без отдельного обращения на каждую карту
+    private static final String EXPORT_SQL =
+        "SELECT c.id, c.card_last4, c.holder_name, c.expiry_date, c.status, " +
+        "c.balance + CASE WHEN c.balance_shards > 0 THEN " +
+        "(SELECT COALESCE(SUM(s.balance), 0) FROM card_balance_shards s WHERE s.card_id = c.id) ELSE 0 END " +
+        "FROM cards c ORDER BY c.id";
+    private static final String CSV_HEADER = "id,maskedCardNumber,holderName,expiryDate,status,balance";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectWriter jsonWriter;
+    private final CardUtils cardUtils;
+    private final Counter exportedRows;
+
+    public CardExportService(DataSource dataSource,
+                             PlatformTransactionManager transactionManager,
+                             ObjectMapper objectMapper,
+                             CardUtils cardUtils,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.card-export-fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.jsonWriter = objectMapper.writerFor(CardResponseDto.class);
+        this.cardUtils = cardUtils;
+        this.exportedRows = meterRegistry.counter("cards.export.rows");
+    }
+
+    public void export(CardExportFormat format, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        if (format == CardExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+        LocalDate today = LocalDate.now();
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(EXPORT_SQL, rs -> {
+                try {
+                    writeRow(format, writer, toDto(rs, today));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                exportedRows.increment();
+            }));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    private CardResponseDto toDto(ResultSet rs, LocalDate today) throws SQLException {
+        CardResponseDto dto = new CardResponseDto();
+        dto.setId(rs.getLong(1));
+        dto.setMaskedCardNumber(cardUtils.maskLastFour(rs.getString(2)));
+        dto.setHolderName(rs.getString(3));
+        LocalDate expiryDate = rs.getObject(4, LocalDate.class);
+        dto.setExpiryDate(expiryDate);
+        dto.setStatus(Card.effectiveStatus(CardStatus.valueOf(rs.getString(5)), expiryDate, today));
+        dto.setBalance(MinorUnits.fromDecimal(rs.getBigDecimal(6)));
+        return dto;
+    }
+
+    private void writeRow(CardExportFormat format, Writer writer, CardResponseDto dto) throws IOException {
+        if (format == CardExportFormat.NDJSON) {
+            writer.write(jsonWriter.writeValueAsString(dto));
+        } else {
+            writer.write(dto.getId() + "," + dto.getMaskedCardNumber() + "," + csvField(dto.getHolderName()) + ","
+                + dto.getExpiryDate() + "," + dto.getStatus() + ","
+                + MinorUnits.toDecimal(dto.getBalance()).toPlainString());
+        }
+        writer.write('\n');
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.ledger.LedgerEntryDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardLedgerEntry;
+import com.example.bankcards.entity.enums.LedgerEntryType;
+import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.repository.CardLedgerEntryRepository;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.MinorUnits;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Service
+public class CardLedgerService {
+    private static final String INSERT_SQL =
+        "INSERT INTO card_ledger_entries (transfer_id, card_id, counterparty_card_id, entry_type, amount, balance_after) " +
+        "VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String POST_PENDING_CREDITS_SQL =
+        "UPDATE card_ledger_entries e SET balance_after = ? + p.running " +
+        "FROM (SELECT id, SUM(amount) OVER (ORDER BY id) AS running FROM card_ledger_entries " +
+        "WHERE card_id = ? AND balance_after IS NULL) p " +
+        "WHERE e.id = p.id";
+
+    private final CardLedgerEntryRepository cardLedgerEntryRepository;
+    private final CardRepository cardRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.ledger-batch-size:500}")
+    private int batchSize;
+
+    public CardLedgerService(CardLedgerEntryRepository cardLedgerEntryRepository,
+                             CardRepository cardRepository,
+                             JdbcTemplate jdbcTemplate) {
+        this.cardLedgerEntryRepository = cardLedgerEntryRepository;
+        this.cardRepository = cardRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public List<CardLedgerEntry> transferEntries(Card sourceCard, Card destinationCard, long amount,
+                                                 long sourceBalanceAfter, Long destinationBalanceAfter) {
+        UUID transferId = UUID.randomUUID();
+        return List.of(
+            new CardLedgerEntry(transferId, sourceCard.getId(), destinationCard.getId(),
+                LedgerEntryType.DEBIT, -amount, sourceBalanceAfter),
+            new CardLedgerEntry(transferId, destinationCard.getId(), sourceCard.getId(),
+                LedgerEntryType.CREDIT, amount, destinationBalanceAfter));
+    }
+
+    public void recordOpening(Card card) {
+        append(List.of(new CardLedgerEntry(UUID.randomUUID(), card.getId(), null,
+            LedgerEntryType.OPENING, card.getBalance(), card.getBalance())));
+    }
+
+    public void recordTransfer(Card sourceCard, Card destinationCard, long amount) {
+        append(transferEntries(sourceCard, destinationCard, amount,
+            sourceCard.getBalance(), destinationCard.getBalance()));
+    }
+
+    // Проводки копятся в буфере транзакции и пишутся одним batch-insert перед её фиксацией,
+    // поэтому журнал всегда согласован с балансами карт. created_at по умолчанию — clock_timestamp(),
+    // то есть момент этой вставки, а не начало транзакции
+    public void append(Collection<CardLedgerEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Проводки журнала записываются только внутри транзакции");
+        }
+        @SuppressWarnings("unchecked")
+        List<CardLedgerEntry> buffer = (List<CardLedgerEntry>) TransactionSynchronizationManager.getResource(this);
+        if (buffer == null) {
+            List<CardLedgerEntry> newBuffer = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, newBuffer);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    writeBatch(newBuffer);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CardLedgerService.this);
+                }
+            });
+            buffer = newBuffer;
+        }
+        buffer.addAll(entries);
+    }
+
+    private void writeBatch(List<CardLedgerEntry> buffer) {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, buffer, batchSize, (ps, entry) -> {
+            ps.setObject(1, entry.getTransferId());
+            ps.setLong(2, entry.getCardId());
+            if (entry.getCounterpartyCardId() != null) {
+                ps.setLong(3, entry.getCounterpartyCardId());
+            } else {
+                ps.setNull(3, Types.BIGINT);
+            }
+            ps.setString(4, entry.getEntryType().name());
+            ps.setBigDecimal(5, MinorUnits.toDecimal(entry.getAmount()));
+            if (entry.getBalanceAfter() != null) {
+                ps.setBigDecimal(6, MinorUnits.toDecimal(entry.getBalanceAfter()));
+            } else {
+                ps.setNull(6, Types.NUMERIC);
+            }
+        });
+    }
+
+    // Вызывается при свёртке подбалансов под FOR UPDATE на строке карты: зачисления, проведённые
+    // через подбалансы, получают баланс после себя в порядке записи, начиная с основного баланса до свёртки
+    public void postPendingCredits(Long cardId, long balanceBefore) {
+        jdbcTemplate.update(POST_PENDING_CREDITS_SQL, MinorUnits.toDecimal(balanceBefore), cardId);
+    }
+
+    @Transactional(readOnly = true)
+    public Page<LedgerEntryDto> getCardLedger(Long cardId, Long userId, LocalDateTime asOf, Pageable pageable) {
+        if (!cardRepository.existsByIdAndUserId(cardId, userId)) {
+            throw new CardNotFoundException("Карта с идентификатором не найдена: " + cardId);
+        }
+        LocalDateTime pointInTime = asOf != null ? asOf : LocalDateTime.now();
+        return cardLedgerEntryRepository.findByCardIdAsOf(cardId, pointInTime, pageable)
+            .map(this::convertToDto);
+    }
+
+    private LedgerEntryDto convertToDto(CardLedgerEntry entry) {
+        LedgerEntryDto dto = new LedgerEntryDto();
+        dto.setId(entry.getId());
+        dto.setTransferId(entry.getTransferId());
+        dto.setCardId(entry.getCardId());
+        dto.setCounterpartyCardId(entry.getCounterpartyCardId());
+        dto.setEntryType(entry.getEntryType());
+        dto.setAmount(entry.getAmount());
+        dto.setBalanceAfter(entry.getBalanceAfter());
+        dto.setCreatedAt(entry.getCreatedAt());
+        return dto;
+    }
+}
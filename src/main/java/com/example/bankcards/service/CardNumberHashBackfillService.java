@@ -0,0 +1,176 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Заполняет производные от номера колонки (слепой индекс card_number_hash и открытые последние цифры card_last4)
+ * у карт, созданных до их появления. Порции идут по ключу id, каждая — отдельным оператором (своей транзакцией);
+ * номер расшифровывается один раз на строку в БД через pgcrypto тем же ключом из параметра сеанса, что и у сущности Card,
+ * поэтому номера карт не покидают базу. SKIP LOCKED позволяет нескольким узлам запускаться одновременно.
+ * Пропущенные строки (заблокированные переводом или другим узлом) подбираются следующими проходами, но не больше
+ * app.card-number-hash-backfill-max-passes раз, чтобы удержанная блокировка не держала поток заполнения бесконечно.
+ * Заполнение идёт в отдельном потоке после готовности приложения и не задерживает приём запросов.
+ * Если порция падает (повторяющийся номер нарушает уникальность card_number_hash, шифртекст не расшифровывается),
+ * её строки заполняются по одной: виновные строки попадают в журнал и пропускаются, остальные заполняются.
+ */
+@Service
+public class CardNumberHashBackfillService {
+    private static final Logger log = LoggerFactory.getLogger(CardNumberHashBackfillService.class);
+
+    private static final String DECRYPTED_NUMBER =
+        "pgp_sym_decrypt(card_number::bytea, current_setting('" + Card.ENCRYPTION_KEY_SETTING + "')) AS card_number";
+    private static final String UNFILLED = "(card_number_hash IS NULL OR card_last4 IS NULL) AND id <> ALL(?) ";
+    private static final String FILL = "UPDATE cards c SET card_number_hash = encode(hmac(b.card_number, ?, 'sha256'), 'hex'), " +
+        "card_last4 = right(b.card_number, 4) FROM (SELECT id, " + DECRYPTED_NUMBER + " FROM cards ";
+    private static final String BACKFILL_CHUNK_SQL = FILL +
+        "WHERE id > ? AND " + UNFILLED + "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED) b " +
+        "WHERE c.id = b.id RETURNING c.id";
+    private static final String BACKFILL_ROW_SQL = FILL +
+        "WHERE id = ? AND (card_number_hash IS NULL OR card_last4 IS NULL) FOR UPDATE SKIP LOCKED) b WHERE c.id = b.id";
+    private static final String CHUNK_IDS_SQL =
+        "SELECT id FROM cards WHERE id > ? AND " + UNFILLED + "ORDER BY id LIMIT ?";
+    private static final String DUPLICATE_OF_SQL =
+        "SELECT d.id FROM (SELECT " + DECRYPTED_NUMBER + " FROM cards WHERE id = ?) c " +
+        "JOIN cards d ON d.card_number_hash = encode(hmac(c.card_number, ?, 'sha256'), 'hex')";
+    private static final String REMAINING_SQL = "SELECT count(*) FROM cards WHERE " + UNFILLED;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "card-number-hash-backfill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${app.card-number-hmac-secret}")
+    private String hmacSecret;
+
+    @Value("${app.card-number-hash-backfill-chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${app.card-number-hash-backfill-retry-milliseconds:1000}")
+    private long retryMilliseconds;
+
+    @Value("${app.card-number-hash-backfill-max-passes:10}")
+    private int maxPasses;
+
+    public CardNumberHashBackfillService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startBackfill() {
+        executor.execute(() -> {
+            try {
+                backfill();
+            } catch (RuntimeException e) {
+                log.error("Заполнение card_number_hash и card_last4 прервано, оно повторится при следующем запуске", e);
+            }
+        });
+    }
+
+    // Паузу между проходами прерывает остановка приложения
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public long backfill() {
+        Set<Long> skipped = new TreeSet<>();
+        long filled = 0;
+        long remaining = 0;
+        for (int passNumber = 1; passNumber <= maxPasses; passNumber++) {
+            filled += pass(skipped);
+            remaining = jdbcTemplate.queryForObject(REMAINING_SQL, Long.class, (Object) skippedIds(skipped));
+            if (remaining == 0 || passNumber == maxPasses) {
+                break;
+            }
+            log.info("Осталось заполнить card_number_hash и card_last4 у {} заблокированных карт, повтор", remaining);
+            if (!pause()) {
+                break;
+            }
+        }
+        if (filled > 0) {
+            log.info("Заполнены card_number_hash и card_last4 у {} карт", filled);
+        }
+        if (remaining > 0) {
+            log.warn("card_number_hash и card_last4 не заполнены у {} заблокированных карт, они будут заполнены " +
+                "при следующем запуске", remaining);
+        }
+        if (!skipped.isEmpty()) {
+            log.warn("card_number_hash и card_last4 не заполнены у карт {}: нужен ручной разбор", skipped);
+        }
+        return filled;
+    }
+
+    private long pass(Set<Long> skipped) {
+        long filled = 0;
+        long lastId = 0;
+        while (true) {
+            List<Long> ids;
+            try {
+                ids = jdbcTemplate.query(BACKFILL_CHUNK_SQL, (rs, rowNum) -> rs.getLong(1),
+                    hmacSecret, lastId, skippedIds(skipped), chunkSize);
+            } catch (DataAccessException e) {
+                ids = jdbcTemplate.queryForList(CHUNK_IDS_SQL, Long.class, lastId, skippedIds(skipped), chunkSize);
+                if (!ids.isEmpty()) {
+                    filled += fillOneByOne(ids, skipped);
+                    lastId = Collections.max(ids);
+                    continue;
+                }
+            }
+            if (ids.isEmpty()) {
+                return filled;
+            }
+            filled += ids.size();
+            lastId = Collections.max(ids);
+        }
+    }
+
+    // Строки упавшей порции по одной: заполняются все, кроме виновных
+    private long fillOneByOne(List<Long> ids, Set<Long> skipped) {
+        long filled = 0;
+        for (Long id : ids) {
+            try {
+                filled += jdbcTemplate.update(BACKFILL_ROW_SQL, hmacSecret, id);
+            } catch (DuplicateKeyException e) {
+                skipped.add(id);
+                log.warn("Номер карты {} совпадает с номером карты {}, card_number_hash не заполнен", id,
+                    jdbcTemplate.queryForList(DUPLICATE_OF_SQL, Long.class, id, hmacSecret));
+            } catch (DataAccessException e) {
+                skipped.add(id);
+                log.warn("Не удалось заполнить card_number_hash карты {}: {}", id, e.getMessage());
+            }
+        }
+        return filled;
+    }
+
+    private static Long[] skippedIds(Set<Long> skipped) {
+        return skipped.toArray(Long[]::new);
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(retryMilliseconds);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
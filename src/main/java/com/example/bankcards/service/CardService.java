@@ -1,161 +1,481 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.card.CardCursor;
+import com.example.bankcards.dto.card.CardFilterDto;
 import com.example.bankcards.dto.card.CardRequestDto;
 import com.example.bankcards.dto.card.CardResponseDto;
+import com.example.bankcards.dto.card.CardSeekPageDto;
+import com.example.bankcards.dto.card.CardSortKey;
+import com.example.bankcards.dto.card.CardSummaryDto;
+import com.example.bankcards.dto.card.ETaggedDto;
+import com.example.bankcards.dto.card.UserCardsVersionDto;
+import com.example.bankcards.dto.transfer.BatchTransferMode;
+import com.example.bankcards.dto.transfer.BatchTransferRequestDto;
+import com.example.bankcards.dto.transfer.BatchTransferResponseDto;
 import com.example.bankcards.dto.transfer.TransferRequestDto;
+import com.example.bankcards.dto.transfer.TransferResultDto;
+import com.example.bankcards.dto.transfer.TransferResultStatus;
 import com.example.bankcards.entity.Card;
-import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.CardLedgerEntry;
+import com.example.bankcards.entity.enums.CardExpiryMode;
 import com.example.bankcards.entity.enums.CardStatus;
 import com.example.bankcards.exception.CardNotFoundException;
 import com.example.bankcards.exception.CardNullException;
 import com.example.bankcards.exception.CardNumberExistsException;
 import com.example.bankcards.exception.InsufficientFundsException;
 import com.example.bankcards.exception.InvalidCardOperationException;
+import com.example.bankcards.exception.ValidationException;
 import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.CardNumberHasher;
 import com.example.bankcards.util.CardUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 public class CardService {
+    private static final String ALL_CARDS_CACHE_KEY = "all";
+    private static final String CARD_CACHE_KEY_PREFIX = "card:";
+
     private final CardRepository cardRepository;
     private final UserService userService;
     private final CardUtils cardUtils;
+    private final CardNumberHasher cardNumberHasher;
     private final CardExpirationService cardExpirationService;
+    private final CardLedgerService cardLedgerService;
+    private final CardBalanceShardService cardBalanceShardService;
+    private final CardCacheService cardCacheService;
+    private final TransactionTemplate snapshotTemplate;
+
+    @Value("${app.transfer-lock-timeout-milliseconds:2000}")
+    private long transferLockTimeout;
+
+    @Value("${app.transfer-batch-max-size:1000}")
+    private int transferBatchMaxSize;
+
+    @Value("${app.transfer-batch-default-mode:ATOMIC}")
+    private BatchTransferMode transferBatchDefaultMode;
 
-    public CardService(CardRepository cardRepository, UserService userService, CardUtils cardUtils, CardExpirationService cardExpirationService) {
+    @Value("${app.hot-card-max-shards:64}")
+    private int hotCardMaxShards;
+
+    @Value("${app.card-expiry-mode:EAGER}")
+    private CardExpiryMode cardExpiryMode;
+
+    @Value("${app.card-seek-max-size:100}")
+    private int seekMaxSize;
+
+    public CardService(CardRepository cardRepository,
+                       UserService userService,
+                       CardUtils cardUtils,
+                       CardNumberHasher cardNumberHasher,
+                       CardExpirationService cardExpirationService,
+                       CardLedgerService cardLedgerService,
+                       CardBalanceShardService cardBalanceShardService,
+                       CardCacheService cardCacheService,
+                       PlatformTransactionManager transactionManager) {
         this.cardRepository = cardRepository;
         this.userService = userService;
         this.cardUtils = cardUtils;
+        this.cardNumberHasher = cardNumberHasher;
         this.cardExpirationService = cardExpirationService;
+        this.cardLedgerService = cardLedgerService;
+        this.cardBalanceShardService = cardBalanceShardService;
+        this.cardCacheService = cardCacheService;
+        // Ответ и его ETag читаются в одном снимке, поэтому ETag всегда соответствует телу
+        this.snapshotTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
     }
 
-    @Transactional(readOnly = true)
-    public Page<CardResponseDto> getUserCards(Pageable pageable, String username) {
-        User user = userService.getUserByUsername(username);
-        return cardRepository.findByUser(user, pageable)
-            .map(this::convertToDto);
+    // Чтения владельца идут через кэш без транзакции сервиса: при попадании соединение с БД не берётся.
+    // В кэше лежит тело вместе с ETag, прочитанные при промахе в одном снимке. День входит в ключ кэша,
+    // так как от него зависят статус «истекла» и ETag; свёртка подбалансов сбрасывает кэш владельца.
+    // currentETag — ETag, уже прочитанный контроллером для If-None-Match: запись с другим ETag перезагружается
+    public Page<CardResponseDto> getUserCards(Pageable pageable, Long userId) {
+        return getUserCardsWithETag(pageable, userId).body();
     }
 
-    @Transactional(readOnly = true)
-    public List<CardResponseDto> getAllUserCards(String username) {
-        User user = userService.getUserByUsername(username);
-        return cardRepository.findByUser(user).stream()
-            .map(this::convertToDto)
-            .collect(Collectors.toList());
+    public ETaggedDto<Page<CardResponseDto>> getUserCardsWithETag(Pageable pageable, Long userId) {
+        return getUserCardsWithETag(pageable, userId, null);
+    }
+
+    public ETaggedDto<Page<CardResponseDto>> getUserCardsWithETag(Pageable pageable, Long userId,
+                                                                  String currentETag) {
+        return cardCacheService.get(userId, cacheKey(pageable), () -> snapshotTemplate.execute(status ->
+            new ETaggedDto<>(getUserCardsETag(userId),
+                cardRepository.findSummariesByUserId(userId, pageable).map(this::convertToDto))),
+            cached -> currentETag == null || currentETag.equals(cached.etag()));
+    }
+
+    public List<CardResponseDto> getAllUserCards(Long userId) {
+        return getAllUserCardsWithETag(userId).body();
+    }
+
+    public ETaggedDto<List<CardResponseDto>> getAllUserCardsWithETag(Long userId) {
+        return getAllUserCardsWithETag(userId, null);
+    }
+
+    public ETaggedDto<List<CardResponseDto>> getAllUserCardsWithETag(Long userId, String currentETag) {
+        return cardCacheService.get(userId, cacheKey(ALL_CARDS_CACHE_KEY), () -> snapshotTemplate.execute(status ->
+            new ETaggedDto<>(getUserCardsETag(userId),
+                cardRepository.findSummariesByUserId(userId).stream()
+                    .map(this::convertToDto)
+                    .collect(Collectors.toList()))),
+            cached -> currentETag == null || currentETag.equals(cached.etag()));
     }
 
     @Transactional(readOnly = true)
     public List<CardResponseDto> getAllCards() {
-        return cardRepository.findAllOrderedById().stream()
+        return cardRepository.findAllSummariesOrderedById().stream()
             .map(this::convertToDto)
             .collect(Collectors.toList());
     }
 
-    @Transactional(readOnly = true)
-    public CardResponseDto getCardById(Long id, String username) {
-        User user = userService.getUserByUsername(username);
-        Card card = cardRepository.findByIdAndUser(id, user)
-            .orElseThrow(() -> new CardNotFoundException("Карта с идентификатором не найдена: " + id));
-        return convertToDto(card);
+    public CardResponseDto getCardById(Long id, Long userId) {
+        return getCardWithETag(id, userId).body();
+    }
+
+    public ETaggedDto<CardResponseDto> getCardWithETag(Long id, Long userId) {
+        return getCardWithETag(id, userId, null);
+    }
+
+    public ETaggedDto<CardResponseDto> getCardWithETag(Long id, Long userId, String currentETag) {
+        requireOwner(userId);
+        return cardCacheService.get(userId, cacheKey(CARD_CACHE_KEY_PREFIX + id),
+            () -> snapshotTemplate.execute(status -> {
+                CardResponseDto card = convertToDto(cardRepository.findSummaryByIdAndUserId(id, userId)
+                    .orElseThrow(() -> new CardNotFoundException("Карта с идентификатором не найдена: " + id)));
+                return new ETaggedDto<>(getCardETag(id, userId)
+                    .orElseThrow(() -> new CardNotFoundException("Карта с идентификатором не найдена: " + id)), card);
+            }),
+            cached -> currentETag == null || currentETag.equals(cached.etag()));
+    }
+
+    private static Object cacheKey(Object key) {
+        return List.of(LocalDate.now().toEpochDay(), key);
+    }
+
+    // ETag списков карт пользователя без загрузки карт. День входит в ETag, так как статус «истекла»
+    // вычисляется по текущей дате и может смениться без изменения строки. Зачисление на горячую карту
+    // не меняет её строку, но перевод всегда списывает с другой карты того же пользователя
+    public String getUserCardsETag(Long userId) {
+        UserCardsVersionDto version = cardRepository.findCardsVersionByUserId(userId);
+        return "u" + userId + "-" + version.cardCount() + "-" + version.versionSum() + "-" + LocalDate.now().toEpochDay();
+    }
+
+    // Зачисления на горячую карту идут в подбалансы и не меняют версию строки карты до свёртки,
+    // поэтому для неё в ETag входит и несвёрнутая сумма
+    public Optional<String> getCardETag(Long id, Long userId) {
+        return cardRepository.findVersionByIdAndUserId(id, userId).map(version ->
+            "c" + id + "-" + version.version() + "-" + version.pendingBalance() + "-" + LocalDate.now().toEpochDay());
     }
 
     @Transactional
-    public CardResponseDto createCard(CardRequestDto cardRequestDto, String username) {
-        if (cardRepository.existsByCardNumber(cardRequestDto.getCardNumber())) {
+    public CardResponseDto createCard(CardRequestDto cardRequestDto, Long userId) {
+        String cardNumberHash = cardNumberHasher.hash(cardRequestDto.getCardNumber());
+        if (cardRepository.existsByCardNumberHash(cardNumberHash)) {
             throw new CardNumberExistsException("Номер карты уже существует");
         }
-        User user = userService.getUserByUsername(username);
-
-        if (cardRepository.existsByCardNumberAndUser(cardRequestDto.getCardNumber(), user)) {
-            throw new CardNumberExistsException("Номер карты уже существует для этого пользователя");
-        }
 
         Card card = new Card();
         card.setCardNumber(cardRequestDto.getCardNumber());
+        card.setCardNumberHash(cardNumberHash);
+        card.setCardLast4(cardUtils.lastFour(cardRequestDto.getCardNumber()));
         card.setHolderName(cardRequestDto.getHolderName());
         card.setExpiryDate(cardRequestDto.getExpiryDate());
         card.setStatus(CardStatus.ACTIVE);
         card.setBalance(cardRequestDto.getBalance());
-        card.setUser(user);
+        card.setUser(userService.getUserReference(userId));
 
         Card savedCard = cardRepository.save(card);
+        cardLedgerService.recordOpening(savedCard);
+        cardCacheService.evictAfterCommit(userId);
         return convertToDto(savedCard);
     }
 
     @Transactional
-    public CardResponseDto updateCardStatus(Long id, CardStatus status, String username) {
-        User user = userService.getUserByUsername(username);
-        Card card = cardRepository.findByIdAndUser(id, user)
-            .orElseThrow(() -> new CardNotFoundException("Карта с идентификатором не найдена: " + id));
+    public CardResponseDto updateCardStatus(Long id, CardStatus status, Long userId) {
+        return changeStatus(findCard(id, userId), status);
+    }
 
-        if (card.getStatus() == CardStatus.EXPIRED) {
+    // Вызов администратора: доступна любая карта
+    @Transactional
+    public CardResponseDto updateAnyCardStatus(Long id, CardStatus status) {
+        return changeStatus(findAnyCard(id), status);
+    }
+
+    private CardResponseDto changeStatus(Card card, CardStatus status) {
+        if (card.effectiveStatus(LocalDate.now()) == CardStatus.EXPIRED) {
             throw new InvalidCardOperationException("Невозможно изменить статус карты с истекшим сроком действия");
         }
 
         card.setStatus(status);
         Card updatedCard = cardRepository.save(card);
+        cardCacheService.evictAfterCommit(card.getUser().getId());
         return convertToDto(updatedCard);
     }
 
     @Transactional
-    public void deleteCard(Long id, String username) {
-        User user = userService.getUserByUsername(username);
-        Card card = cardRepository.findByIdAndUser(id, user)
-            .orElseThrow(() -> new CardNotFoundException("Карта с идентификатором не найдена: " + id));
+    public void deleteCard(Long id, Long userId) {
+        removeCard(findCard(id, userId));
+    }
+
+    // Вызов администратора: доступна любая карта
+    @Transactional
+    public void deleteAnyCard(Long id) {
+        removeCard(findAnyCard(id));
+    }
+
+    private void removeCard(Card card) {
         cardRepository.delete(card);
+        cardCacheService.evictAfterCommit(card.getUser().getId());
+    }
+
+    private Card findCard(Long id, Long userId) {
+        requireOwner(userId);
+        return cardRepository.findByIdAndUserId(id, userId)
+            .orElseThrow(() -> new CardNotFoundException("Карта с идентификатором не найдена: " + id));
+    }
+
+    private Card findAnyCard(Long id) {
+        return cardRepository.findById(id)
+            .orElseThrow(() -> new CardNotFoundException("Карта с идентификатором не найдена: " + id));
+    }
+
+    // Методы владельца не должны молча превращаться в доступ администратора; для него есть методы *AnyCard
+    private static void requireOwner(Long userId) {
+        if (userId == null) {
+            throw new IllegalArgumentException("Не задан владелец карты");
+        }
+    }
+
+    @Transactional
+    public void transferBetweenCards(TransferRequestDto transferRequest, Long userId) {
+        Long sourceCardId = transferRequest.getSourceCardId();
+        Long destinationCardId = transferRequest.getDestinationCardId();
+        if (sourceCardId.equals(destinationCardId)) {
+            throw new InvalidCardOperationException("Карта списания и карта зачисления должны различаться");
+        }
+
+        // Локальный список горячих карт (обновляется раз в интервал свёртки) выбирает только попытку FOR SHARE;
+        // зачисление через подбалансы решается по заблокированной строке
+        Long sharedCardId = cardBalanceShardService.isHot(destinationCardId) ? destinationCardId : null;
+        Set<Long> shareLocked = new HashSet<>();
+        Map<Long, Card> cards = lockCards(List.of(sourceCardId, destinationCardId), userId, sharedCardId, shareLocked);
+
+        Card sourceCard = cards.get(sourceCardId);
+        Card destinationCard = cards.get(destinationCardId);
+        long amount = transferRequest.getAmount();
+        cardCacheService.evictAfterCommit(userId);
+        if (sourceCard != null && sourceCard.getBalanceShards() > 0 && sourceCard.getBalance() < amount) {
+            sourceCard.setBalance(Math.addExact(sourceCard.getBalance(), cardBalanceShardService.drain(sourceCard)));
+        }
+        validateTransfer(sourceCard, destinationCard, amount);
+
+        sourceCard.setBalance(sourceCard.getBalance() - amount);
+        cardRepository.save(sourceCard);
+
+        if (shareLocked.contains(destinationCardId)) {
+            cardBalanceShardService.credit(destinationCard, amount);
+            cardLedgerService.append(cardLedgerService.transferEntries(sourceCard, destinationCard, amount,
+                sourceCard.getBalance(), null));
+            return;
+        }
+        destinationCard.setBalance(Math.addExact(destinationCard.getBalance(), amount));
+        cardRepository.save(destinationCard);
+        cardLedgerService.recordTransfer(sourceCard, destinationCard, amount);
     }
 
     @Transactional
-    public void transferBetweenCards(TransferRequestDto transferRequest, String username) {
-        User user = userService.getUserByUsername(username);
+    public BatchTransferResponseDto transferBatch(BatchTransferRequestDto batchRequest, Long userId) {
+        List<TransferRequestDto> transfers = batchRequest.getTransfers();
+        if (transfers.size() > transferBatchMaxSize) {
+            throw new ValidationException("Слишком много переводов в пакете",
+                Map.of("transfers", "Не более " + transferBatchMaxSize + " переводов в пакете"));
+        }
+        BatchTransferMode mode = batchRequest.getMode() != null ? batchRequest.getMode() : transferBatchDefaultMode;
+
+        Set<Long> cardIds = new TreeSet<>();
+        transfers.forEach(transfer -> {
+            cardIds.add(transfer.getSourceCardId());
+            cardIds.add(transfer.getDestinationCardId());
+        });
+        Map<Long, Card> cards = lockCards(cardIds, userId, null, null);
+
+        Map<Long, Long> balances = new HashMap<>();
+        cards.values().forEach(card -> balances.put(card.getId(), Math.addExact(card.getBalance(), foldShards(card))));
+        Map<Long, Long> deltas = new HashMap<>();
+        List<CardLedgerEntry> ledgerEntries = new ArrayList<>();
+        List<TransferResultDto> results = new ArrayList<>(transfers.size());
+        int failed = 0;
+
+        for (int i = 0; i < transfers.size(); i++) {
+            TransferRequestDto transfer = transfers.get(i);
+            try {
+                if (transfer.getSourceCardId().equals(transfer.getDestinationCardId())) {
+                    throw new InvalidCardOperationException("Карта списания и карта зачисления должны различаться");
+                }
+                Card sourceCard = cards.get(transfer.getSourceCardId());
+                Card destinationCard = cards.get(transfer.getDestinationCardId());
+                validateTransfer(sourceCard, destinationCard, transfer.getAmount(), balances);
+
+                balances.merge(transfer.getSourceCardId(), -transfer.getAmount(), Long::sum);
+                balances.merge(transfer.getDestinationCardId(), transfer.getAmount(), Long::sum);
+                deltas.merge(transfer.getSourceCardId(), -transfer.getAmount(), Long::sum);
+                deltas.merge(transfer.getDestinationCardId(), transfer.getAmount(), Long::sum);
+                ledgerEntries.addAll(cardLedgerService.transferEntries(sourceCard, destinationCard, transfer.getAmount(),
+                    balances.get(transfer.getSourceCardId()), balances.get(transfer.getDestinationCardId())));
+                results.add(new TransferResultDto(i, transfer, TransferResultStatus.APPLIED, null));
+            } catch (CardNotFoundException | InvalidCardOperationException | InsufficientFundsException e) {
+                failed++;
+                results.add(new TransferResultDto(i, transfer, TransferResultStatus.FAILED, e.getMessage()));
+            }
+        }
+
+        boolean committed = mode == BatchTransferMode.BEST_EFFORT || failed == 0;
+        if (committed) {
+            cardCacheService.evictAfterCommit(userId);
+            deltas.forEach((cardId, delta) -> {
+                if (delta != 0) {
+                    cardRepository.addToBalance(cardId, delta);
+                }
+            });
+            cardLedgerService.append(ledgerEntries);
+        } else {
+            results.stream()
+                .filter(result -> result.getStatus() == TransferResultStatus.APPLIED)
+                .forEach(result -> result.setStatus(TransferResultStatus.ROLLED_BACK));
+        }
+
+        BatchTransferResponseDto response = new BatchTransferResponseDto();
+        response.setMode(mode);
+        response.setCommitted(committed);
+        response.setApplied(committed ? transfers.size() - failed : 0);
+        response.setFailed(failed);
+        response.setResults(results);
+        return response;
+    }
 
-        Card sourceCard = cardRepository.findByIdAndUser(transferRequest.getSourceCardId(), user)
-            .orElseThrow(() -> new CardNotFoundException("Исходная карта не найдена"));
+    private void validateTransfer(Card sourceCard, Card destinationCard, long amount) {
+        validateTransfer(sourceCard, destinationCard, amount, null);
+    }
 
-        Card destinationCard = cardRepository.findByIdAndUser(transferRequest.getDestinationCardId(), user)
-            .orElseThrow(() -> new CardNotFoundException("Карта назначения не найдена"));
+    private void validateTransfer(Card sourceCard, Card destinationCard, long amount, Map<Long, Long> balances) {
+        if (sourceCard == null) {
+            throw new CardNotFoundException("Исходная карта не найдена");
+        }
+        if (destinationCard == null) {
+            throw new CardNotFoundException("Карта назначения не найдена");
+        }
 
         if (sourceCard.getStatus() != CardStatus.ACTIVE || destinationCard.getStatus() != CardStatus.ACTIVE) {
             throw new InvalidCardOperationException("Обе карты должны быть активны для перевода");
         }
 
-        if (sourceCard.getBalance() < transferRequest.getAmount()) {
+        long sourceBalance = balances != null ? balances.get(sourceCard.getId()) : sourceCard.getBalance();
+        if (sourceBalance < amount) {
             throw new InsufficientFundsException("Недостаточно средств для перевода");
         }
 
         validateCardForOperations(sourceCard);
         validateCardForOperations(destinationCard);
+    }
 
-        sourceCard.setBalance(sourceCard.getBalance() - transferRequest.getAmount());
-        destinationCard.setBalance(destinationCard.getBalance() + transferRequest.getAmount());
+    // Переносит подбалансы горячей карты в основную строку, пока она заблокирована FOR UPDATE
+    private long foldShards(Card card) {
+        if (card.getBalanceShards() == 0) {
+            return 0L;
+        }
+        long drained = cardBalanceShardService.drain(card);
+        if (drained != 0) {
+            cardRepository.addToBalance(card.getId(), drained);
+        }
+        return drained;
+    }
 
-        cardRepository.save(sourceCard);
-        cardRepository.save(destinationCard);
+    // sharedCardId блокируется FOR SHARE, если под блокировкой у неё есть подбалансы (тогда её id попадает
+    // в shareLocked), остальные карты — FOR UPDATE; порядок по id сохраняется в обоих случаях
+    private Map<Long, Card> lockCards(Collection<Long> cardIds, Long userId, Long sharedCardId, Set<Long> shareLocked) {
+        requireOwner(userId);
+        if (transferLockTimeout > 0) {
+            cardRepository.setLocalLockTimeout(transferLockTimeout + "ms");
+        }
+        if (sharedCardId == null) {
+            return cardRepository.findAllByIdInAndUserIdForUpdate(cardIds, userId).stream()
+                .collect(Collectors.toMap(Card::getId, Function.identity()));
+        }
+        Map<Long, Card> cards = new HashMap<>();
+        for (Long cardId : new TreeSet<>(cardIds)) {
+            if (cardId.equals(sharedCardId) && cardBalanceShardService.lockForShardedCredit(cardId, userId)) {
+                shareLocked.add(cardId);
+                // Строка уже под FOR SHARE, поэтому обычное чтение видит её текущую версию
+                cardRepository.findByIdAndUserId(cardId, userId)
+                    .ifPresent(card -> cards.put(card.getId(), card));
+            } else {
+                cardRepository.findAllByIdInAndUserIdForUpdate(List.of(cardId), userId)
+                    .forEach(card -> cards.put(card.getId(), card));
+            }
+        }
+        return cards;
     }
 
     @Transactional
-    public void checkAndUpdateExpiredCards() {
-        List<Card> cards = cardRepository.findAll();
-        LocalDate today = LocalDate.now();
-
-        cards.forEach(card -> {
-            if (card.getExpiryDate().isBefore(today) && card.getStatus() != CardStatus.EXPIRED) {
-                card.setStatus(CardStatus.EXPIRED);
-                cardRepository.save(card);
+    public CardResponseDto updateBalanceShards(Long id, int shardCount) {
+        if (shardCount < 0 || shardCount > hotCardMaxShards) {
+            throw new ValidationException("Некорректное число подбалансов",
+                Map.of("shards", "Допустимо от 0 до " + hotCardMaxShards));
+        }
+        Card card = cardRepository.findByIdForUpdate(id)
+            .orElseThrow(() -> new CardNotFoundException("Карта с идентификатором не найдена: " + id));
+        if (shardCount < card.getBalanceShards() || shardCount == 0) {
+            card.setBalance(Math.addExact(card.getBalance(), cardBalanceShardService.drain(card)));
+            cardBalanceShardService.deleteShardsFrom(id, shardCount);
+        }
+        card.setBalanceShards(shardCount);
+        Card updatedCard = cardRepository.save(card);
+        cardCacheService.evictAfterCommit(card.getUser().getId());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cardBalanceShardService.refreshHotCards();
             }
         });
+        return convertToDto(updatedCard);
     }
 
+    // В режиме LAZY статус вычисляется при чтении, а сохранённый сверяется фоновыми порциями без ночного пика
     @Scheduled(cron = "0 0 0 * * ?")
-    @Transactional
     public void scheduleCheckAndUpdateExpiredCards() {
+        if (cardExpiryMode == CardExpiryMode.EAGER) {
+            cardExpirationService.checkAndUpdateExpiredCards();
+        }
+    }
+
+    // Подхватывает разделы, брошенные упавшим узлом, и запускает пропущенный ночной проход
+    @Scheduled(initialDelayString = "${app.job-lease-poll-milliseconds:60000}",
+        fixedDelayString = "${app.job-lease-poll-milliseconds:60000}")
+    public void resumeCheckAndUpdateExpiredCards() {
         cardExpirationService.checkAndUpdateExpiredCards();
     }
 
@@ -169,9 +489,8 @@ public class CardService {
         if (card.getStatus() == CardStatus.EXPIRED) {
             throw new InvalidCardOperationException("Срок действия карты истёк");
         }
+        // Статус не сохраняется здесь: транзакция всё равно откатится, сверку выполняет CardExpirationService
         if (card.getExpiryDate().isBefore(LocalDate.now())) {
-            card.setStatus(CardStatus.EXPIRED);
-            cardRepository.save(card);
             throw new InvalidCardOperationException("Карта просрочена");
         }
     }
@@ -183,11 +502,26 @@ public class CardService {
 
         CardResponseDto dto = new CardResponseDto();
         dto.setId(card.getId());
-        dto.setMaskedCardNumber(cardUtils.maskCardNumber(card.getCardNumber()));
+        dto.setMaskedCardNumber(card.getCardLast4() != null
+            ? cardUtils.maskLastFour(card.getCardLast4())
+            : cardUtils.maskCardNumber(card.getCardNumber()));
         dto.setHolderName(card.getHolderName());
         dto.setExpiryDate(card.getExpiryDate());
-        dto.setStatus(card.getStatus());
-        dto.setBalance(card.getBalance());
+        dto.setStatus(card.effectiveStatus(LocalDate.now()));
+        dto.setBalance(card.getBalanceShards() > 0
+            ? Math.addExact(card.getBalance(), cardBalanceShardService.pendingBalance(card.getId()))
+            : card.getBalance());
+        return dto;
+    }
+
+    CardResponseDto convertToDto(CardSummaryDto card) {
+        CardResponseDto dto = new CardResponseDto();
+        dto.setId(card.id());
+        dto.setMaskedCardNumber(cardUtils.maskLastFour(card.cardLast4()));
+        dto.setHolderName(card.holderName());
+        dto.setExpiryDate(card.expiryDate());
+        dto.setStatus(Card.effectiveStatus(card.status(), card.expiryDate(), LocalDate.now()));
+        dto.setBalance(Math.addExact(card.balance(), card.pendingBalance()));
         return dto;
     }
 
@@ -196,21 +530,14 @@ public class CardService {
         CardStatus status,
         LocalDate expiryDateFrom,
         LocalDate expiryDateTo,
-        Double minBalance,
-        Double maxBalance,
-        String username,
+        Long minBalance,
+        Long maxBalance,
+        Long userId,
         Pageable pageable
     ) {
-        User user = userService.getUserByUsername(username);
-        return cardRepository.findWithFilters(
-            status,
-            expiryDateFrom,
-            expiryDateTo,
-            minBalance,
-            maxBalance,
-            user.getId(),
-            pageable
-        ).map(this::convertToDto);
+        CardFilterDto filter = new CardFilterDto(status, expiryDateFrom, expiryDateTo, minBalance, maxBalance, userId);
+        return cardRepository.findSummaries(filter, LocalDate.now(), pageable)
+            .map(this::convertToDto);
     }
 
     @Transactional(readOnly = true)
@@ -218,18 +545,43 @@ public class CardService {
         CardStatus status,
         LocalDate expiryDateFrom,
         LocalDate expiryDateTo,
-        Double minBalance,
-        Double maxBalance,
+        Long minBalance,
+        Long maxBalance,
         Pageable pageable
     ) {
-        return cardRepository.findWithFilters(
-            status,
-            expiryDateFrom,
-            expiryDateTo,
-            minBalance,
-            maxBalance,
-            null,
-            pageable
-        ).map(this::convertToDto);
+        CardFilterDto filter = new CardFilterDto(status, expiryDateFrom, expiryDateTo, minBalance, maxBalance, null);
+        return cardRepository.findSummaries(filter, LocalDate.now(), pageable)
+            .map(this::convertToDto);
+    }
+
+    // Выдача по курсору: запрашивается size + 1 строк, лишняя строка лишь сообщает о наличии следующей страницы
+    @Transactional(readOnly = true)
+    public CardSeekPageDto seekCards(CardFilterDto filter, CardSortKey sortKey, Sort.Direction direction,
+                                     String cursor, int size, boolean includeTotal) {
+        if (size < 1 || size > seekMaxSize) {
+            throw new ValidationException("Некорректный размер страницы",
+                Map.of("size", "Допустимо от 1 до " + seekMaxSize));
+        }
+        // Индекса по balance нет (он лишил бы обновления баланса HOT), поэтому по балансу сортируются
+        // только карты одного владельца, которые PostgreSQL досортирует после idx_cards_user_id_id
+        if (sortKey == CardSortKey.BALANCE && filter.userId() == null) {
+            throw new ValidationException("Некорректная сортировка",
+                Map.of("sortBy", "Сортировка по балансу доступна только для карт одного владельца"));
+        }
+        CardCursor after = cursor != null ? CardCursor.decode(cursor, sortKey, direction) : null;
+        LocalDate today = LocalDate.now();
+        List<CardSummaryDto> rows = cardRepository.seekSummaries(filter, today, sortKey, direction, after, size + 1);
+        boolean hasNext = rows.size() > size;
+        List<CardSummaryDto> pageRows = hasNext ? rows.subList(0, size) : rows;
+
+        CardSeekPageDto page = new CardSeekPageDto();
+        page.setItems(pageRows.stream()
+            .map(this::convertToDto)
+            .collect(Collectors.toList()));
+        page.setNextCursor(hasNext ? CardCursor.after(pageRows.get(size - 1), sortKey, direction).encode() : null);
+        if (includeTotal) {
+            page.setTotalElements(cardRepository.countSummaries(filter, today));
+        }
+        return page;
     }
 }
\ No newline at end of file
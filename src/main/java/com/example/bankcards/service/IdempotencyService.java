@@ -0,0 +1,187 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.IdempotencyRecord;
+import com.example.bankcards.exception.IdempotencyKeyReuseException;
+import com.example.bankcards.exception.ValidationException;
+import com.example.bankcards.repository.IdempotencyRecordRepository;
+import com.example.bankcards.util.BoundedTtlCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+@Service
+public class IdempotencyService {
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final String NULL_RESPONSE = "";
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final BoundedTtlCache<String, StoredResponse> responses;
+    private final Duration ttl;
+
+    public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository,
+                              ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${app.idempotency-ttl-minutes:1440}") long ttlMinutes,
+                              @Value("${app.idempotency-cache-max-entries:100000}") int maxEntries) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.responses = new BoundedTtlCache<>(maxEntries, ttl);
+    }
+
+    // Повтор с тем же ключом, но другим телом запроса — ошибка клиента, а не повтор: он получает 422,
+    // а не ответ на первый запрос. Тело сравнивается по SHA-256 его JSON-представления
+    public <T> T execute(String idempotencyKey, String username, String operation, Object request,
+                         Class<T> responseType, Supplier<T> action) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return action.get();
+        }
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new ValidationException("Некорректный ключ идемпотентности",
+                Map.of("Idempotency-Key", "Ключ должен быть не длиннее " + MAX_KEY_LENGTH + " символов"));
+        }
+
+        String requestHash = hash(request);
+        String cacheKey = username + '\n' + operation + '\n' + idempotencyKey;
+        StoredResponse cached = responses.get(cacheKey);
+        if (cached != null) {
+            return read(cached.verified(requestHash), responseType);
+        }
+
+        try {
+            return transactionTemplate.execute(status ->
+                executeOnce(cacheKey, idempotencyKey, username, operation, requestHash, responseType, action));
+        } catch (DataIntegrityViolationException e) {
+            // Параллельный запрос с тем же ключом успел зафиксироваться первым
+            return findStored(username, operation, idempotencyKey)
+                .map(record -> remember(cacheKey, record.getRequestHash(), record.getResponseBody()))
+                .map(stored -> read(stored.verified(requestHash), responseType))
+                .orElseThrow(() -> e);
+        }
+    }
+
+    private <T> T executeOnce(String cacheKey, String idempotencyKey, String username, String operation,
+                              String requestHash, Class<T> responseType, Supplier<T> action) {
+        Optional<IdempotencyRecord> stored = idempotencyRecordRepository
+            .findByUsernameAndOperationAndIdempotencyKey(username, operation, idempotencyKey);
+        if (stored.isPresent()) {
+            if (!isExpired(stored.get())) {
+                StoredResponse response = remember(cacheKey, stored.get().getRequestHash(), stored.get().getResponseBody());
+                return read(response.verified(requestHash), responseType);
+            }
+            idempotencyRecordRepository.delete(stored.get());
+            idempotencyRecordRepository.flush();
+        }
+
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setIdempotencyKey(idempotencyKey);
+        record.setUsername(username);
+        record.setOperation(operation);
+        record.setRequestHash(requestHash);
+        record.setCreatedAt(LocalDateTime.now());
+        idempotencyRecordRepository.saveAndFlush(record);
+
+        T response = action.get();
+        String body = write(response);
+        record.setResponseBody(body);
+        idempotencyRecordRepository.save(record);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remember(cacheKey, requestHash, body);
+                }
+            });
+        } else {
+            remember(cacheKey, requestHash, body);
+        }
+        return response;
+    }
+
+    private Optional<IdempotencyRecord> findStored(String username, String operation, String idempotencyKey) {
+        return transactionTemplate.execute(status -> idempotencyRecordRepository
+            .findByUsernameAndOperationAndIdempotencyKey(username, operation, idempotencyKey)
+            .filter(record -> !isExpired(record)));
+    }
+
+    private boolean isExpired(IdempotencyRecord record) {
+        return record.getCreatedAt().isBefore(LocalDateTime.now().minus(ttl));
+    }
+
+    private StoredResponse remember(String cacheKey, String requestHash, String body) {
+        StoredResponse value = new StoredResponse(requestHash, body != null ? body : NULL_RESPONSE);
+        responses.put(cacheKey, value);
+        return value;
+    }
+
+    private String hash(Object request) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(request);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось вычислить хеш тела запроса", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    private String write(Object response) {
+        if (response == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сохранить ответ для ключа идемпотентности", e);
+        }
+    }
+
+    private <T> T read(String body, Class<T> responseType) {
+        if (body == null || body.equals(NULL_RESPONSE)) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(body, responseType);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось прочитать сохранённый ответ для ключа идемпотентности", e);
+        }
+    }
+
+    private record StoredResponse(String requestHash, String body) {
+        // Записи без хеша сделаны до появления проверки и принимаются как есть
+        private String verified(String requestHash) {
+            if (this.requestHash != null && !Objects.equals(this.requestHash, requestHash)) {
+                throw new IdempotencyKeyReuseException(
+                    "Ключ идемпотентности уже использован для запроса с другими параметрами");
+            }
+            return body;
+        }
+    }
+
+    @Scheduled(cron = "0 15 * * * ?")
+    @Transactional
+    public void purgeExpiredKeys() {
+        idempotencyRecordRepository.deleteCreatedBefore(LocalDateTime.now().minus(ttl));
+    }
+}
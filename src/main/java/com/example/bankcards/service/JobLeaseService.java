@@ -0,0 +1,124 @@
+package com.example.bankcards.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Распределяет разделы фоновых задач между экземплярами приложения через таблицу job_leases.
+ * Раздел захватывается через FOR UPDATE SKIP LOCKED, поэтому каждый раздел выполняет ровно один узел.
+ * Если узел упал, раздел освобождается по истечении аренды и продолжается с последней контрольной точки.
+ */
+@Service
+public class JobLeaseService {
+    private static final String REGISTER_SQL =
+        "INSERT INTO job_leases (job_name, partition_no) SELECT ?, p FROM generate_series(0, ? - 1) p " +
+        "ON CONFLICT (job_name, partition_no) DO NOTHING";
+    // Новый запуск сбрасывает контрольные точки и аренды; строки уже открытого запуска условие пропускает
+    private static final String OPEN_RUN_SQL =
+        "UPDATE job_leases SET run_key = ?, checkpoint = NULL, range_end = NULL, owner = NULL, " +
+        "lease_until = NULL, completed = false " +
+        "WHERE job_name = ? AND partition_no < ? AND run_key IS DISTINCT FROM ?";
+    private static final String RUN_OPENED_SQL =
+        "SELECT NOT EXISTS (SELECT 1 FROM job_leases " +
+        "WHERE job_name = ? AND partition_no < ? AND run_key IS DISTINCT FROM ?)";
+    private static final String LOCK_PARTITIONS_SQL =
+        "SELECT run_key FROM job_leases WHERE job_name = ? AND partition_no < ? ORDER BY partition_no FOR UPDATE";
+    // Раздел без диапазона в плане запуска сразу завершён
+    private static final String OPEN_PARTITION_SQL =
+        "UPDATE job_leases SET run_key = ?, checkpoint = ?, range_end = ?, owner = NULL, " +
+        "lease_until = NULL, completed = ? " +
+        "WHERE job_name = ? AND partition_no = ?";
+    // Раздел свободен, если его ещё никто не взял в этом запуске или аренда истекла до завершения;
+    // при перехвате контрольная точка сохраняется
+    private static final String CLAIM_SQL =
+        "UPDATE job_leases l SET owner = ?, lease_until = now() + make_interval(secs => ?) " +
+        "FROM (SELECT job_name, partition_no FROM job_leases " +
+        "WHERE job_name = ? AND partition_no < ? AND run_key = ? AND NOT completed " +
+        "AND (lease_until IS NULL OR lease_until < now()) " +
+        "ORDER BY partition_no LIMIT 1 FOR UPDATE SKIP LOCKED) c " +
+        "WHERE l.job_name = c.job_name AND l.partition_no = c.partition_no " +
+        "RETURNING l.partition_no, l.checkpoint, l.range_end";
+    private static final String CHECKPOINT_SQL =
+        "UPDATE job_leases SET checkpoint = ?, lease_until = now() + make_interval(secs => ?) " +
+        "WHERE job_name = ? AND partition_no = ? AND run_key = ? AND owner = ? AND NOT completed";
+    private static final String COMPLETE_SQL =
+        "UPDATE job_leases SET completed = true, lease_until = now() " +
+        "WHERE job_name = ? AND partition_no = ? AND run_key = ? AND owner = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final String owner = UUID.randomUUID().toString();
+
+    @Value("${app.job-lease-seconds:300}")
+    private int leaseSeconds;
+
+    public JobLeaseService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Разделы без плана: каждый раздел выбирает свою часть работы сам
+    public Optional<Lease> claim(String jobName, String runKey, int partitions) {
+        jdbcTemplate.update(REGISTER_SQL, jobName, partitions);
+        jdbcTemplate.update(OPEN_RUN_SQL, runKey, jobName, partitions, runKey);
+        return claimOpened(jobName, runKey, partitions);
+    }
+
+    // Разделы — диапазоны ключей. План строит узел, первым открывший запуск, под блокировкой строк аренды,
+    // чтобы все узлы работали по одному плану. Начало диапазона становится начальной контрольной точкой
+    public Optional<Lease> claim(String jobName, String runKey, int partitions, Supplier<List<Range>> planner) {
+        jdbcTemplate.update(REGISTER_SQL, jobName, partitions);
+        if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(RUN_OPENED_SQL, Boolean.class,
+                jobName, partitions, runKey))) {
+            transactionTemplate.executeWithoutResult(status -> openRun(jobName, runKey, partitions, planner));
+        }
+        return claimOpened(jobName, runKey, partitions);
+    }
+
+    private void openRun(String jobName, String runKey, int partitions, Supplier<List<Range>> planner) {
+        List<String> runKeys = jdbcTemplate.queryForList(LOCK_PARTITIONS_SQL, String.class, jobName, partitions);
+        if (runKeys.stream().allMatch(runKey::equals)) {
+            return;
+        }
+        List<Range> ranges = planner.get();
+        for (int partition = 0; partition < partitions; partition++) {
+            Range range = partition < ranges.size() ? ranges.get(partition) : null;
+            jdbcTemplate.update(OPEN_PARTITION_SQL, runKey, range != null ? range.start() : null,
+                range != null ? range.end() : null, range == null, jobName, partition);
+        }
+    }
+
+    private Optional<Lease> claimOpened(String jobName, String runKey, int partitions) {
+        List<Lease> claimed = jdbcTemplate.query(CLAIM_SQL,
+            (rs, rowNum) -> new Lease(jobName, rs.getInt(1), partitions, runKey, rs.getString(2), rs.getString(3)),
+            owner, leaseSeconds, jobName, partitions, runKey);
+        return claimed.stream().findFirst();
+    }
+
+    // Вызывается в транзакции порции работы: контрольная точка фиксируется вместе с её результатом.
+    // false — аренду перехватил другой узел, транзакцию нужно откатить
+    public boolean checkpoint(Lease lease, String checkpoint) {
+        return jdbcTemplate.update(CHECKPOINT_SQL, checkpoint, leaseSeconds,
+            lease.jobName(), lease.partition(), lease.runKey(), owner) == 1;
+    }
+
+    public void complete(Lease lease) {
+        jdbcTemplate.update(COMPLETE_SQL, lease.jobName(), lease.partition(), lease.runKey(), owner);
+    }
+
+    // rangeEnd — включительная верхняя граница диапазона раздела, null — без границы
+    public record Lease(String jobName, int partition, int partitions, String runKey, String checkpoint,
+                        String rangeEnd) {
+    }
+
+    // null в начале или конце — диапазон не ограничен с этой стороны
+    public record Range(String start, String end) {
+    }
+}
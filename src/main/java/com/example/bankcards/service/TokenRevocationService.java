@@ -0,0 +1,143 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Список отозванных токенов (jti) в таблице revoked_tokens.
+ * Проверка сначала идёт по фильтру Блума в памяти: для не отозванного токена это несколько обращений
+ * к массиву без запроса к БД; точный запрос выполняется только при совпадении в фильтре.
+ * Фильтр периодически перестраивается из таблицы и дополняется отзывами с других узлов.
+ */
+@Service
+public class TokenRevocationService {
+    private static final String INSERT_SQL =
+        "INSERT INTO revoked_tokens (jti, user_id, expires_at) VALUES (?, ?, ?) ON CONFLICT (jti) DO NOTHING";
+    private static final String EXISTS_SQL =
+        "SELECT EXISTS (SELECT 1 FROM revoked_tokens WHERE jti = ?)";
+    private static final String PURGE_SQL =
+        "DELETE FROM revoked_tokens WHERE expires_at <= now()";
+    private static final String ACTIVE_SQL =
+        "SELECT jti, revoked_at FROM revoked_tokens";
+    // Повторно читается окно перед последней увиденной записью: транзакции фиксируются не в порядке revoked_at
+    private static final String RECENT_SQL =
+        "SELECT jti, revoked_at FROM revoked_tokens WHERE revoked_at >= ?";
+    private static final Duration OVERLAP = Duration.ofMinutes(1);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Counter exactLookups;
+    private final Counter falsePositives;
+    // null — фильтр ещё не загружен, проверка идёт точным запросом
+    private volatile BloomFilter filter;
+    private volatile Instant lastRevokedAt = Instant.EPOCH;
+    // Отзывы этого узла, сделанные во время перестройки: новый фильтр строится из снимка таблицы
+    // и получает их перед публикацией. Доступ — под pendingLock
+    private final Object pendingLock = new Object();
+    private List<String> revokedDuringRebuild;
+
+    @Value("${app.token-revocation-expected-entries:100000}")
+    private long expectedEntries;
+
+    @Value("${app.token-revocation-false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${app.jwt-expiration-milliseconds}")
+    private long jwtExpirationMilliseconds;
+
+    public TokenRevocationService(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.exactLookups = meterRegistry.counter("auth.token.revocation.lookups");
+        this.falsePositives = meterRegistry.counter("auth.token.revocation.false.positives");
+    }
+
+    public boolean isRevoked(String jti) {
+        BloomFilter current = filter;
+        if (current != null && !current.mightContain(jti)) {
+            return false;
+        }
+        exactLookups.increment();
+        boolean revoked = Boolean.TRUE.equals(jdbcTemplate.queryForObject(EXISTS_SQL, Boolean.class, jti));
+        if (!revoked && current != null) {
+            falsePositives.increment();
+        }
+        return revoked;
+    }
+
+    public void revoke(String jti, Long userId, Instant expiresAt) {
+        jdbcTemplate.update(INSERT_SQL, jti, userId, Timestamp.from(expiresAt));
+        synchronized (pendingLock) {
+            BloomFilter current = filter;
+            if (current != null) {
+                current.put(jti);
+            }
+            if (revokedDuringRebuild != null) {
+                revokedDuringRebuild.add(jti);
+            }
+        }
+    }
+
+    // Срок действия токена неизвестен — запись хранится максимальное время жизни JWT
+    public void revoke(String jti) {
+        revoke(jti, null, Instant.now().plusMillis(jwtExpirationMilliseconds));
+    }
+
+    @Scheduled(fixedDelayString = "${app.token-revocation-refresh-milliseconds:5000}")
+    public void refresh() {
+        BloomFilter current = filter;
+        if (current == null) {
+            rebuild();
+            return;
+        }
+        Timestamp from = Timestamp.from(lastRevokedAt.minus(OVERLAP));
+        jdbcTemplate.query(RECENT_SQL, rs -> {
+            current.put(rs.getString(1));
+            advance(rs.getTimestamp(2));
+        }, from);
+    }
+
+    // Полная перестройка убирает из фильтра истёкшие токены, которые больше не нужно отклонять
+    @Scheduled(initialDelayString = "${app.token-revocation-rebuild-milliseconds:3600000}",
+        fixedDelayString = "${app.token-revocation-rebuild-milliseconds:3600000}")
+    // Отзыв, зафиксированный после чтения снимка, попал бы только в заменяемый фильтр
+    // и проходил бы проверку до следующего refresh(), поэтому он переносится в новый фильтр при публикации
+    public synchronized void rebuild() {
+        synchronized (pendingLock) {
+            revokedDuringRebuild = new ArrayList<>();
+        }
+        try {
+            jdbcTemplate.update(PURGE_SQL);
+            List<String> revoked = new ArrayList<>();
+            jdbcTemplate.query(ACTIVE_SQL, rs -> {
+                revoked.add(rs.getString(1));
+                advance(rs.getTimestamp(2));
+            });
+            BloomFilter rebuilt = new BloomFilter(Math.max(expectedEntries, 2L * revoked.size()), falsePositiveRate);
+            revoked.forEach(rebuilt::put);
+            synchronized (pendingLock) {
+                revokedDuringRebuild.forEach(rebuilt::put);
+                filter = rebuilt;
+            }
+        } finally {
+            synchronized (pendingLock) {
+                revokedDuringRebuild = null;
+            }
+        }
+    }
+
+    private void advance(Timestamp revokedAt) {
+        Instant instant = revokedAt.toInstant();
+        if (instant.isAfter(lastRevokedAt)) {
+            lastRevokedAt = instant;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.BoundedTtlCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.time.Duration;
+
+/**
+ * Хранит версии токенов пользователей. JWT принимается, только если его версия совпадает с текущей;
+ * увеличение версии отзывает все ранее выданные токены пользователя.
+ * Версии кэшируются ненадолго; другие узлы сбрасывают версию по {@link CacheInvalidationBus},
+ * а при потере уведомления отзыв вступает в силу не позже чем через TTL кэша.
+ */
+@Service
+public class TokenVersionService {
+    // Пользователь удалён: ни один токен не действителен
+    private static final int NO_USER = -1;
+    private static final String INVALIDATION_NAMESPACE = "user";
+
+    private final UserRepository userRepository;
+    private final CacheInvalidationBus invalidationBus;
+    private final BoundedTtlCache<Long, Integer> versions;
+
+    public TokenVersionService(UserRepository userRepository,
+                               CacheInvalidationBus invalidationBus,
+                               @Value("${app.token-version-cache-max-entries:10000}") int cacheMaxEntries,
+                               @Value("${app.token-version-cache-ttl-seconds:30}") long cacheTtlSeconds) {
+        this.userRepository = userRepository;
+        this.invalidationBus = invalidationBus;
+        this.versions = new BoundedTtlCache<>(cacheMaxEntries, Duration.ofSeconds(cacheTtlSeconds));
+        invalidationBus.subscribe(INVALIDATION_NAMESPACE, userId -> versions.invalidate(Long.valueOf(userId)),
+            versions::invalidateAll);
+    }
+
+    public boolean isCurrent(Long userId, int tokenVersion) {
+        Integer current = versions.get(userId);
+        if (current == null) {
+            current = userRepository.findTokenVersionById(userId).orElse(NO_USER);
+            versions.put(userId, current);
+        }
+        return current == tokenVersion;
+    }
+
+    // Вызывается в транзакции; кэш сбрасывается после фиксации, чтобы не закэшировать старую версию
+    public void revoke(Long userId) {
+        userRepository.incrementTokenVersion(userId);
+        evictAfterCommit(userId);
+    }
+
+    public void evictAfterCommit(Long userId) {
+        invalidationBus.publish(INVALIDATION_NAMESPACE, userId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            versions.invalidate(userId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                versions.invalidate(userId);
+            }
+        });
+    }
+}
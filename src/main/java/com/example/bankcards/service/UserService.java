@@ -16,13 +16,16 @@ public class UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final UserMappers userMapper;
+    private final TokenVersionService tokenVersionService;
 
     public UserService(UserRepository userRepository,
                        PasswordEncoder passwordEncoder,
-                       UserMappers userMapper) {
+                       UserMappers userMapper,
+                       TokenVersionService tokenVersionService) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.userMapper = userMapper;
+        this.tokenVersionService = tokenVersionService;
     }
 
     @Transactional(readOnly = true)
@@ -31,7 +34,14 @@ public class UserService {
             .orElseThrow(() -> new UserNotFoundException("User with username " + username + " not found"));
     }
 
-    @Transactional
+    // Ссылка без запроса к БД: пользователь из токена уже проверен фильтром аутентификации
+    public User getUserReference(Long id) {
+        return userRepository.getReferenceById(id);
+    }
+
+    // Без общей транзакции: хеширование ждёт в ограниченной очереди и занимает сотни миллисекунд,
+    // поэтому соединение из пула берут только проверка имени и сохранение, каждое в своей транзакции
+    // репозитория. Гонку двух регистраций одного имени закрывает уникальный индекс (409)
     public UserResponseDto createUser(UserRequestDto userRequestDto) {
         if (userRepository.existsByUsername(userRequestDto.getUsername())) {
             throw new UserAlreadyExistsException("User with this username already exists");
@@ -44,11 +54,26 @@ public class UserService {
         return userMapper.mapToDto(savedUser);
     }
 
+    // Хеш того же пароля: версия токенов не меняется
+    @Transactional
+    public void updatePasswordHash(Long id, String passwordHash) {
+        userRepository.findById(id).ifPresent(user -> user.setPassword(passwordHash));
+    }
+
     @Transactional
     public void deleteUser(Long id) {
         if (!userRepository.existsById(id)) {
             throw new UserNotFoundException("User with ID " + id + " not found");
         }
         userRepository.deleteById(id);
+        tokenVersionService.evictAfterCommit(id);
+    }
+
+    @Transactional
+    public void revokeTokens(Long id) {
+        if (!userRepository.existsById(id)) {
+            throw new UserNotFoundException("User with ID " + id + " not found");
+        }
+        tokenVersionService.revoke(id);
     }
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+package com.example.bankcards.util;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Потокобезопасный кэш с ограничением по размеру и времени жизни записей.
+ * Чтение и запись — O(1) без блокировок; при переполнении вытесняются самые старые записи (FIFO).
+ */
+public class BoundedTtlCache<K, V> {
+    private final ConcurrentHashMap<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry<K, V>> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final int maxSize;
+    private final long ttlNanos;
+
+    public BoundedTtlCache(int maxSize, Duration ttl) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    public V get(K key) {
+        Entry<K, V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.expiresAt - System.nanoTime() <= 0) {
+            if (entries.remove(key, entry)) {
+                evictions.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+        put(key, value, ttlNanos);
+    }
+
+    public void put(K key, V value, Duration ttl) {
+        put(key, value, Math.min(ttlNanos, ttl.toNanos()));
+    }
+
+    private void put(K key, V value, long entryTtlNanos) {
+        if (entryTtlNanos <= 0) {
+            return;
+        }
+        Entry<K, V> entry = new Entry<>(key, value, System.nanoTime() + entryTtlNanos);
+        entries.put(key, entry);
+        insertionOrder.add(entry);
+        if (queued.incrementAndGet() > maxSize) {
+            trim();
+        }
+    }
+
+    private void trim() {
+        while (queued.get() > maxSize) {
+            Entry<K, V> oldest = insertionOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            queued.decrementAndGet();
+            if (entries.remove(oldest.key, oldest)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void invalidateIf(Predicate<K> predicate) {
+        entries.keySet().removeIf(predicate);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    private static final class Entry<K, V> {
+        private final K key;
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(K key, V value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.bankcards.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+
+/**
+ * Слепой индекс номера карты: HMAC-SHA256 с отдельным ключом в hex.
+ * Зашифрованный номер нельзя сравнивать в БД без расшифровки каждой строки, а хеш — можно, по индексу.
+ * Совпадает с encode(hmac(номер, ключ, 'sha256'), 'hex') в pgcrypto, которым заполняются старые строки.
+ */
+@Component
+public class CardNumberHasher {
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    // Mac не потокобезопасен, экземпляр на поток дешевле создания на каждый вызов
+    private final ThreadLocal<Mac> macs;
+
+    public CardNumberHasher(@Value("${app.card-number-hmac-secret}") String secret) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    public String hash(String cardNumber) {
+        return HexFormat.of().formatHex(macs.get().doFinal(cardNumber.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 недоступен", e);
+        }
+    }
+}
@@ -8,7 +8,15 @@ public class CardUtils {
         if (cardNumber == null || cardNumber.length() < 4) {
             return cardNumber;
         }
-        String lastFourDigits = cardNumber.substring(cardNumber.length() - 4);
-        return "**** **** **** " + lastFourDigits;
+        return maskLastFour(lastFour(cardNumber));
+    }
+
+    public String lastFour(String cardNumber) {
+        return cardNumber.substring(cardNumber.length() - 4);
+    }
+
+    // null — последние цифры ещё не заполнены (карта создана до card_last4): номер скрывается полностью
+    public String maskLastFour(String lastFourDigits) {
+        return "**** **** **** " + (lastFourDigits != null ? lastFourDigits : "****");
     }
 }
\ No newline at end of file
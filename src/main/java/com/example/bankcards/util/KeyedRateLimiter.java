@@ -0,0 +1,61 @@
+package com.example.bankcards.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограничитель частоты по ключу (алгоритм GCRA — эквивалент маркерной корзины).
+ * Состояние корзины — одно значение AtomicLong (теоретическое время следующего запроса),
+ * обновляемое через CAS, поэтому проверка не берёт блокировок.
+ */
+public class KeyedRateLimiter {
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final int capacity;
+    private final long emissionIntervalNanos;
+    private final long burstNanos;
+
+    public KeyedRateLimiter(int capacity, double refillPerSecond) {
+        if (capacity <= 0 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("capacity and refillPerSecond must be positive");
+        }
+        this.capacity = capacity;
+        this.emissionIntervalNanos = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / refillPerSecond));
+        this.burstNanos = emissionIntervalNanos * capacity;
+    }
+
+    public Decision tryAcquire(String key) {
+        return tryAcquire(key, System.nanoTime());
+    }
+
+    Decision tryAcquire(String key, long now) {
+        AtomicLong bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        while (true) {
+            long tat = bucket.get();
+            long newTat = Math.max(tat, now) + emissionIntervalNanos;
+            long backlog = newTat - now;
+            if (backlog > burstNanos) {
+                return new Decision(false, capacity, 0, backlog - burstNanos, Math.max(0, tat - now));
+            }
+            if (bucket.compareAndSet(tat, newTat)) {
+                return new Decision(true, capacity, (int) ((burstNanos - backlog) / emissionIntervalNanos),
+                    0L, backlog);
+            }
+        }
+    }
+
+    // Корзина, заполненная доверху дольше idleNanos, ничем не отличается от новой и удаляется
+    public int evictIdle(long idleNanos) {
+        long now = System.nanoTime();
+        int before = buckets.size();
+        buckets.entrySet().removeIf(entry -> now - entry.getValue().get() > idleNanos);
+        return before - buckets.size();
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    public record Decision(boolean allowed, int limit, int remaining, long retryAfterNanos, long resetNanos) {
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.exception.ValidationException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+
+/**
+ * Денежные суммы хранятся в минорных единицах (копейках) в {@code long};
+ * в десятичный вид они переводятся только на границах — JSON, JDBC и параметры запроса.
+ */
+public final class MinorUnits {
+    public static final int SCALE = 2;
+
+    private MinorUnits() {
+    }
+
+    public static long fromDecimal(BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    public static Long fromDecimalParam(String name, BigDecimal amount) {
+        if (amount == null) {
+            return null;
+        }
+        try {
+            return fromDecimal(amount);
+        } catch (ArithmeticException e) {
+            throw new ValidationException("Некорректная сумма",
+                Map.of(name, "Сумма должна содержать не более двух знаков после запятой"));
+        }
+    }
+}
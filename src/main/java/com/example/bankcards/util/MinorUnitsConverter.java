@@ -0,0 +1,18 @@
+package com.example.bankcards.util;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import java.math.BigDecimal;
+
+@Converter
+public class MinorUnitsConverter implements AttributeConverter<Long, BigDecimal> {
+    @Override
+    public BigDecimal convertToDatabaseColumn(Long minorUnits) {
+        return minorUnits == null ? null : MinorUnits.toDecimal(minorUnits);
+    }
+
+    @Override
+    public Long convertToEntityAttribute(BigDecimal amount) {
+        return amount == null ? null : MinorUnits.fromDecimal(amount);
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.bankcards.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+public class MinorUnitsJsonDeserializer extends JsonDeserializer<Long> {
+    @Override
+    public Long deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        BigDecimal amount = parser.getDecimalValue();
+        try {
+            return MinorUnits.fromDecimal(amount);
+        } catch (ArithmeticException e) {
+            throw InvalidFormatException.from(parser,
+                "Сумма должна содержать не более двух знаков после запятой", amount, Long.class);
+        }
+    }
+}
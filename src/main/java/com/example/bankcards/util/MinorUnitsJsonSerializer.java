@@ -0,0 +1,13 @@
+package com.example.bankcards.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import java.io.IOException;
+
+public class MinorUnitsJsonSerializer extends JsonSerializer<Long> {
+    @Override
+    public void serialize(Long minorUnits, JsonGenerator generator, SerializerProvider serializers) throws IOException {
+        generator.writeNumber(MinorUnits.toDecimal(minorUnits));
+    }
+}
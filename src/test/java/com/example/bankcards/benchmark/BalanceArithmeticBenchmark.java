@@ -0,0 +1,117 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.util.MinorUnits;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение арифметики балансов в {@code double} и в копейках ({@code long}) на пакете переводов:
+ * проверка средств, применение сумм и перевод в {@code BigDecimal} для записи в numeric-колонку.
+ * Запуск: {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.example.bankcards.benchmark.BalanceArithmeticBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BalanceArithmeticBenchmark {
+    private static final int CARDS = 64;
+
+    @Param({"1000"})
+    private int transfers;
+
+    private int[] sources;
+    private int[] destinations;
+    private double[] doubleAmounts;
+    private long[] minorAmounts;
+    private double[] doubleBalances;
+    private long[] minorBalances;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        sources = new int[transfers];
+        destinations = new int[transfers];
+        doubleAmounts = new double[transfers];
+        minorAmounts = new long[transfers];
+        for (int i = 0; i < transfers; i++) {
+            sources[i] = random.nextInt(CARDS);
+            destinations[i] = (sources[i] + 1 + random.nextInt(CARDS - 1)) % CARDS;
+            minorAmounts[i] = 1 + random.nextInt(100_000);
+            doubleAmounts[i] = minorAmounts[i] / 100.0;
+        }
+        doubleBalances = new double[CARDS];
+        minorBalances = new long[CARDS];
+    }
+
+    @Benchmark
+    public void doubleBalances(Blackhole blackhole) {
+        double[] balances = new double[CARDS];
+        for (int i = 0; i < CARDS; i++) {
+            balances[i] = 10_000.0;
+        }
+        int failed = 0;
+        for (int i = 0; i < transfers; i++) {
+            double amount = doubleAmounts[i];
+            if (balances[sources[i]] < amount) {
+                failed++;
+                continue;
+            }
+            balances[sources[i]] -= amount;
+            balances[destinations[i]] += amount;
+        }
+        blackhole.consume(failed);
+        for (int i = 0; i < CARDS; i++) {
+            blackhole.consume(BigDecimal.valueOf(balances[i]).setScale(MinorUnits.SCALE, RoundingMode.HALF_UP));
+        }
+        System.arraycopy(balances, 0, doubleBalances, 0, CARDS);
+    }
+
+    @Benchmark
+    public void minorUnitBalances(Blackhole blackhole) {
+        long[] balances = new long[CARDS];
+        for (int i = 0; i < CARDS; i++) {
+            balances[i] = 1_000_000L;
+        }
+        int failed = 0;
+        for (int i = 0; i < transfers; i++) {
+            long amount = minorAmounts[i];
+            if (balances[sources[i]] < amount) {
+                failed++;
+                continue;
+            }
+            balances[sources[i]] -= amount;
+            balances[destinations[i]] += amount;
+        }
+        blackhole.consume(failed);
+        for (int i = 0; i < CARDS; i++) {
+            blackhole.consume(MinorUnits.toDecimal(balances[i]));
+        }
+        System.arraycopy(balances, 0, minorBalances, 0, CARDS);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(BalanceArithmeticBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
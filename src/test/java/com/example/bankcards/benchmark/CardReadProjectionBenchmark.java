@@ -0,0 +1,183 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.dto.card.CardResponseDto;
+import com.example.bankcards.dto.card.CardSummaryDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.CardUtils;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение страницы карт пользователя: управляемые сущности (снимки для dirty checking, прокси User,
+ * расшифровка card_number) против read-only сущностей и проекции CardSummaryDto из CardRepository.
+ * Задержка — среднее время на страницу, выделение памяти — gc.alloc.rate.norm профилировщика GC (байт на страницу).
+ * Таблицы создаются в отдельной схеме bench_card_reads.
+ * Нужен PostgreSQL с pgcrypto: -Dbench.db.url=jdbc:postgresql://localhost:5432/bank_db -Dbench.db.user=user -Dbench.db.password=pass
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CardReadProjectionBenchmark {
+    private static final String SCHEMA = "bench_card_reads";
+    private static final long USER_ID = 1L;
+    // Ключ шифрования номеров; @ColumnTransformer сущности Card читает его из параметра сеанса
+    private static final String ENCRYPTION_KEY = "bench-encryption-key";
+    private static final String ENTITY_SELECT = "SELECT c FROM Card c WHERE c.user.id = :userId ORDER BY c.id";
+    private static final String SUMMARY_SELECT = CardRepository.SUMMARY_SELECT + "WHERE c.user.id = :userId ORDER BY c.id";
+
+    private static String url() {
+        return System.getProperty("bench.db.url", "jdbc:postgresql://localhost:5432/bank_db");
+    }
+
+    private static Connection connect() throws SQLException {
+        return DriverManager.getConnection(url(),
+            System.getProperty("bench.db.user", "user"),
+            System.getProperty("bench.db.password", "pass"));
+    }
+
+    @State(Scope.Benchmark)
+    public static class Schema {
+        @Param({"10000"})
+        public int pageSize;
+
+        private SessionFactory sessionFactory;
+        private final CardUtils cardUtils = new CardUtils();
+
+        @Setup(Level.Trial)
+        public void create() throws SQLException {
+            try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+                statement.execute("CREATE EXTENSION IF NOT EXISTS pgcrypto");
+                statement.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+                statement.execute("CREATE SCHEMA " + SCHEMA);
+                statement.execute("CREATE TABLE " + SCHEMA + ".users (id BIGINT PRIMARY KEY, " +
+                    "username VARCHAR(50) NOT NULL, password VARCHAR(255) NOT NULL, role VARCHAR(20) NOT NULL, " +
+                    "token_version INT NOT NULL DEFAULT 0)");
+                statement.execute("CREATE TABLE " + SCHEMA + ".cards (id BIGINT PRIMARY KEY, card_number TEXT NOT NULL, " +
+                    "card_number_hash VARCHAR(64), card_last4 VARCHAR(4), holder_name VARCHAR(100) NOT NULL, " +
+                    "expiry_date DATE NOT NULL, status VARCHAR(20) NOT NULL, balance NUMERIC(19,2) NOT NULL, " +
+                    "balance_shards INT NOT NULL DEFAULT 0, user_id BIGINT NOT NULL REFERENCES " + SCHEMA + ".users (id))");
+                statement.execute("CREATE INDEX ON " + SCHEMA + ".cards (user_id, id)");
+                statement.execute("INSERT INTO " + SCHEMA + ".users VALUES (" + USER_ID + ", 'bench', 'x', 'USER', 0)");
+                statement.execute("INSERT INTO " + SCHEMA + ".cards " +
+                    "SELECT g, pgp_sym_encrypt(lpad(g::text, 16, '4'), '" + ENCRYPTION_KEY + "')::text, NULL, " +
+                    "right(lpad(g::text, 16, '4'), 4), 'BENCH HOLDER', DATE '" + LocalDate.now().plusYears(2) + "', " +
+                    "'ACTIVE', g * 1.25, 0, " + USER_ID + " FROM generate_series(1, " + pageSize + ") g");
+                statement.execute("ANALYZE " + SCHEMA + ".cards");
+            }
+            Configuration configuration = new Configuration()
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(Card.class);
+            configuration.setProperty("hibernate.connection.url", url());
+            configuration.setProperty("hibernate.connection.username", System.getProperty("bench.db.user", "user"));
+            configuration.setProperty("hibernate.connection.password", System.getProperty("bench.db.password", "pass"));
+            configuration.setProperty("hibernate.default_schema", SCHEMA);
+            configuration.setProperty("hibernate.connection.init_sql",
+                "SELECT set_config('" + Card.ENCRYPTION_KEY_SETTING + "', '" + ENCRYPTION_KEY + "', false)");
+            sessionFactory = configuration.buildSessionFactory();
+        }
+
+        @TearDown(Level.Trial)
+        public void drop() throws SQLException {
+            sessionFactory.close();
+            try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+                statement.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+            }
+        }
+    }
+
+    // Как CardService.convertToDto(Card) до перехода на проекции
+    @Benchmark
+    public List<CardResponseDto> managedEntities(Schema schema) {
+        return schema.sessionFactory.fromTransaction(session -> toDtos(schema,
+            entityQuery(session, schema).getResultList()));
+    }
+
+    @Benchmark
+    public List<CardResponseDto> readOnlyEntities(Schema schema) {
+        return schema.sessionFactory.fromTransaction(session -> {
+            session.setDefaultReadOnly(true);
+            return toDtos(schema, entityQuery(session, schema).getResultList());
+        });
+    }
+
+    @Benchmark
+    public List<CardResponseDto> summaryProjection(Schema schema) {
+        return schema.sessionFactory.fromTransaction(session -> {
+            List<CardSummaryDto> rows = session.createQuery(SUMMARY_SELECT, CardSummaryDto.class)
+                .setParameter("userId", USER_ID)
+                .setReadOnly(true)
+                .setMaxResults(schema.pageSize)
+                .getResultList();
+            List<CardResponseDto> dtos = new ArrayList<>(rows.size());
+            for (CardSummaryDto row : rows) {
+                CardResponseDto dto = new CardResponseDto();
+                dto.setId(row.id());
+                dto.setMaskedCardNumber(schema.cardUtils.maskLastFour(row.cardLast4()));
+                dto.setHolderName(row.holderName());
+                dto.setExpiryDate(row.expiryDate());
+                dto.setStatus(Card.effectiveStatus(row.status(), row.expiryDate(), LocalDate.now()));
+                dto.setBalance(row.balance());
+                dtos.add(dto);
+            }
+            return dtos;
+        });
+    }
+
+    private static org.hibernate.query.Query<Card> entityQuery(Session session, Schema schema) {
+        return session.createQuery(ENTITY_SELECT, Card.class)
+            .setParameter("userId", USER_ID)
+            .setMaxResults(schema.pageSize);
+    }
+
+    private static List<CardResponseDto> toDtos(Schema schema, List<Card> cards) {
+        List<CardResponseDto> dtos = new ArrayList<>(cards.size());
+        for (Card card : cards) {
+            CardResponseDto dto = new CardResponseDto();
+            dto.setId(card.getId());
+            dto.setMaskedCardNumber(schema.cardUtils.maskCardNumber(card.getCardNumber()));
+            dto.setHolderName(card.getHolderName());
+            dto.setExpiryDate(card.getExpiryDate());
+            dto.setStatus(card.effectiveStatus(LocalDate.now()));
+            dto.setBalance(card.getBalance());
+            dtos.add(dto);
+        }
+        return dtos;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(CardReadProjectionBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
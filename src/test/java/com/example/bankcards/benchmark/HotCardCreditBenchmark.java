@@ -0,0 +1,127 @@
+package com.example.bankcards.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность зачислений на одну карту: одна строка баланса против подбалансов card_balance_shards.
+ * Каждое зачисление — отдельная транзакция, как в transferBetweenCards.
+ * Нужен PostgreSQL: -Dbench.db.url=jdbc:postgresql://localhost:5432/bank_db -Dbench.db.user=user -Dbench.db.password=pass
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(32)
+public class HotCardCreditBenchmark {
+    private static final long CARD_ID = 1L;
+    private static final BigDecimal AMOUNT = new BigDecimal("1.00");
+
+    private static Connection connect() throws SQLException {
+        return DriverManager.getConnection(
+            System.getProperty("bench.db.url", "jdbc:postgresql://localhost:5432/bank_db"),
+            System.getProperty("bench.db.user", "user"),
+            System.getProperty("bench.db.password", "pass"));
+    }
+
+    @State(Scope.Benchmark)
+    public static class Schema {
+        @Param({"16"})
+        public int shards;
+
+        @Setup(Level.Trial)
+        public void create() throws SQLException {
+            try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS bench_card_balance_shards, bench_cards");
+                statement.execute("CREATE TABLE bench_cards (id BIGINT PRIMARY KEY, balance NUMERIC(19,2) NOT NULL)");
+                statement.execute("CREATE TABLE bench_card_balance_shards (card_id BIGINT NOT NULL, shard INT NOT NULL, " +
+                    "balance NUMERIC(19,2) NOT NULL DEFAULT 0, PRIMARY KEY (card_id, shard))");
+                statement.execute("INSERT INTO bench_cards VALUES (" + CARD_ID + ", 0)");
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void drop() throws SQLException {
+            try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS bench_card_balance_shards, bench_cards");
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+        private Connection connection;
+        private PreparedStatement lockCard;
+        private PreparedStatement shareCard;
+        private PreparedStatement creditCard;
+        private PreparedStatement creditShard;
+
+        @Setup(Level.Trial)
+        public void open(Schema schema) throws SQLException {
+            connection = connect();
+            connection.setAutoCommit(false);
+            lockCard = connection.prepareStatement("SELECT balance FROM bench_cards WHERE id = ? FOR UPDATE");
+            shareCard = connection.prepareStatement("SELECT balance FROM bench_cards WHERE id = ? FOR SHARE");
+            creditCard = connection.prepareStatement("UPDATE bench_cards SET balance = balance + ? WHERE id = ?");
+            creditShard = connection.prepareStatement("INSERT INTO bench_card_balance_shards (card_id, shard, balance) " +
+                "VALUES (?, ?, ?) ON CONFLICT (card_id, shard) " +
+                "DO UPDATE SET balance = bench_card_balance_shards.balance + EXCLUDED.balance");
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public void singleRowCredit(Session session) throws SQLException {
+        session.lockCard.setLong(1, CARD_ID);
+        session.lockCard.executeQuery().close();
+        session.creditCard.setBigDecimal(1, AMOUNT);
+        session.creditCard.setLong(2, CARD_ID);
+        session.creditCard.executeUpdate();
+        session.connection.commit();
+    }
+
+    @Benchmark
+    public void shardedCredit(Schema schema, Session session) throws SQLException {
+        session.shareCard.setLong(1, CARD_ID);
+        session.shareCard.executeQuery().close();
+        session.creditShard.setLong(1, CARD_ID);
+        session.creditShard.setInt(2, ThreadLocalRandom.current().nextInt(schema.shards));
+        session.creditShard.setBigDecimal(3, AMOUNT);
+        session.creditShard.executeUpdate();
+        session.connection.commit();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(HotCardCreditBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
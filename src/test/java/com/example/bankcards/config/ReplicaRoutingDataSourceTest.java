@@ -0,0 +1,102 @@
+package com.example.bankcards.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ReplicaRoutingDataSourceTest {
+    @Mock
+    private DataSource primary;
+
+    @Mock
+    private HikariDataSource replica;
+
+    @Mock
+    private Connection primaryConnection;
+
+    private MeterRegistry meterRegistry;
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+    private SoftAssertions softly;
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        meterRegistry = new SimpleMeterRegistry();
+        replicaRoutingDataSource = new ReplicaRoutingDataSource(primary, List.of(replica), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReplicaRoutingDataSource.requireLsn(null);
+    }
+
+    @Test
+    void getConnectionSkipsReplicaUntilItReplaysRequiredLsn() throws SQLException {
+        Connection replicaConnection = lsnConnection("0/3000000");
+        when(replica.getConnection()).thenReturn(replicaConnection);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        replicaRoutingDataSource.refreshReplayLsn();
+
+        ReplicaRoutingDataSource.requireLsn(ReplicaRoutingDataSource.parseLsn("0/3000001"));
+        softly.assertThat(replicaRoutingDataSource.getConnection()).isSameAs(primaryConnection);
+
+        ReplicaRoutingDataSource.requireLsn(ReplicaRoutingDataSource.parseLsn("0/3000000"));
+        softly.assertThat(replicaRoutingDataSource.getConnection()).isSameAs(replicaConnection);
+
+        softly.assertThat(meterRegistry.counter("datasource.routing", "target", "replica").count()).isEqualTo(1.0);
+        softly.assertThat(meterRegistry.counter("datasource.routing", "target", "primary").count()).isEqualTo(1.0);
+        softly.assertAll();
+    }
+
+    @Test
+    void getConnectionFallsBackToPrimaryWhenReplicaIsDown() throws SQLException {
+        when(replica.getConnection()).thenThrow(new SQLException("connection refused"));
+        when(replica.getPoolName()).thenReturn("replica-0");
+        when(primary.getConnection()).thenReturn(primaryConnection);
+
+        softly.assertThat(replicaRoutingDataSource.getConnection()).isSameAs(primaryConnection);
+        // Упавшая реплика больше не пробуется до успешного опроса
+        softly.assertThat(replicaRoutingDataSource.getConnection()).isSameAs(primaryConnection);
+        softly.assertAll();
+    }
+
+    @Test
+    void lsnRoundTripsThroughTextForm() {
+        long lsn = ReplicaRoutingDataSource.parseLsn("16/B374D848");
+
+        softly.assertThat(lsn).isEqualTo(0x16B374D848L);
+        softly.assertThat(ReplicaRoutingDataSource.formatLsn(lsn)).isEqualTo("16/B374D848");
+        softly.assertAll();
+        assertThatThrownBy(() -> ReplicaRoutingDataSource.parseLsn("16B374D848"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Connection lsnConnection(String lsn) throws SQLException {
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getString(1)).thenReturn(lsn);
+        return connection;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.bankcards.config;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Запрос, который сначала читает в транзакции только на чтение, а затем пишет, не должен писать через
+ * соединение реплики. Реплика — та же встроенная PostgreSQL под ролью с правом только на SELECT,
+ * поэтому запись через её соединение падает, как на резервном сервере.
+ */
+@SpringBootTest(properties = {
+    "app.bcrypt-cost=10",
+    "app.rate-limit.enabled=false"
+})
+@AutoConfigureMockMvc
+class ReplicaRoutingIntegrationTest {
+    private static final EmbeddedPostgres POSTGRES = startPostgres();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private static EmbeddedPostgres startPostgres() {
+        try {
+            EmbeddedPostgres postgres = EmbeddedPostgres.start();
+            try (Connection connection = postgres.getPostgresDatabase().getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("CREATE EXTENSION IF NOT EXISTS pgcrypto");
+                statement.execute("CREATE ROLE replica_reader LOGIN PASSWORD 'replica'");
+                // Таблицы создаст Liquibase уже после запуска: право на чтение выдаётся заранее
+                statement.execute("ALTER DEFAULT PRIVILEGES IN SCHEMA public GRANT SELECT ON TABLES TO replica_reader");
+            }
+            return postgres;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        String url = POSTGRES.getJdbcUrl("postgres", "postgres");
+        registry.add("spring.datasource.url", () -> url);
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+        registry.add("app.datasource-replica-urls", () -> url);
+        registry.add("app.datasource-replica-username", () -> "replica_reader");
+        registry.add("app.datasource-replica-password", () -> "replica");
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        POSTGRES.close();
+    }
+
+    // getUserByUsername читает с реплики, createCard пишет на основную БД в том же запросе
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    void readOnlyLookupDoesNotPinReplicaConnectionForFollowingWrite() throws Exception {
+        jdbcTemplate.update("INSERT INTO users (username, password, role) VALUES ('replica_owner', 'x', 'ROLE_USER')");
+
+        mockMvc.perform(post("/api/admin/cards")
+                .param("username", "replica_owner")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {"cardNumber": "4000000000000002", "holderName": "IVAN IVANOV",
+                     "expiryDate": "2035-12-31", "balance": 100.00}
+                    """))
+            .andExpect(status().isCreated());
+
+        assertThat(jdbcTemplate.queryForObject(
+            "SELECT count(*) FROM cards c JOIN users u ON u.id = c.user_id WHERE u.username = 'replica_owner'",
+            Long.class)).isEqualTo(1L);
+    }
+}
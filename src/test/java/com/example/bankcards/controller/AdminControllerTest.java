@@ -1,9 +1,14 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.card.CardExportFormat;
 import com.example.bankcards.dto.card.CardRequestDto;
 import com.example.bankcards.dto.card.CardResponseDto;
+import com.example.bankcards.entity.User;
 import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.service.CardExportService;
 import com.example.bankcards.service.CardService;
+import com.example.bankcards.service.TokenRevocationService;
+import com.example.bankcards.service.UserService;
 import org.assertj.core.api.SoftAssertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,15 +19,20 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -31,6 +41,15 @@ class AdminControllerTest {
     @Mock
     private CardService cardService;
 
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private TokenRevocationService tokenRevocationService;
+
+    @Mock
+    private CardExportService cardExportService;
+
     @InjectMocks
     private AdminController adminController;
 
@@ -47,13 +66,29 @@ class AdminControllerTest {
         cardResponseDto.setHolderName("Admin");
         cardResponseDto.setExpiryDate(LocalDate.now().plusYears(1));
         cardResponseDto.setStatus(CardStatus.ACTIVE);
-        cardResponseDto.setBalance(1000.0);
+        cardResponseDto.setBalance(100000L);
 
         cardRequestDto = new CardRequestDto();
         cardRequestDto.setCardNumber("1234567890123456");
         cardRequestDto.setHolderName("Admin");
         cardRequestDto.setExpiryDate(LocalDate.now().plusYears(1));
-        cardRequestDto.setBalance(1000.0);
+        cardRequestDto.setBalance(100000L);
+    }
+
+    @Test
+    void exportAllCardsStreamsFromExportServiceWithItsOwnTimeout() throws Exception {
+        ReflectionTestUtils.setField(adminController, "exportTimeoutMilliseconds", 1800000L);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        WebAsyncTask<Void> task = adminController.exportAllCards(CardExportFormat.CSV, response);
+        task.getCallable().call();
+
+        softly.assertThat(task.getTimeout()).isEqualTo(1800000L);
+        softly.assertThat(response.getContentType()).isEqualTo("text/csv");
+        softly.assertThat(response.getHeader(HttpHeaders.CONTENT_DISPOSITION))
+            .isEqualTo("attachment; filename=\"cards.csv\"");
+        verify(cardExportService).export(eq(CardExportFormat.CSV), eq(response.getOutputStream()));
+        softly.assertAll();
     }
 
     @Test
@@ -75,7 +110,10 @@ class AdminControllerTest {
 
     @Test
     void createCardForUser() {
-        when(cardService.createCard(any(CardRequestDto.class), anyString()))
+        User admin = new User();
+        admin.setId(7L);
+        when(userService.getUserByUsername("admin")).thenReturn(admin);
+        when(cardService.createCard(any(CardRequestDto.class), anyLong()))
             .thenReturn(cardResponseDto);
 
         ResponseEntity<CardResponseDto> response =
@@ -86,14 +124,32 @@ class AdminControllerTest {
             .extracting(CardResponseDto::getId)
             .isEqualTo(1L);
 
-        verify(cardService).createCard(cardRequestDto, "admin");
+        verify(cardService).createCard(cardRequestDto, 7L);
+        softly.assertAll();
+    }
+
+    @Test
+    void revokeUserTokens() {
+        ResponseEntity<Void> response = adminController.revokeUserTokens(1L);
+
+        softly.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+        verify(userService).revokeTokens(1L);
+        softly.assertAll();
+    }
+
+    @Test
+    void revokeToken() {
+        ResponseEntity<Void> response = adminController.revokeToken("token-1");
+
+        softly.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+        verify(tokenRevocationService).revoke("token-1");
         softly.assertAll();
     }
 
     @Test
     void updateAnyCardStatus() {
         cardResponseDto.setStatus(CardStatus.BLOCKED);
-        when(cardService.updateCardStatus(anyLong(), any(CardStatus.class), any()))
+        when(cardService.updateAnyCardStatus(anyLong(), any(CardStatus.class)))
             .thenReturn(cardResponseDto);
 
         ResponseEntity<CardResponseDto> response =
@@ -103,7 +159,19 @@ class AdminControllerTest {
             .isNotNull()
             .extracting(CardResponseDto::getStatus)
             .isEqualTo(CardStatus.BLOCKED);
-        verify(cardService).updateCardStatus(1L, CardStatus.BLOCKED, null);
+        verify(cardService).updateAnyCardStatus(1L, CardStatus.BLOCKED);
+        softly.assertAll();
+    }
+
+    @Test
+    void updateBalanceShards() {
+        when(cardService.updateBalanceShards(1L, 8)).thenReturn(cardResponseDto);
+
+        ResponseEntity<CardResponseDto> response = adminController.updateBalanceShards(1L, 8);
+
+        softly.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        softly.assertThat(response.getBody()).isEqualTo(cardResponseDto);
+        verify(cardService).updateBalanceShards(1L, 8);
         softly.assertAll();
     }
 
@@ -124,8 +192,8 @@ class AdminControllerTest {
             CardStatus.ACTIVE,
             LocalDate.now(),
             LocalDate.now().plusYears(1),
-            0.0,
-            1000.0,
+            new BigDecimal("0.00"),
+            new BigDecimal("1000.00"),
             Pageable.unpaged()
         );
 
@@ -148,8 +216,8 @@ class AdminControllerTest {
             CardStatus.ACTIVE,
             LocalDate.now(),
             LocalDate.now().plusYears(1),
-            0.0,
-            1000.0,
+            0L,
+            100000L,
             Pageable.unpaged()
         );
 
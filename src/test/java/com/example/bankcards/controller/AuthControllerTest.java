@@ -2,6 +2,8 @@ package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.user.UserRequestDto;
 import com.example.bankcards.dto.user.UserResponseDto;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.security.JwtUserPrincipal;
 import com.example.bankcards.service.AuthService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,7 +14,9 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.assertj.core.api.SoftAssertions;
+import java.time.Instant;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -82,4 +86,16 @@ class AuthControllerTest {
             .isInstanceOf(RuntimeException.class);
         softly.assertAll();
     }
-}
\ No newline at end of file
+
+    @Test
+    void logoutNoContent() {
+        JwtUserPrincipal principal = new JwtUserPrincipal(1L, "testuser", Role.ROLE_USER, 0,
+            "token-1", Instant.now().plusSeconds(60));
+
+        ResponseEntity<Void> response = authController.logout(principal);
+
+        softly.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+        verify(authService).logout(principal);
+        softly.assertAll();
+    }
+}
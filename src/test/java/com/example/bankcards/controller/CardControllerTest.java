@@ -2,9 +2,17 @@ package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.card.CardRequestDto;
 import com.example.bankcards.dto.card.CardResponseDto;
+import com.example.bankcards.dto.card.ETaggedDto;
+import com.example.bankcards.dto.ledger.LedgerEntryDto;
+import com.example.bankcards.dto.transfer.BatchTransferRequestDto;
+import com.example.bankcards.dto.transfer.BatchTransferResponseDto;
 import com.example.bankcards.dto.transfer.TransferRequestDto;
 import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.security.JwtUserPrincipal;
+import com.example.bankcards.service.CardLedgerService;
 import com.example.bankcards.service.CardService;
+import com.example.bankcards.service.IdempotencyService;
 import org.assertj.core.api.SoftAssertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,15 +25,22 @@ import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.userdetails.UserDetails;
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,13 +50,17 @@ class CardControllerTest {
     private CardService cardService;
 
     @Mock
-    private UserDetails userDetails;
+    private IdempotencyService idempotencyService;
+
+    @Mock
+    private CardLedgerService cardLedgerService;
 
     @InjectMocks
     private CardController cardController;
 
     private CardResponseDto cardResponseDto;
     private CardRequestDto cardRequestDto;
+    private JwtUserPrincipal principal;
     private TransferRequestDto transferRequestDto;
     private SoftAssertions softly;
 
@@ -54,59 +73,77 @@ class CardControllerTest {
         cardResponseDto.setHolderName("Test User");
         cardResponseDto.setExpiryDate(LocalDate.now().plusYears(1));
         cardResponseDto.setStatus(CardStatus.ACTIVE);
-        cardResponseDto.setBalance(1000.0);
+        cardResponseDto.setBalance(100000L);
 
         cardRequestDto = new CardRequestDto();
         cardRequestDto.setCardNumber("1234567890123456");
         cardRequestDto.setHolderName("Test User");
         cardRequestDto.setExpiryDate(LocalDate.now().plusYears(1));
-        cardRequestDto.setBalance(1000.0);
+        cardRequestDto.setBalance(100000L);
 
         transferRequestDto = new TransferRequestDto();
         transferRequestDto.setSourceCardId(1L);
         transferRequestDto.setDestinationCardId(2L);
-        transferRequestDto.setAmount(100.0);
+        transferRequestDto.setAmount(10000L);
 
-        when(userDetails.getUsername()).thenReturn("testuser");
+        principal = new JwtUserPrincipal(1L, "testuser", Role.ROLE_USER, 0,
+            "token-1", Instant.now().plusSeconds(60));
+        lenient().when(idempotencyService.execute(any(), anyString(), anyString(), any(), any(), any()))
+            .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(5).get());
     }
 
     @Test
     void getUserCards() {
         Page<CardResponseDto> page = new PageImpl<>(Collections.singletonList(cardResponseDto));
-        when(cardService.getUserCards(any(Pageable.class), anyString())).thenReturn(page);
+        when(cardService.getUserCardsWithETag(any(Pageable.class), anyLong(), isNull())).thenReturn(new ETaggedDto<>("u1-1-7-1", page));
 
         ResponseEntity<Page<CardResponseDto>> response =
-            cardController.getUserCards(Pageable.unpaged(), userDetails);
+            cardController.getUserCards(Pageable.unpaged(), null, principal);
 
         Optional.ofNullable(response.getBody())
             .ifPresent(body -> {
                 softly.assertThat(body.getContent()).hasSize(1);
             });
-        verify(cardService).getUserCards(Pageable.unpaged(), "testuser");
+        softly.assertThat(response.getHeaders().getETag()).isEqualTo("\"u1-1-7-1\"");
+        verify(cardService).getUserCardsWithETag(Pageable.unpaged(), 1L, null);
         softly.assertAll();
     }
 
     @Test
     void getAllUserCards() {
         List<CardResponseDto> cards = Collections.singletonList(cardResponseDto);
-        when(cardService.getAllUserCards(anyString())).thenReturn(cards);
+        when(cardService.getAllUserCardsWithETag(anyLong(), isNull())).thenReturn(new ETaggedDto<>("u1-1-7-1", cards));
 
         ResponseEntity<List<CardResponseDto>> response =
-            cardController.getAllUserCards(userDetails);
+            cardController.getAllUserCards(null, principal);
 
         softly.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         softly.assertThat(response.getBody()).isNotNull();
         softly.assertThat(response.getBody()).hasSize(1);
-        verify(cardService).getAllUserCards("testuser");
+        verify(cardService).getAllUserCardsWithETag(1L, null);
+        softly.assertAll();
+    }
+
+    @Test
+    void getAllUserCardsNotModifiedWithoutLoadingCards() {
+        when(cardService.getUserCardsETag(1L)).thenReturn("u1-1-7-1");
+
+        ResponseEntity<List<CardResponseDto>> response =
+            cardController.getAllUserCards("W/\"u1-1-7-1\"", principal);
+
+        softly.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        softly.assertThat(response.getBody()).isNull();
+        softly.assertThat(response.getHeaders().getETag()).isEqualTo("\"u1-1-7-1\"");
+        verify(cardService, never()).getAllUserCardsWithETag(anyLong(), any());
         softly.assertAll();
     }
 
     @Test
     void getCardById() {
-        when(cardService.getCardById(anyLong(), anyString())).thenReturn(cardResponseDto);
+        when(cardService.getCardWithETag(anyLong(), anyLong(), isNull())).thenReturn(new ETaggedDto<>("c1-7-0-1", cardResponseDto));
 
         ResponseEntity<CardResponseDto> response =
-            cardController.getCardById(1L, userDetails);
+            cardController.getCardById(1L, null, principal);
 
         softly.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         softly.assertThat(response.getBody()).isNotNull();
@@ -114,16 +151,47 @@ class CardControllerTest {
                 .map(body -> body.getId())
                 .orElse(null))
             .isEqualTo(1L);
-        verify(cardService).getCardById(1L, "testuser");
+        softly.assertThat(response.getHeaders().getCacheControl()).isEqualTo("no-cache, private");
+        verify(cardService).getCardWithETag(1L, 1L, null);
+        softly.assertAll();
+    }
+
+    @Test
+    void getCardByIdReloadsWhenCardVersionChanged() {
+        when(cardService.getCardETag(1L, 1L)).thenReturn(Optional.of("c1-8-0-1"));
+        when(cardService.getCardWithETag(1L, 1L, "c1-8-0-1")).thenReturn(new ETaggedDto<>("c1-8-0-1", cardResponseDto));
+
+        ResponseEntity<CardResponseDto> response =
+            cardController.getCardById(1L, "\"c1-7-0-1\"", principal);
+
+        softly.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        softly.assertThat(response.getHeaders().getETag()).isEqualTo("\"c1-8-0-1\"");
+        softly.assertAll();
+    }
+
+    @Test
+    void getCardLedger() {
+        LocalDateTime asOf = LocalDateTime.now();
+        LedgerEntryDto entry = new LedgerEntryDto();
+        entry.setCardId(1L);
+        Page<LedgerEntryDto> page = new PageImpl<>(Collections.singletonList(entry));
+        when(cardLedgerService.getCardLedger(anyLong(), anyLong(), any(), any(Pageable.class))).thenReturn(page);
+
+        ResponseEntity<Page<LedgerEntryDto>> response =
+            cardController.getCardLedger(1L, asOf, Pageable.unpaged(), principal);
+
+        softly.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        softly.assertThat(response.getBody()).isSameAs(page);
+        verify(cardLedgerService).getCardLedger(1L, 1L, asOf, Pageable.unpaged());
         softly.assertAll();
     }
 
     @Test
     void createCard() {
-        when(cardService.createCard(any(CardRequestDto.class), anyString())).thenReturn(cardResponseDto);
+        when(cardService.createCard(any(CardRequestDto.class), anyLong())).thenReturn(cardResponseDto);
 
         ResponseEntity<CardResponseDto> response =
-            cardController.createCard(cardRequestDto, userDetails);
+            cardController.createCard(cardRequestDto, null, principal);
 
         softly.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         softly.assertThat(response.getBody()).isNotNull();
@@ -131,18 +199,18 @@ class CardControllerTest {
                 .map(body -> body.getId())
                 .orElse(null))
             .isEqualTo(1L);
-        verify(cardService).createCard(cardRequestDto, "testuser");
+        verify(cardService).createCard(cardRequestDto, 1L);
         softly.assertAll();
     }
 
     @Test
     void updateCardStatus() {
         cardResponseDto.setStatus(CardStatus.BLOCKED);
-        when(cardService.updateCardStatus(anyLong(), any(CardStatus.class), anyString()))
+        when(cardService.updateCardStatus(anyLong(), any(CardStatus.class), anyLong()))
             .thenReturn(cardResponseDto);
 
         ResponseEntity<CardResponseDto> response =
-            cardController.updateCardStatus(1L, CardStatus.BLOCKED, userDetails);
+            cardController.updateCardStatus(1L, CardStatus.BLOCKED, principal);
 
         softly.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
         softly.assertThat(response.getBody()).isNotNull();
@@ -150,31 +218,50 @@ class CardControllerTest {
                 .map(body -> body.getStatus())
                 .orElse(null))
             .isEqualTo(CardStatus.BLOCKED);
-        verify(cardService).updateCardStatus(1L, CardStatus.BLOCKED, "testuser");
+        verify(cardService).updateCardStatus(1L, CardStatus.BLOCKED, 1L);
         softly.assertAll();
     }
 
     @Test
     void deleteCardNoContent() {
-        doNothing().when(cardService).deleteCard(anyLong(), anyString());
+        doNothing().when(cardService).deleteCard(anyLong(), anyLong());
 
         ResponseEntity<Void> response =
-            cardController.deleteCard(1L, userDetails);
+            cardController.deleteCard(1L, principal);
 
         softly.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
-        verify(cardService).deleteCard(1L, "testuser");
+        verify(cardService).deleteCard(1L, 1L);
         softly.assertAll();
     }
 
     @Test
     void transferBetweenCardsNoContent() {
-        doNothing().when(cardService).transferBetweenCards(any(TransferRequestDto.class), anyString());
+        doNothing().when(cardService).transferBetweenCards(any(TransferRequestDto.class), anyLong());
 
         ResponseEntity<Void> response =
-            cardController.transferBetweenCards(transferRequestDto, userDetails);
+            cardController.transferBetweenCards(transferRequestDto, "key-1", principal);
 
         softly.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
-        verify(cardService).transferBetweenCards(transferRequestDto, "testuser");
+        verify(idempotencyService).execute(eq("key-1"), eq("testuser"), eq("card.transfer"), any(), eq(Void.class), any());
+        verify(cardService).transferBetweenCards(transferRequestDto, 1L);
+        softly.assertAll();
+    }
+
+    @Test
+    void transferBatch() {
+        BatchTransferRequestDto batchRequest = new BatchTransferRequestDto();
+        batchRequest.setTransfers(Collections.singletonList(transferRequestDto));
+        BatchTransferResponseDto batchResponse = new BatchTransferResponseDto();
+        batchResponse.setCommitted(true);
+        batchResponse.setApplied(1);
+        when(cardService.transferBatch(any(BatchTransferRequestDto.class), anyLong())).thenReturn(batchResponse);
+
+        ResponseEntity<BatchTransferResponseDto> response =
+            cardController.transferBatch(batchRequest, null, principal);
+
+        softly.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        softly.assertThat(response.getBody()).isSameAs(batchResponse);
+        verify(cardService).transferBatch(batchRequest, 1L);
         softly.assertAll();
     }
 
@@ -187,7 +274,7 @@ class CardControllerTest {
             any(),
             any(),
             any(),
-            anyString(),
+            anyLong(),
             any(Pageable.class)
         )).thenReturn(page);
 
@@ -196,10 +283,10 @@ class CardControllerTest {
                 CardStatus.ACTIVE,
                 LocalDate.now(),
                 LocalDate.now().plusYears(1),
-                0.0,
-                1000.0,
+                new BigDecimal("0.00"),
+                new BigDecimal("1000.00"),
                 Pageable.unpaged(),
-                userDetails
+                principal
             );
 
         softly.assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
@@ -212,9 +299,9 @@ class CardControllerTest {
             CardStatus.ACTIVE,
             LocalDate.now(),
             LocalDate.now().plusYears(1),
-            0.0,
-            1000.0,
-            "testuser",
+            0L,
+            100000L,
+            1L,
             Pageable.unpaged()
         );
         softly.assertAll();
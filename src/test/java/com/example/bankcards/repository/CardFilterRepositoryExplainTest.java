@@ -0,0 +1,210 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.dto.card.CardCursor;
+import com.example.bankcards.dto.card.CardFilterDto;
+import com.example.bankcards.dto.card.CardSortKey;
+import com.example.bankcards.entity.enums.CardStatus;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.assertj.core.api.SoftAssertions;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Проверяет по EXPLAIN, что частые комбинации фильтра карт обслуживаются индексами. Объясняется SQL,
+ * который Hibernate сгенерировал для CardFilterRepositoryImpl (перехватывается StatementInspector),
+ * на встроенной PostgreSQL со схемой после миграций Liquibase. Таблица заполняется так, чтобы планировщик
+ * выбирал индексы по статистике, а не из-за отключённого последовательного сканирования.
+ */
+@SpringBootTest(properties = {
+    "app.bcrypt-cost=10",
+    "app.rate-limit.enabled=false"
+})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CardFilterRepositoryExplainTest {
+    private static final EmbeddedPostgres POSTGRES = startPostgres();
+    private static final int USERS = 2000;
+    private static final int CARDS_PER_USER = 50;
+    private static final long USER_ID = 1L;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private SoftAssertions softly;
+
+    private static EmbeddedPostgres startPostgres() {
+        try {
+            EmbeddedPostgres postgres = EmbeddedPostgres.start();
+            try (Connection connection = postgres.getPostgresDatabase().getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("CREATE EXTENSION IF NOT EXISTS pgcrypto");
+            }
+            return postgres;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> POSTGRES.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+        registry.add("spring.jpa.properties.hibernate.session_factory.statement_inspector",
+            CapturedSql.class::getName);
+    }
+
+    // 100 000 карт: 2% заблокированы, 1% просрочены, остальные действуют; номер карты в запросах не читается
+    @BeforeAll
+    void seedCards() {
+        jdbcTemplate.update("INSERT INTO users (username, password, role) " +
+            "SELECT 'explain_' || g, 'x', 'ROLE_USER' FROM generate_series(1, ?) g", USERS);
+        jdbcTemplate.update("INSERT INTO cards (card_number, card_number_hash, card_last4, holder_name, " +
+            "expiry_date, status, balance, user_id) " +
+            "SELECT 'explain_' || g, md5(g::text), right(lpad(g::text, 4, '0'), 4), 'EXPLAIN HOLDER', " +
+            "CASE WHEN g % 100 = 0 THEN current_date - 1 - g % 365 ELSE current_date + 30 + g % 1800 END, " +
+            "CASE WHEN g % 100 = 0 THEN 'EXPIRED' WHEN g % 50 = 1 THEN 'BLOCKED' ELSE 'ACTIVE' END, " +
+            "g % 100000, (SELECT min(id) FROM users) + g % ? " +
+            "FROM generate_series(1, ?) g", USERS, USERS * CARDS_PER_USER);
+        jdbcTemplate.execute("ANALYZE cards");
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        POSTGRES.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        CapturedSql.clear();
+    }
+
+    @Test
+    void userStatusFilterUsesUserIndex() {
+        CardFilterDto filter = new CardFilterDto(CardStatus.ACTIVE, null, null, null, null, userId());
+        cardRepository.seekSummaries(filter, LocalDate.now(), CardSortKey.ID, Sort.Direction.ASC, null, 21);
+
+        String plan = explain(userId(), CardStatus.ACTIVE.name(), today(), 21);
+
+        softly.assertThat(plan).contains("idx_cards_user_").doesNotContain("Seq Scan");
+        softly.assertAll();
+    }
+
+    @Test
+    void adminStatusFilterUsesStatusExpiryIndex() {
+        LocalDate to = LocalDate.now().plusYears(1);
+        CardFilterDto filter = new CardFilterDto(CardStatus.BLOCKED, LocalDate.now(), to, null, null, null);
+        cardRepository.countSummaries(filter, LocalDate.now());
+
+        String plan = explain(CardStatus.BLOCKED.name(), today(), today(), Date.valueOf(to));
+
+        softly.assertThat(plan).contains("idx_cards_status_expiry").doesNotContain("Seq Scan");
+        softly.assertAll();
+    }
+
+    @Test
+    void adminExpiredFilterCombinesIndexes() {
+        CardFilterDto filter = new CardFilterDto(CardStatus.EXPIRED, null, null, null, null, null);
+        cardRepository.countSummaries(filter, LocalDate.now());
+
+        String plan = explain(CardStatus.EXPIRED.name(), today());
+
+        softly.assertThat(plan).contains("BitmapOr").doesNotContain("Seq Scan");
+        softly.assertAll();
+    }
+
+    @Test
+    void userBalanceRangeSortedByBalanceSortsOwnerCards() {
+        CardFilterDto filter = new CardFilterDto(null, null, null, 0L, 100000L, userId());
+        cardRepository.seekSummaries(filter, LocalDate.now(), CardSortKey.BALANCE, Sort.Direction.DESC, null, 21);
+
+        String plan = explain(userId(), 0L, 100000L, 21);
+
+        softly.assertThat(plan).contains("idx_cards_user_").doesNotContain("Seq Scan", "idx_cards_user_balance_id");
+        softly.assertAll();
+    }
+
+    @Test
+    void userCardsSeekByIdUsesUserIdIndex() {
+        CardCursor after = new CardCursor(CardSortKey.ID, Sort.Direction.ASC, 100L, 100L);
+        cardRepository.seekSummaries(CardFilterDto.ofUser(userId()), LocalDate.now(), CardSortKey.ID,
+            Sort.Direction.ASC, after, 21);
+
+        String plan = explain(userId(), 100L, 21);
+
+        softly.assertThat(plan).contains("idx_cards_user_id_id").doesNotContain("Seq Scan", "Sort");
+        softly.assertAll();
+    }
+
+    // Параметры передаются в порядке плейсхолдеров перехваченного запроса, как их привязывает Hibernate
+    private String explain(Object... parameters) {
+        String sql = CapturedSql.last();
+        softly.assertThat(sql.chars().filter(c -> c == '?').count())
+            .as("число параметров в %s", sql)
+            .isEqualTo(parameters.length);
+        return String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class, parameters));
+    }
+
+    private long userId() {
+        return jdbcTemplate.queryForObject("SELECT id FROM users WHERE username = 'explain_" + USER_ID + "'",
+            Long.class);
+    }
+
+    private static Date today() {
+        return Date.valueOf(LocalDate.now());
+    }
+
+    // Запоминает запросы к cards, которые Hibernate отправляет в JDBC
+    public static class CapturedSql implements StatementInspector {
+        private static final List<String> STATEMENTS = new ArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            if (sql.contains("cards")) {
+                synchronized (STATEMENTS) {
+                    STATEMENTS.add(sql);
+                }
+            }
+            return sql;
+        }
+
+        static void clear() {
+            synchronized (STATEMENTS) {
+                STATEMENTS.clear();
+            }
+        }
+
+        static String last() {
+            synchronized (STATEMENTS) {
+                if (STATEMENTS.isEmpty()) {
+                    throw new IllegalStateException("Hibernate не выполнил запрос к cards");
+                }
+                return STATEMENTS.get(STATEMENTS.size() - 1);
+            }
+        }
+    }
+}
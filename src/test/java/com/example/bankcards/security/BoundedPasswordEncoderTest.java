@@ -0,0 +1,168 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.controller.AuthController;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.exception.GlobalExceptionHandler;
+import com.example.bankcards.exception.ServiceOverloadedException;
+import com.example.bankcards.mapper.UserMappers;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.service.AuthService;
+import com.example.bankcards.service.TokenRevocationService;
+import com.example.bankcards.service.TokenVersionService;
+import com.example.bankcards.service.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Пул из одного потока с очередью на одно место: первое хеширование занимает поток, второе — очередь,
+ * а третье должно сразу получить отказ вместо ожидания.
+ */
+class BoundedPasswordEncoderTest {
+    private static final String CREDENTIALS = "{\"username\":\"testuser\",\"password\":\"password123\"}";
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private MeterRegistry meterRegistry;
+    private BoundedPasswordEncoder encoder;
+    private CompletableFuture<String> running;
+    private CompletableFuture<String> queued;
+    private SoftAssertions softly;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        softly = new SoftAssertions();
+        meterRegistry = new SimpleMeterRegistry();
+        encoder = new BoundedPasswordEncoder(new BlockingPasswordEncoder(), 1, 1, 7, meterRegistry);
+
+        running = CompletableFuture.supplyAsync(() -> encoder.encode("first"));
+        softly.assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        queued = CompletableFuture.supplyAsync(() -> encoder.encode("second"));
+        awaitQueued();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        encoder.shutdown();
+    }
+
+    @Test
+    void fullQueueRejectsImmediately() throws Exception {
+        softly.assertThatThrownBy(() -> encoder.encode("third"))
+            .isInstanceOfSatisfying(ServiceOverloadedException.class,
+                e -> softly.assertThat(e.getRetryAfterSeconds()).isEqualTo(7));
+        softly.assertThatThrownBy(() -> encoder.matches("third", "hash"))
+            .isInstanceOf(ServiceOverloadedException.class);
+        softly.assertThat(meterRegistry.counter("auth.password.hashing.rejected").count()).isEqualTo(2.0);
+
+        release.countDown();
+        softly.assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("hashed:first");
+        softly.assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("hashed:second");
+        softly.assertAll();
+    }
+
+    @Test
+    void loginAndRegisterAnswer503WithRetryAfterWhenQueueIsFull() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new AuthController(authService()))
+            .setControllerAdvice(new GlobalExceptionHandler())
+            .build();
+
+        mockMvc.perform(post("/api/auth/login").contentType(MediaType.APPLICATION_JSON).content(CREDENTIALS))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().string("Retry-After", "7"));
+        mockMvc.perform(post("/api/auth/register").contentType(MediaType.APPLICATION_JSON).content(CREDENTIALS))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().string("Retry-After", "7"));
+    }
+
+    // Неизвестное имя сверяется с фиктивным хешем через ту же очередь, поэтому получает не 400, а тот же 503
+    @Test
+    void loginWithUnknownUsernameAnswers503WithRetryAfterWhenQueueIsFull() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new AuthController(authService()))
+            .setControllerAdvice(new GlobalExceptionHandler())
+            .build();
+
+        mockMvc.perform(post("/api/auth/login").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\":\"ghost\",\"password\":\"password123\"}"))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().string("Retry-After", "7"));
+    }
+
+    // Вход и регистрация идут через настоящие DaoAuthenticationProvider, UserDetailsServiceImpl и UserService
+    // с ограниченным кодировщиком
+    private AuthService authService() {
+        UserRepository userRepository = mock(UserRepository.class);
+        User user = new User();
+        user.setUsername("testuser");
+        user.setPassword("hash");
+        user.setRole(Role.ROLE_USER);
+        when(userRepository.findByUsername(any())).thenReturn(Optional.empty());
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(user));
+        DaoAuthenticationProvider authenticationProvider = new DaoAuthenticationProvider(encoder);
+        authenticationProvider.setUserDetailsService(new UserDetailsServiceImpl(userRepository));
+        // Фиктивный хеш провайдер вычисляет при первом входе; в работающем приложении он уже готов,
+        // когда очередь заполняется
+        ReflectionTestUtils.setField(authenticationProvider, "userNotFoundEncodedPassword", "hash");
+
+        UserMappers userMapper = mock(UserMappers.class);
+        when(userMapper.mapToEntity(any())).thenReturn(new User());
+        UserService userService = new UserService(userRepository, encoder, userMapper, mock(TokenVersionService.class));
+        return new AuthService(new ProviderManager(authenticationProvider), mock(JwtTokenProvider.class),
+            userRepository, userService, encoder, mock(TokenRevocationService.class));
+    }
+
+    private void awaitQueued() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get("auth.password.hashing.queue.size").gauge().value() < 1) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Второе хеширование не встало в очередь");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private class BlockingPasswordEncoder implements PasswordEncoder {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            block();
+            return "hashed:" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            block();
+            return encode(rawPassword).equals(encodedPassword);
+        }
+
+        private void block() {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
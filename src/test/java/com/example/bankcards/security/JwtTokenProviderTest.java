@@ -0,0 +1,136 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import javax.crypto.SecretKey;
+import java.util.Base64;
+import java.util.Date;
+import java.util.UUID;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class JwtTokenProviderTest {
+    private static final String SECRET = "404E635266556A586E3272357538782F413F4428472B4B6250645367566B5970";
+    private static final String OTHER_SECRET = "6B5970337336763979244226452948404D635166546A576E5A7234753778217A";
+
+    private JwtTokenProvider jwtTokenProvider;
+    private JwtParser parser;
+    private SoftAssertions softly;
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        jwtTokenProvider = new JwtTokenProvider(SECRET, 60_000, 100, 300);
+        parser = spy((JwtParser) ReflectionTestUtils.getField(jwtTokenProvider, "parser"));
+        ReflectionTestUtils.setField(jwtTokenProvider, "parser", parser);
+    }
+
+    @Test
+    void cachedTokenIsNotVerifiedAgain() {
+        String token = jwtTokenProvider.generateToken(user());
+
+        softly.assertThat(jwtTokenProvider.getPrincipal(token))
+            .hasValueSatisfying(principal -> softly.assertThat(principal.getUsername()).isEqualTo("testuser"));
+        softly.assertThat(jwtTokenProvider.getPrincipal(token)).isPresent();
+        softly.assertThat(jwtTokenProvider.validateToken(token)).isTrue();
+
+        verify(parser, times(1)).parseSignedClaims(anyString());
+        softly.assertAll();
+    }
+
+    // TTL кэша (300 с) больше срока токена: запись должна пропасть вместе с exp, а повторная проверка — отказать
+    @Test
+    void cachedEntryDoesNotOutliveTokenExpiration() throws InterruptedException {
+        Date expiration = new Date((System.currentTimeMillis() / 1000 + 2) * 1000);
+        String token = token(key(SECRET), expiration);
+
+        softly.assertThat(jwtTokenProvider.validateToken(token)).isTrue();
+        Thread.sleep(Math.max(0, expiration.getTime() - System.currentTimeMillis()) + 100);
+
+        softly.assertThat(jwtTokenProvider.validateToken(token)).isFalse();
+        verify(parser, times(2)).parseSignedClaims(anyString());
+        softly.assertAll();
+    }
+
+    @Test
+    void tamperedTokenIsNotServedFromCache() {
+        String token = jwtTokenProvider.generateToken(user());
+        softly.assertThat(jwtTokenProvider.validateToken(token)).isTrue();
+
+        String[] parts = token.split("\\.");
+        String payload = new String(Base64.getUrlDecoder().decode(parts[1]))
+            .replace("\"role\":\"ROLE_USER\"", "\"role\":\"ROLE_ADMIN\"");
+        String tampered = parts[0] + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(payload.getBytes())
+            + "." + parts[2];
+
+        softly.assertThat(jwtTokenProvider.getPrincipal(tampered)).isEmpty();
+        softly.assertThat(jwtTokenProvider.getPrincipal(tampered)).isEmpty();
+        softly.assertAll();
+    }
+
+    // Те же заголовок и утверждения, что у закэшированного токена, но подпись другим ключом
+    @Test
+    void tokenSignedWithWrongKeyIsNotServedFromCache() {
+        Date expiration = new Date(System.currentTimeMillis() + 60_000);
+        String jti = UUID.randomUUID().toString();
+        String token = token(key(SECRET), expiration, jti);
+        String forged = token(key(OTHER_SECRET), expiration, jti);
+        softly.assertThat(forged.substring(0, forged.lastIndexOf('.')))
+            .isEqualTo(token.substring(0, token.lastIndexOf('.')));
+
+        softly.assertThat(jwtTokenProvider.validateToken(token)).isTrue();
+
+        softly.assertThat(jwtTokenProvider.validateToken(forged)).isFalse();
+        softly.assertThat(jwtTokenProvider.getPrincipal(forged)).isEmpty();
+        softly.assertAll();
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        String token = token(key(SECRET), new Date(System.currentTimeMillis() - 60_000));
+
+        softly.assertThat(jwtTokenProvider.validateToken(token)).isFalse();
+        softly.assertThat(jwtTokenProvider.getPrincipal(token)).isEmpty();
+        verify(parser, times(2)).parseSignedClaims(anyString());
+        softly.assertAll();
+    }
+
+    private static SecretKey key(String secret) {
+        return Keys.hmacShaKeyFor(Decoders.BASE64.decode(secret));
+    }
+
+    private static String token(SecretKey key, Date expiration) {
+        return token(key, expiration, UUID.randomUUID().toString());
+    }
+
+    private static String token(SecretKey key, Date expiration, String jti) {
+        return Jwts.builder()
+            .id(jti)
+            .subject("testuser")
+            .claim("userId", 1L)
+            .claim("role", Role.ROLE_USER.name())
+            .claim("ver", 0)
+            .issuedAt(new Date(expiration.getTime() - 120_000))
+            .expiration(expiration)
+            .signWith(key, Jwts.SIG.HS256)
+            .compact();
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("testuser");
+        user.setRole(Role.ROLE_USER);
+        return user;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.enums.Role;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import java.time.Instant;
+import java.util.List;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class RateLimitFilterTest {
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        // Группа transfers — 2 запроса с пополнением раз в 100 с, остальные группы не исчерпываются в тесте
+        RateLimitFilter rateLimitFilter = new RateLimitFilter(true, 600,
+            10, 1, 100, 50, 2, 0.01, 50, 20, new SimpleMeterRegistry());
+        mockMvc = MockMvcBuilders.standaloneSetup(new StubController())
+            .addFilters(rateLimitFilter)
+            .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void exhaustedGroupAnswers429WithHeadersAndOtherGroupsStayAvailable() throws Exception {
+        mockMvc.perform(fromIp(post("/api/cards/transfer"), "10.0.0.1"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("RateLimit-Limit", "2"))
+            .andExpect(header().string("RateLimit-Remaining", "1"));
+        mockMvc.perform(fromIp(post("/api/cards/transfer"), "10.0.0.1"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("RateLimit-Remaining", "0"))
+            .andExpect(header().string("RateLimit-Reset", "200"));
+
+        mockMvc.perform(fromIp(post("/api/cards/transfer"), "10.0.0.1"))
+            .andExpect(status().isTooManyRequests())
+            .andExpect(header().string("RateLimit-Limit", "2"))
+            .andExpect(header().string("RateLimit-Remaining", "0"))
+            .andExpect(header().string("RateLimit-Reset", "200"))
+            .andExpect(header().string("Retry-After", "100"));
+
+        mockMvc.perform(fromIp(get("/api/cards"), "10.0.0.1"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("RateLimit-Limit", "100"))
+            .andExpect(header().string("RateLimit-Remaining", "99"));
+        mockMvc.perform(fromIp(post("/api/auth/login"), "10.0.0.1"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("RateLimit-Limit", "10"));
+        mockMvc.perform(fromIp(get("/api/admin/cards"), "10.0.0.1"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("RateLimit-Limit", "50"));
+    }
+
+    @Test
+    void anonymousRequestsAreKeyedByIp() throws Exception {
+        exhaustTransfers(() -> fromIp(post("/api/cards/transfer"), "10.0.0.1"));
+
+        mockMvc.perform(fromIp(post("/api/cards/transfer"), "10.0.0.1"))
+            .andExpect(status().isTooManyRequests());
+        mockMvc.perform(fromIp(post("/api/cards/transfer"), "10.0.0.2"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("RateLimit-Remaining", "1"));
+    }
+
+    // Пользователь сохраняет свою корзину при смене IP, а другой пользователь с того же IP получает свою
+    @Test
+    void authenticatedRequestsAreKeyedByUserAcrossIps() throws Exception {
+        authenticateAs("alice");
+        exhaustTransfers(() -> fromIp(post("/api/cards/transfer"), "10.0.0.1"));
+
+        mockMvc.perform(fromIp(post("/api/cards/transfer"), "10.0.0.2"))
+            .andExpect(status().isTooManyRequests());
+
+        authenticateAs("bob");
+        mockMvc.perform(fromIp(post("/api/cards/transfer"), "10.0.0.1"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("RateLimit-Remaining", "1"));
+
+        SecurityContextHolder.clearContext();
+        mockMvc.perform(fromIp(post("/api/cards/transfer"), "10.0.0.1"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("RateLimit-Remaining", "1"));
+    }
+
+    @Test
+    void requestsOutsideRouteGroupsAreNotLimited() throws Exception {
+        mockMvc.perform(fromIp(get("/actuator/health"), "10.0.0.1"))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist("RateLimit-Limit"));
+    }
+
+    private void exhaustTransfers(RequestSupplier request) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(request.get()).andExpect(status().isOk());
+        }
+    }
+
+    private static MockHttpServletRequestBuilder fromIp(MockHttpServletRequestBuilder request, String ip) {
+        return request.with(servletRequest -> {
+            servletRequest.setRemoteAddr(ip);
+            return servletRequest;
+        });
+    }
+
+    private static void authenticateAs(String username) {
+        JwtUserPrincipal principal = new JwtUserPrincipal(1L, username, Role.ROLE_USER, 0, "token-" + username,
+            Instant.now().plusSeconds(60));
+        SecurityContextHolder.getContext().setAuthentication(
+            new UsernamePasswordAuthenticationToken(principal, null, List.of()));
+    }
+
+    @FunctionalInterface
+    private interface RequestSupplier {
+        MockHttpServletRequestBuilder get();
+    }
+
+    @RestController
+    static class StubController {
+        @PostMapping({"/api/cards/transfer", "/api/auth/login"})
+        void write() {
+        }
+
+        @GetMapping({"/api/cards", "/api/admin/cards", "/actuator/health"})
+        void read() {
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.bankcards.security;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Ключ анонимных запросов за прокси: X-Forwarded-For учитывается только от доверенного адреса
+ * (server.tomcat.remoteip.internal-proxies). Запросы идут через настоящий Tomcat, так как заголовок разбирает
+ * его RemoteIpValve; недоверенный отправитель — соединение с локального адреса 127.0.0.2.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+    "app.bcrypt-cost=10",
+    "app.rate-limit.auth.capacity=1",
+    "app.rate-limit.auth.refill-per-second=0.001",
+    "server.tomcat.remoteip.internal-proxies=127\\.0\\.0\\.1"
+})
+class RateLimitForwardedForIntegrationTest {
+    private static final EmbeddedPostgres POSTGRES = startPostgres();
+    private static final String TRUSTED_PROXY = "127.0.0.1";
+    private static final String UNTRUSTED_CLIENT = "127.0.0.2";
+
+    @LocalServerPort
+    private int port;
+
+    private SoftAssertions softly;
+
+    private static EmbeddedPostgres startPostgres() {
+        try {
+            EmbeddedPostgres postgres = EmbeddedPostgres.start();
+            try (Connection connection = postgres.getPostgresDatabase().getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("CREATE EXTENSION IF NOT EXISTS pgcrypto");
+            }
+            return postgres;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> POSTGRES.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        POSTGRES.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+    }
+
+    @Test
+    void trustedProxyKeysBucketsByForwardedClientIp() throws IOException {
+        int first = status(TRUSTED_PROXY, "203.0.113.1");
+        int repeated = status(TRUSTED_PROXY, "203.0.113.1");
+        int otherClient = status(TRUSTED_PROXY, "203.0.113.2");
+
+        softly.assertThat(first).isNotEqualTo(429);
+        softly.assertThat(repeated).isEqualTo(429);
+        softly.assertThat(otherClient).isNotEqualTo(429);
+        softly.assertAll();
+    }
+
+    @Test
+    void untrustedSenderCannotChooseBucketWithForwardedHeader() throws IOException {
+        int first = status(UNTRUSTED_CLIENT, "198.51.100.1");
+        int spoofed = status(UNTRUSTED_CLIENT, "198.51.100.2");
+
+        softly.assertThat(first).isNotEqualTo(429);
+        softly.assertThat(spoofed).isEqualTo(429);
+        softly.assertAll();
+    }
+
+    // HTTP-клиенты не дают выбрать локальный адрес соединения, поэтому запрос пишется в сокет напрямую
+    private int status(String localAddress, String forwardedFor) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.bind(new InetSocketAddress(InetAddress.getByName(localAddress), 0));
+            socket.connect(new InetSocketAddress(InetAddress.getByName(TRUSTED_PROXY), port), 5000);
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /api/auth/login HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "X-Forwarded-For: " + forwardedFor + "\r\n" +
+                "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            String statusLine = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+            return Integer.parseInt(statusLine.split(" ")[1]);
+        }
+    }
+}
@@ -3,9 +3,12 @@ package com.example.bankcards.service;
 import com.example.bankcards.dto.user.UserRequestDto;
 import com.example.bankcards.dto.user.UserResponseDto;
 import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
 import com.example.bankcards.exception.AuthenticationException;
+import com.example.bankcards.exception.ServiceOverloadedException;
 import com.example.bankcards.repository.UserRepository;
 import com.example.bankcards.security.JwtTokenProvider;
+import com.example.bankcards.security.JwtUserPrincipal;
 import org.assertj.core.api.SoftAssertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,7 +18,10 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import java.time.Instant;
 import java.util.Optional;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
@@ -34,6 +40,12 @@ class AuthServiceTest {
     @Mock
     private UserService userService;
 
+    @Mock
+    private PasswordEncoder passwordEncoder;
+
+    @Mock
+    private TokenRevocationService tokenRevocationService;
+
     @InjectMocks
     private AuthService authService;
 
@@ -61,12 +73,47 @@ class AuthServiceTest {
 
         when(authenticationManager.authenticate(any())).thenReturn(authentication);
         when(userRepository.findByUsername(anyString())).thenReturn(Optional.of(user));
-        when(jwtTokenProvider.generateToken(eq(authentication), eq(1L))).thenReturn("token");
+        when(jwtTokenProvider.generateToken(user)).thenReturn("token");
 
         String result = authService.authenticate(userRequestDto);
 
         softly.assertThat(result).isEqualTo("token");
         verify(authenticationManager).authenticate(any());
+        verify(userService, never()).updatePasswordHash(any(), any());
+        softly.assertAll();
+    }
+
+    @Test
+    void authenticateRehashesPasswordWithOutdatedCost() {
+        User user = new User();
+        user.setId(1L);
+        user.setPassword("$2a$10$outdated");
+
+        when(authenticationManager.authenticate(any())).thenReturn(mock(Authentication.class));
+        when(userRepository.findByUsername(anyString())).thenReturn(Optional.of(user));
+        when(passwordEncoder.upgradeEncoding("$2a$10$outdated")).thenReturn(true);
+        when(passwordEncoder.encode("password")).thenReturn("$2a$12$current");
+        when(jwtTokenProvider.generateToken(user)).thenReturn("token");
+
+        softly.assertThat(authService.authenticate(userRequestDto)).isEqualTo("token");
+        verify(userService).updatePasswordHash(1L, "$2a$12$current");
+        softly.assertAll();
+    }
+
+    @Test
+    void authenticateSkipsRehashWhenHashingQueueIsFull() {
+        User user = new User();
+        user.setId(1L);
+        user.setPassword("$2a$10$outdated");
+
+        when(authenticationManager.authenticate(any())).thenReturn(mock(Authentication.class));
+        when(userRepository.findByUsername(anyString())).thenReturn(Optional.of(user));
+        when(passwordEncoder.upgradeEncoding("$2a$10$outdated")).thenReturn(true);
+        when(passwordEncoder.encode("password")).thenThrow(new ServiceOverloadedException("busy", 1));
+        when(jwtTokenProvider.generateToken(user)).thenReturn("token");
+
+        softly.assertThat(authService.authenticate(userRequestDto)).isEqualTo("token");
+        verify(userService, never()).updatePasswordHash(any(), any());
         softly.assertAll();
     }
 
@@ -80,6 +127,16 @@ class AuthServiceTest {
         softly.assertAll();
     }
 
+    @Test
+    void authenticateRethrowsOverloadWrappedByProvider() {
+        when(authenticationManager.authenticate(any())).thenThrow(
+            new InternalAuthenticationServiceException("overloaded", new ServiceOverloadedException("busy", 5)));
+
+        softly.assertThatThrownBy(() -> authService.authenticate(userRequestDto))
+            .isInstanceOf(ServiceOverloadedException.class);
+        softly.assertAll();
+    }
+
     @Test
     void registerUsernameNotExists() {
         when(userService.createUser(any())).thenReturn(userResponseDto);
@@ -91,4 +148,15 @@ class AuthServiceTest {
         verify(userService).createUser(userRequestDto);
         softly.assertAll();
     }
-}
\ No newline at end of file
+
+    @Test
+    void logoutRevokesCurrentToken() {
+        Instant expiresAt = Instant.now().plusSeconds(60);
+        JwtUserPrincipal principal = new JwtUserPrincipal(1L, "testuser", Role.ROLE_USER, 0, "token-1", expiresAt);
+
+        authService.logout(principal);
+
+        verify(tokenRevocationService).revoke("token-1", 1L, expiresAt);
+        softly.assertAll();
+    }
+}
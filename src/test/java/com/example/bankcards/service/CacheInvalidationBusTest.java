@@ -0,0 +1,151 @@
+package com.example.bankcards.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CacheInvalidationBusTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    private CacheInvalidationBus cacheInvalidationBus;
+    private SoftAssertions softly;
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        cacheInvalidationBus = new CacheInvalidationBus(jdbcTemplate, new DataSourceProperties(),
+            new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cacheInvalidationBus, "enabled", true);
+        ReflectionTestUtils.setField(cacheInvalidationBus, "channel", "cache_invalidation");
+    }
+
+    @Test
+    void publishCoalescesKeysOfTransactionIntoOneNotifyBeforeCommit() throws SQLException {
+        Savepoint savepoint = givenTransactionConnection();
+
+        commitTransaction(() -> {
+            cacheInvalidationBus.publish("cards", 1L);
+            cacheInvalidationBus.publish("cards", List.of(2L, 1L));
+            cacheInvalidationBus.publish("user", 1L);
+            verify(jdbcTemplate, never()).execute(any(ConnectionCallback.class));
+        });
+
+        verify(statement).setString(1, "cache_invalidation");
+        verify(statement).setString(2, "cards:1,cards:2,user:1");
+        verify(statement).execute();
+        verify(connection).releaseSavepoint(savepoint);
+        softly.assertThat(TransactionSynchronizationManager.getResource(cacheInvalidationBus)).isNull();
+        softly.assertAll();
+    }
+
+    // Ошибка pg_notify прерывает транзакцию PostgreSQL: откат к точке сохранения оставляет её пригодной к фиксации
+    @Test
+    void failedNotifyBeforeCommitRollsBackToSavepointWithoutFailingCommit() throws SQLException {
+        Savepoint savepoint = givenTransactionConnection();
+        when(statement.execute()).thenThrow(new SQLException("too many notifications in the NOTIFY queue"));
+
+        commitTransaction(() -> cacheInvalidationBus.publish("cards", 1L));
+
+        verify(connection).rollback(savepoint);
+        verify(connection, never()).releaseSavepoint(any());
+    }
+
+    @Test
+    void publishOutsideTransactionSendsImmediately() {
+        cacheInvalidationBus.publish("cards", List.of(5L, 6L));
+
+        verify(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class),
+            eq("cache_invalidation"), eq("cards:5,cards:6"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Savepoint givenTransactionConnection() throws SQLException {
+        Savepoint savepoint = mock(Savepoint.class);
+        when(connection.setSavepoint()).thenReturn(savepoint);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenAnswer(invocation -> {
+            try {
+                return invocation.getArgument(0, ConnectionCallback.class).doInConnection(connection);
+            } catch (SQLException e) {
+                throw new UncategorizedSQLException("notify", null, e);
+            }
+        });
+        return savepoint;
+    }
+
+    private static void commitTransaction(Runnable body) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            body.run();
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.beforeCommit(false));
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void payloadsAreSplitBelowNotifyLimit() {
+        List<String> keys = IntStream.range(0, 2000).mapToObj(i -> "cards:" + (100000 + i)).toList();
+
+        List<String> payloads = CacheInvalidationBus.payloads(keys);
+
+        softly.assertThat(payloads).hasSizeGreaterThan(1);
+        softly.assertThat(payloads).allSatisfy(payload -> softly.assertThat(payload.length()).isLessThan(8000));
+        softly.assertThat(String.join(",", payloads).split(",")).containsExactlyElementsOf(keys);
+        softly.assertAll();
+    }
+
+    @Test
+    void dispatchEvictsSubscribedNamespacesAndFullFlushEvictsAll() {
+        List<String> evictedCards = new ArrayList<>();
+        List<String> flushed = new ArrayList<>();
+        cacheInvalidationBus.subscribe("cards", evictedCards::add, () -> flushed.add("cards"));
+        cacheInvalidationBus.subscribe("user", key -> { }, () -> flushed.add("user"));
+
+        cacheInvalidationBus.dispatch("cards:1,unknown:2,cards:3");
+        cacheInvalidationBus.evictAll();
+
+        softly.assertThat(evictedCards).containsExactly("1", "3");
+        Collections.sort(flushed);
+        softly.assertThat(flushed).containsExactly("cards", "user");
+        softly.assertAll();
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CardBalanceShardServiceTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private CardLedgerService cardLedgerService;
+
+    @Mock
+    private JobLeaseService jobLeaseService;
+
+    @Mock
+    private CardCacheService cardCacheService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private CardBalanceShardService cardBalanceShardService;
+    private SoftAssertions softly;
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        cardBalanceShardService = new CardBalanceShardService(jdbcTemplate, cardRepository, cardLedgerService,
+            jobLeaseService, cardCacheService, transactionManager);
+    }
+
+    @Test
+    void creditSpreadsAcrossConfiguredShards() {
+        Card card = new Card();
+        card.setId(7L);
+        card.setBalance(100000L);
+        card.setBalanceShards(4);
+
+        cardBalanceShardService.credit(card, 5000L);
+
+        verify(jdbcTemplate).update(anyString(), eq(7L), anyInt(), eq(new BigDecimal("50.00")));
+        verify(jdbcTemplate, never()).queryForObject(anyString(), eq(BigDecimal.class), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void foldShardsMovesDrainedAmountToCard() {
+        JobLeaseService.Lease lease = new JobLeaseService.Lease("hot-card-fold", 0, 1, "1", null, null);
+        when(jobLeaseService.claim(eq("hot-card-fold"), anyString(), eq(1))).thenReturn(Optional.of(lease));
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class))).thenReturn(List.of(7L, 8L));
+        User owner = new User();
+        owner.setId(3L);
+        Card card = new Card();
+        card.setId(7L);
+        card.setBalance(100000L);
+        card.setUser(owner);
+        when(cardRepository.findByIdForUpdate(7L)).thenReturn(Optional.of(card));
+        when(cardRepository.findByIdForUpdate(8L)).thenReturn(Optional.empty());
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(7L), eq(7L)))
+            .thenReturn(List.of(new BigDecimal("10.00"), new BigDecimal("0.25")));
+
+        cardBalanceShardService.foldShards();
+
+        verify(cardRepository).addToBalance(7L, 1025L);
+        verify(cardLedgerService).postPendingCredits(7L, 100000L);
+        verify(cardLedgerService, never()).postPendingCredits(eq(8L), anyLong());
+        verify(jobLeaseService).complete(lease);
+        verify(cardRepository, never()).addToBalance(eq(8L), anyLong());
+        verify(cardCacheService).evictAfterCommit(3L);
+        verify(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void foldShardsSkipsFoldWhenAnotherNodeHoldsTheLease() {
+        when(jobLeaseService.claim(eq("hot-card-fold"), anyString(), eq(1))).thenReturn(Optional.empty());
+
+        cardBalanceShardService.foldShards();
+
+        verify(jdbcTemplate, never()).queryForList(anyString(), eq(Long.class));
+        verify(cardRepository, never()).findByIdForUpdate(anyLong());
+        verify(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void isHotReflectsLoadedShardConfiguration() throws SQLException {
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getLong(1)).thenReturn(7L);
+        when(resultSet.getInt(2)).thenReturn(4);
+        doAnswer(invocation -> {
+            invocation.<RowCallbackHandler>getArgument(1).processRow(resultSet);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+
+        softly.assertThat(cardBalanceShardService.isHot(7L)).isFalse();
+
+        cardBalanceShardService.refreshHotCards();
+
+        softly.assertThat(cardBalanceShardService.isHot(7L)).isTrue();
+        softly.assertThat(cardBalanceShardService.isHot(8L)).isFalse();
+        softly.assertAll();
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Истечение карт по разделам-диапазонам ключа (expiry_date, id): план запуска делит кандидатов на смежные
+ * диапазоны, и вместе разделы переводят в EXPIRED каждую просроченную карту ровно один раз.
+ */
+@SpringBootTest(properties = {
+    "app.bcrypt-cost=10",
+    "app.rate-limit.enabled=false",
+    "app.job-lease-poll-milliseconds=3600000",
+    "app.card-expiration-partitions=3",
+    "app.card-expiration-chunk-size=2"
+})
+class CardExpirationIntegrationTest {
+    private static final EmbeddedPostgres POSTGRES = startPostgres();
+
+    @Autowired
+    private CardExpirationService cardExpirationService;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private SoftAssertions softly;
+
+    private static EmbeddedPostgres startPostgres() {
+        try {
+            EmbeddedPostgres postgres = EmbeddedPostgres.start();
+            try (Connection connection = postgres.getPostgresDatabase().getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("CREATE EXTENSION IF NOT EXISTS pgcrypto");
+            }
+            return postgres;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> POSTGRES.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        POSTGRES.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        jdbcTemplate.update("DELETE FROM job_leases");
+        jdbcTemplate.update("DELETE FROM card_ledger_entries");
+        jdbcTemplate.update("DELETE FROM cards");
+        jdbcTemplate.update("DELETE FROM users");
+    }
+
+    @Test
+    void partitionsExpireEachOverdueCardOnce() {
+        User user = owner();
+        List<Long> overdue = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            overdue.add(cardRepository.save(card(user, i, LocalDate.now().minusDays(1 + i % 3))).getId());
+        }
+        Card current = cardRepository.save(card(user, 7, LocalDate.now().plusYears(3)));
+
+        long expired = cardExpirationService.checkAndUpdateExpiredCards();
+
+        softly.assertThat(expired).isEqualTo(7);
+        softly.assertThat(jdbcTemplate.queryForList("SELECT id FROM cards WHERE status = 'EXPIRED' ORDER BY id",
+            Long.class)).containsExactlyElementsOf(overdue);
+        softly.assertThat(cardRepository.findById(current.getId()))
+            .hasValueSatisfying(card -> softly.assertThat(card.getStatus()).isEqualTo(CardStatus.ACTIVE));
+        List<Map<String, Object>> leases = jdbcTemplate.queryForList(
+            "SELECT range_end, completed FROM job_leases WHERE job_name = 'card-expiration' ORDER BY partition_no");
+        softly.assertThat(leases).hasSize(3)
+            .allSatisfy(lease -> softly.assertThat(lease.get("completed")).isEqualTo(true));
+        softly.assertThat(leases.get(2).get("range_end")).isNull();
+        softly.assertThat(cardExpirationService.checkAndUpdateExpiredCards()).isZero();
+        softly.assertAll();
+    }
+
+    private User owner() {
+        jdbcTemplate.update("INSERT INTO users (username, password, role) VALUES ('expiry_owner', 'x', 'ROLE_USER')");
+        return userRepository.findByUsername("expiry_owner").orElseThrow();
+    }
+
+    private static Card card(User user, int number, LocalDate expiryDate) {
+        String cardNumber = String.format("40000000000000%02d", number);
+        Card card = new Card();
+        card.setCardNumber(cardNumber);
+        card.setCardLast4(cardNumber.substring(cardNumber.length() - 4));
+        card.setHolderName("IVAN IVANOV");
+        card.setExpiryDate(expiryDate);
+        card.setStatus(CardStatus.ACTIVE);
+        card.setBalance(10000L);
+        card.setUser(user);
+        return card;
+    }
+}
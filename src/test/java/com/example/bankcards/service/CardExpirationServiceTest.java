@@ -0,0 +1,208 @@
+package com.example.bankcards.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CardExpirationServiceTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private JobLeaseService jobLeaseService;
+
+    @Mock
+    private CardCacheService cardCacheService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private MeterRegistry meterRegistry;
+    private CardExpirationService cardExpirationService;
+    private SoftAssertions softly;
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        meterRegistry = new SimpleMeterRegistry();
+        cardExpirationService = new CardExpirationService(jdbcTemplate, jobLeaseService, cardCacheService,
+            transactionManager, meterRegistry);
+        ReflectionTestUtils.setField(cardExpirationService, "chunkSize", 2);
+        ReflectionTestUtils.setField(cardExpirationService, "partitions", 2);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void checkAndUpdateExpiredCardsWalksClaimedRangesByKeyset() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        LocalDate lastWeek = LocalDate.now().minusDays(7);
+        String runKey = LocalDate.now().toString();
+        JobLeaseService.Lease freshLease = new JobLeaseService.Lease("card-expiration", 0, 2, runKey, null,
+            yesterday + "/20");
+        JobLeaseService.Lease resumedLease = new JobLeaseService.Lease("card-expiration", 1, 2, runKey,
+            yesterday + "/20", null);
+        when(jobLeaseService.claim(eq("card-expiration"), eq(runKey), eq(2), any()))
+            .thenReturn(Optional.of(freshLease), Optional.of(resumedLease), Optional.empty());
+        when(jobLeaseService.checkpoint(any(), anyString())).thenReturn(true);
+        Deque<List<Object[]>> chunks = new ArrayDeque<>();
+        chunks.add(List.of(new Object[] {lastWeek, 9L}, new Object[] {yesterday, 5L}));
+        chunks.add(List.<Object[]>of(new Object[] {yesterday, 12L}));
+        chunks.add(List.of());
+        chunks.add(List.of());
+        List<Object[]> keysetParameters = new ArrayList<>();
+
+        doAnswer(invocation -> {
+            keysetParameters.add(new Object[] {invocation.getArgument(3), invocation.getArgument(4),
+                invocation.getArgument(5), invocation.getArgument(6)});
+            RowMapper<Object> rowMapper = invocation.getArgument(1);
+            List<Object> mapped = new ArrayList<>();
+            for (Object[] row : chunks.poll()) {
+                ResultSet resultSet = mock(ResultSet.class);
+                when(resultSet.getDate(1)).thenReturn(Date.valueOf((LocalDate) row[0]));
+                when(resultSet.getLong(2)).thenReturn((Long) row[1]);
+                when(resultSet.getLong(3)).thenReturn((Long) row[1] * 10);
+                mapped.add(rowMapper.mapRow(resultSet, mapped.size()));
+            }
+            return mapped;
+        }).when(jdbcTemplate).query(anyString(), any(RowMapper.class), any(), any(), any(), any(), any(), any());
+
+        long expired = cardExpirationService.checkAndUpdateExpiredCards();
+
+        softly.assertThat(expired).isEqualTo(3);
+        softly.assertThat(keysetParameters).hasSize(4);
+        softly.assertThat(keysetParameters.get(0))
+            .containsExactly(Date.valueOf(LocalDate.of(1, 1, 1)), 0L, Date.valueOf(yesterday), 20L);
+        softly.assertThat(keysetParameters.get(1))
+            .containsExactly(Date.valueOf(yesterday), 5L, Date.valueOf(yesterday), 20L);
+        softly.assertThat(keysetParameters.get(2))
+            .containsExactly(Date.valueOf(yesterday), 12L, Date.valueOf(yesterday), 20L);
+        softly.assertThat(keysetParameters.get(3))
+            .containsExactly(Date.valueOf(yesterday), 20L, Date.valueOf(LocalDate.of(9999, 12, 31)), Long.MAX_VALUE);
+        verify(jobLeaseService).checkpoint(freshLease, yesterday + "/5");
+        verify(jobLeaseService).checkpoint(freshLease, yesterday + "/12");
+        verify(jobLeaseService).complete(freshLease);
+        verify(jobLeaseService).complete(resumedLease);
+        verify(cardCacheService).evictAll(Set.of(50L, 90L));
+        verify(cardCacheService).evictAll(Set.of(120L));
+        softly.assertThat(meterRegistry.counter("cards.expiration.expired").count()).isEqualTo(3.0);
+        softly.assertThat(meterRegistry.counter("cards.expiration.chunks").count()).isEqualTo(2.0);
+        softly.assertThat(meterRegistry.get("cards.expiration.last.run.expired").gauge().value()).isEqualTo(3.0);
+        softly.assertThat(meterRegistry.timer("cards.expiration.run").count()).isEqualTo(1);
+        softly.assertAll();
+    }
+
+    // Последние ключи частей из PLAN_SQL становятся смежными границами диапазонов:
+    // первый диапазон открыт снизу, последний — сверху
+    @Test
+    @SuppressWarnings("unchecked")
+    void plannerSplitsCandidatesIntoAdjacentKeyRanges() {
+        LocalDate lastWeek = LocalDate.now().minusDays(7);
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        List<Supplier<List<JobLeaseService.Range>>> planners = new ArrayList<>();
+        when(jobLeaseService.claim(anyString(), anyString(), anyInt(), any())).thenAnswer(invocation -> {
+            planners.add(invocation.getArgument(3));
+            return Optional.empty();
+        });
+        doAnswer(invocation -> {
+            RowMapper<Object> rowMapper = invocation.getArgument(1);
+            List<Object> mapped = new ArrayList<>();
+            for (Object[] row : List.of(new Object[] {lastWeek, 40L}, new Object[] {yesterday, 3L})) {
+                ResultSet resultSet = mock(ResultSet.class);
+                when(resultSet.getDate(1)).thenReturn(Date.valueOf((LocalDate) row[0]));
+                when(resultSet.getLong(2)).thenReturn((Long) row[1]);
+                mapped.add(rowMapper.mapRow(resultSet, mapped.size()));
+            }
+            return mapped;
+        }).when(jdbcTemplate).query(anyString(), any(RowMapper.class), eq(2), eq(Date.valueOf(LocalDate.now())));
+
+        cardExpirationService.checkAndUpdateExpiredCards();
+
+        softly.assertThat(planners).hasSize(1);
+        softly.assertThat(planners.get(0).get()).containsExactly(
+            new JobLeaseService.Range(null, lastWeek + "/40"),
+            new JobLeaseService.Range(lastWeek + "/40", null));
+        softly.assertAll();
+    }
+
+    // Без кандидатов план из одного открытого диапазона: запуск всё равно завершается и обнуляет метрику
+    @Test
+    void plannerWithoutCandidatesLeavesOneOpenRange() {
+        List<Supplier<List<JobLeaseService.Range>>> planners = new ArrayList<>();
+        when(jobLeaseService.claim(anyString(), anyString(), anyInt(), any())).thenAnswer(invocation -> {
+            planners.add(invocation.getArgument(3));
+            return Optional.empty();
+        });
+
+        cardExpirationService.checkAndUpdateExpiredCards();
+
+        softly.assertThat(planners.get(0).get()).containsExactly(new JobLeaseService.Range(null, null));
+        softly.assertAll();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void checkAndUpdateExpiredCardsWhenAllPartitionsAreTaken() {
+        when(jobLeaseService.claim(anyString(), anyString(), anyInt(), any())).thenReturn(Optional.empty());
+
+        softly.assertThat(cardExpirationService.checkAndUpdateExpiredCards()).isZero();
+        softly.assertThat(meterRegistry.timer("cards.expiration.run").count()).isZero();
+        verify(jdbcTemplate, never()).query(anyString(), any(RowMapper.class), any(Object[].class));
+        softly.assertAll();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void checkAndUpdateExpiredCardsStopsPartitionWhenLeaseIsLost() {
+        JobLeaseService.Lease lease = new JobLeaseService.Lease("card-expiration", 0, 2,
+            LocalDate.now().toString(), null, null);
+        when(jobLeaseService.claim(anyString(), anyString(), anyInt(), any()))
+            .thenReturn(Optional.of(lease), Optional.empty());
+        when(jobLeaseService.checkpoint(any(), anyString())).thenReturn(false);
+        SimpleTransactionStatus transactionStatus = new SimpleTransactionStatus();
+        when(transactionManager.getTransaction(any())).thenReturn(transactionStatus);
+        ResultSet resultSet = mock(ResultSet.class);
+        doAnswer(invocation -> {
+            when(resultSet.getDate(1)).thenReturn(Date.valueOf(LocalDate.now().minusDays(1)));
+            when(resultSet.getLong(2)).thenReturn(3L);
+            when(resultSet.getLong(3)).thenReturn(1L);
+            RowMapper<Object> rowMapper = invocation.getArgument(1);
+            return List.of(rowMapper.mapRow(resultSet, 0));
+        }).when(jdbcTemplate).query(anyString(), any(RowMapper.class), any(), any(), any(), any(), any(), any());
+
+        softly.assertThat(cardExpirationService.checkAndUpdateExpiredCards()).isZero();
+        softly.assertThat(transactionStatus.isRollbackOnly()).isTrue();
+        verify(jobLeaseService, never()).complete(any());
+        verify(cardCacheService, never()).evictAll(any());
+        softly.assertAll();
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.card.CardExportFormat;
+import com.example.bankcards.util.CardUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CardExportServiceTest {
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private MeterRegistry meterRegistry;
+    private CardExportService cardExportService;
+    private Statement statement;
+    private SoftAssertions softly;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        softly = new SoftAssertions();
+        meterRegistry = new SimpleMeterRegistry();
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        cardExportService = new CardExportService(dataSource, transactionManager, objectMapper, new CardUtils(),
+            meterRegistry, 500);
+
+        LocalDate expiryDate = LocalDate.of(2030, 1, 31);
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getLong(1)).thenReturn(1L, 2L);
+        when(resultSet.getString(2)).thenReturn("3456", (String) null);
+        when(resultSet.getString(3)).thenReturn("Test User", "Doe, \"J\"");
+        when(resultSet.getObject(4, LocalDate.class)).thenReturn(expiryDate);
+        when(resultSet.getString(5)).thenReturn("ACTIVE", "BLOCKED");
+        when(resultSet.getBigDecimal(6)).thenReturn(new BigDecimal("1000.50"), new BigDecimal("0.00"));
+        statement = mock(Statement.class);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+        Connection connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(dataSource.getConnection()).thenReturn(connection);
+    }
+
+    @Test
+    void exportWritesCsvRowsWithFetchSize() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        cardExportService.export(CardExportFormat.CSV, outputStream);
+
+        softly.assertThat(outputStream.toString(StandardCharsets.UTF_8)).isEqualTo(
+            "id,maskedCardNumber,holderName,expiryDate,status,balance\n" +
+            "1,**** **** **** 3456,Test User,2030-01-31,ACTIVE,1000.50\n" +
+            "2,**** **** **** ****,\"Doe, \"\"J\"\"\",2030-01-31,BLOCKED,0.00\n");
+        verify(statement).setFetchSize(eq(500));
+        softly.assertThat(meterRegistry.counter("cards.export.rows").count()).isEqualTo(2.0);
+        softly.assertAll();
+    }
+
+    @Test
+    void exportWritesOneJsonObjectPerLine() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        cardExportService.export(CardExportFormat.NDJSON, outputStream);
+
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        softly.assertThat(lines).hasSize(2);
+        softly.assertThat(lines[0]).contains("\"id\":1", "\"maskedCardNumber\":\"**** **** **** 3456\"",
+            "\"balance\":1000.50");
+        softly.assertThat(lines[1]).contains("\"id\":2", "\"status\":\"BLOCKED\"");
+        softly.assertAll();
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardLedgerEntry;
+import com.example.bankcards.entity.enums.LedgerEntryType;
+import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.repository.CardLedgerEntryRepository;
+import com.example.bankcards.repository.CardRepository;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CardLedgerServiceTest {
+    @Mock
+    private CardLedgerEntryRepository cardLedgerEntryRepository;
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private CardLedgerService cardLedgerService;
+
+    private Card sourceCard;
+    private Card destCard;
+    private SoftAssertions softly;
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        sourceCard = new Card();
+        sourceCard.setId(1L);
+        sourceCard.setBalance(80000L);
+
+        destCard = new Card();
+        destCard.setId(2L);
+        destCard.setBalance(70000L);
+
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.unbindResourceIfPossible(cardLedgerService);
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void recordTransferBufferedUntilCommit() {
+        cardLedgerService.recordTransfer(sourceCard, destCard, 20000L);
+        cardLedgerService.recordTransfer(destCard, sourceCard, 5000L);
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(Collection.class), anyInt(), any());
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        softly.assertThat(synchronizations).hasSize(1);
+        synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<CardLedgerEntry>> entries = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), entries.capture(), anyInt(),
+            any(ParameterizedPreparedStatementSetter.class));
+        softly.assertThat(entries.getValue())
+            .extracting(CardLedgerEntry::getEntryType)
+            .containsExactly(LedgerEntryType.DEBIT, LedgerEntryType.CREDIT, LedgerEntryType.DEBIT, LedgerEntryType.CREDIT);
+        softly.assertThat(entries.getValue())
+            .extracting(CardLedgerEntry::getAmount)
+            .containsExactly(-20000L, 20000L, -5000L, 5000L);
+        softly.assertAll();
+    }
+
+    @Test
+    void transferEntriesShareTransferId() {
+        List<CardLedgerEntry> entries = cardLedgerService.transferEntries(sourceCard, destCard, 10000L, 70000L, 80000L);
+
+        softly.assertThat(entries).hasSize(2);
+        softly.assertThat(entries.get(0).getTransferId()).isEqualTo(entries.get(1).getTransferId());
+        softly.assertThat(entries.get(0).getCounterpartyCardId()).isEqualTo(2L);
+        softly.assertThat(entries.get(1).getCounterpartyCardId()).isEqualTo(1L);
+        softly.assertThat(entries.get(0).getAmount() + entries.get(1).getAmount()).isZero();
+        softly.assertAll();
+    }
+
+    @Test
+    void getCardLedgerForeignCardException() {
+        when(cardRepository.existsByIdAndUserId(5L, 1L)).thenReturn(false);
+
+        softly.assertThatThrownBy(() ->
+                cardLedgerService.getCardLedger(5L, 1L, LocalDateTime.now(), Pageable.unpaged()))
+            .isInstanceOf(CardNotFoundException.class);
+        verify(cardLedgerEntryRepository, never()).findByCardIdAsOf(any(), any(), any());
+        softly.assertAll();
+    }
+}
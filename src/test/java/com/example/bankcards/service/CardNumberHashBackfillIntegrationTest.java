@@ -0,0 +1,146 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.util.CardNumberHasher;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Заполнение card_number_hash и card_last4 у карт, сохранённых через JPA: номер должен расшифровываться
+ * тем же ключом, которым его шифрует @ColumnTransformer сущности Card.
+ */
+@SpringBootTest(properties = {
+    "app.bcrypt-cost=10",
+    "app.rate-limit.enabled=false"
+})
+class CardNumberHashBackfillIntegrationTest {
+    private static final EmbeddedPostgres POSTGRES = startPostgres();
+
+    @Autowired
+    private CardNumberHashBackfillService cardNumberHashBackfillService;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CardNumberHasher cardNumberHasher;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private SoftAssertions softly;
+
+    private static EmbeddedPostgres startPostgres() {
+        try {
+            EmbeddedPostgres postgres = EmbeddedPostgres.start();
+            try (Connection connection = postgres.getPostgresDatabase().getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("CREATE EXTENSION IF NOT EXISTS pgcrypto");
+            }
+            return postgres;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> POSTGRES.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        POSTGRES.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        jdbcTemplate.update("DELETE FROM card_ledger_entries");
+        jdbcTemplate.update("DELETE FROM cards");
+        jdbcTemplate.update("DELETE FROM users");
+    }
+
+    @Test
+    void backfillDecryptsCardsSavedThroughJpa() {
+        Card card = cardRepository.save(legacyCard("4000000000000002"));
+
+        long filled = cardNumberHashBackfillService.backfill();
+
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+            "SELECT card_number, card_number_hash, card_last4 FROM cards WHERE id = ?", card.getId());
+        softly.assertThat(filled).isEqualTo(1);
+        softly.assertThat(row.get("card_number")).asString().doesNotContain("4000000000000002");
+        softly.assertThat(row.get("card_number_hash")).isEqualTo(cardNumberHasher.hash("4000000000000002"));
+        softly.assertThat(row.get("card_last4")).isEqualTo("0002");
+        softly.assertThat(cardRepository.findById(card.getId()))
+            .hasValueSatisfying(saved -> softly.assertThat(saved.getCardNumber()).isEqualTo("4000000000000002"));
+        softly.assertAll();
+    }
+
+    // Повторяющийся номер (уникальность по шифртексту не срабатывала) и испорченный шифртекст не прерывают
+    // заполнение: остальные карты той же порции заполняются
+    @Test
+    void backfillSkipsDuplicateAndUndecryptableCards() {
+        Card first = cardRepository.save(legacyCard("4000000000000002"));
+        Card duplicate = cardRepository.save(legacyCard("4000000000000002"));
+        Card corrupt = cardRepository.save(legacyCard("4000000000000010"));
+        Card other = cardRepository.save(legacyCard("4000000000000028"));
+        jdbcTemplate.update("UPDATE cards SET card_number = 'corrupt' WHERE id = ?", corrupt.getId());
+
+        long filled = cardNumberHashBackfillService.backfill();
+
+        softly.assertThat(filled).isEqualTo(2);
+        softly.assertThat(hashOf(first)).isEqualTo(cardNumberHasher.hash("4000000000000002"));
+        softly.assertThat(hashOf(other)).isEqualTo(cardNumberHasher.hash("4000000000000028"));
+        softly.assertThat(hashOf(duplicate)).isNull();
+        softly.assertThat(hashOf(corrupt)).isNull();
+        softly.assertAll();
+    }
+
+    private String hashOf(Card card) {
+        return jdbcTemplate.queryForObject("SELECT card_number_hash FROM cards WHERE id = ?", String.class, card.getId());
+    }
+
+    // Карта, созданная до появления card_number_hash и card_last4
+    private Card legacyCard(String cardNumber) {
+        User user = userRepository.findByUsername("backfill_owner").orElseGet(() -> {
+            jdbcTemplate.update("INSERT INTO users (username, password, role) VALUES ('backfill_owner', 'x', 'ROLE_USER')");
+            return userRepository.findByUsername("backfill_owner").orElseThrow();
+        });
+        Card card = new Card();
+        card.setCardNumber(cardNumber);
+        card.setHolderName("IVAN IVANOV");
+        card.setExpiryDate(LocalDate.now().plusYears(3));
+        card.setStatus(CardStatus.ACTIVE);
+        card.setBalance(10000L);
+        card.setUser(user);
+        return card;
+    }
+}
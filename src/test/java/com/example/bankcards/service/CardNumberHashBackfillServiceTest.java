@@ -0,0 +1,159 @@
+package com.example.bankcards.service;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CardNumberHashBackfillServiceTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private CardNumberHashBackfillService cardNumberHashBackfillService;
+
+    private SoftAssertions softly;
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        ReflectionTestUtils.setField(cardNumberHashBackfillService, "hmacSecret", "hmac");
+        ReflectionTestUtils.setField(cardNumberHashBackfillService, "chunkSize", 2);
+        ReflectionTestUtils.setField(cardNumberHashBackfillService, "retryMilliseconds", 0L);
+        ReflectionTestUtils.setField(cardNumberHashBackfillService, "maxPasses", 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cardNumberHashBackfillService.shutdown();
+    }
+
+    // Событие готовности только ставит заполнение в отдельный поток: запуск не ждёт долгих проходов
+    @Test
+    @SuppressWarnings("unchecked")
+    void startBackfillRunsOnDedicatedThreadWithoutBlockingCaller() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> backfillThread = new CompletableFuture<>();
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq("hmac"), any(), any(), eq(2)))
+            .thenAnswer(invocation -> {
+                backfillThread.complete(Thread.currentThread().getName());
+                release.await();
+                return List.of();
+            });
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any())).thenReturn(0L);
+
+        cardNumberHashBackfillService.startBackfill();
+
+        softly.assertThat(backfillThread.get(5, TimeUnit.SECONDS)).isEqualTo("card-number-hash-backfill");
+        release.countDown();
+        verify(jdbcTemplate, timeout(5000)).queryForObject(anyString(), eq(Long.class), any());
+        softly.assertAll();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void backfillWalksChunksById() {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq("hmac"), any(), any(), eq(2)))
+            .thenReturn(List.of(4L, 9L), List.of(12L), List.of());
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any())).thenReturn(0L);
+
+        long filled = cardNumberHashBackfillService.backfill();
+
+        softly.assertThat(filled).isEqualTo(3);
+        verify(jdbcTemplate).query(anyString(), any(RowMapper.class), eq("hmac"), eq(9L), any(), eq(2));
+        verify(jdbcTemplate).query(anyString(), any(RowMapper.class), eq("hmac"), eq(12L), any(), eq(2));
+        softly.assertAll();
+    }
+
+    // Строка 7 была заблокирована во время первого прохода: второй проход начинается с начала и заполняет её
+    @Test
+    @SuppressWarnings("unchecked")
+    void backfillRepeatsPassesUntilNoRowsRemain() {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq("hmac"), any(), any(), eq(2)))
+            .thenReturn(List.of(4L, 9L), List.of(), List.of(7L), List.of());
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any())).thenReturn(1L, 0L);
+
+        long filled = cardNumberHashBackfillService.backfill();
+
+        softly.assertThat(filled).isEqualTo(3);
+        verify(jdbcTemplate, times(2)).query(anyString(), any(RowMapper.class), eq("hmac"), eq(0L), any(), eq(2));
+        softly.assertAll();
+    }
+
+    // Строку держит чужая блокировка: после max-passes проходов запуск продолжается без неё
+    @Test
+    @SuppressWarnings("unchecked")
+    void backfillGivesUpAfterMaxPasses() {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq("hmac"), any(), any(), eq(2)))
+            .thenReturn(List.of());
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any())).thenReturn(1L);
+
+        long filled = cardNumberHashBackfillService.backfill();
+
+        softly.assertThat(filled).isZero();
+        verify(jdbcTemplate, times(3)).query(anyString(), any(RowMapper.class), eq("hmac"), eq(0L), any(), eq(2));
+        softly.assertAll();
+    }
+
+    // Порция с повторяющимся номером падает целиком: строки заполняются по одной, повтор пропускается
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedChunkIsFilledRowByRowSkippingDuplicates() {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq("hmac"), any(), any(), eq(2)))
+            .thenThrow(new DuplicateKeyException("uk_cards_card_number_hash"))
+            .thenReturn(List.of());
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), eq(0L), any(), eq(2)))
+            .thenReturn(List.of(3L, 5L));
+        when(jdbcTemplate.update(anyString(), eq("hmac"), eq(3L))).thenReturn(1);
+        when(jdbcTemplate.update(anyString(), eq("hmac"), eq(5L)))
+            .thenThrow(new DuplicateKeyException("uk_cards_card_number_hash"));
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), eq(5L), eq("hmac"))).thenReturn(List.of(3L));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any())).thenReturn(0L);
+
+        long filled = cardNumberHashBackfillService.backfill();
+
+        softly.assertThat(filled).isEqualTo(1);
+        verify(jdbcTemplate).query(anyString(), any(RowMapper.class), eq("hmac"), eq(5L),
+            argThat(skipped -> List.of((Object[]) skipped).equals(List.of(5L))), eq(2));
+        softly.assertAll();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void undecryptableRowIsSkipped() {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq("hmac"), any(), any(), eq(2)))
+            .thenThrow(new DataIntegrityViolationException("Wrong key or corrupt data"))
+            .thenReturn(List.of());
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), eq(0L), any(), eq(2))).thenReturn(List.of(8L));
+        when(jdbcTemplate.update(anyString(), eq("hmac"), eq(8L)))
+            .thenThrow(new DataIntegrityViolationException("Wrong key or corrupt data"));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any())).thenReturn(0L);
+
+        long filled = cardNumberHashBackfillService.backfill();
+
+        softly.assertThat(filled).isZero();
+        softly.assertAll();
+    }
+}
@@ -1,35 +1,65 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.card.CardCursor;
+import com.example.bankcards.dto.card.CardFilterDto;
 import com.example.bankcards.dto.card.CardRequestDto;
 import com.example.bankcards.dto.card.CardResponseDto;
+import com.example.bankcards.dto.card.CardSeekPageDto;
+import com.example.bankcards.dto.card.CardSortKey;
+import com.example.bankcards.dto.card.CardSummaryDto;
+import com.example.bankcards.dto.card.CardVersionDto;
+import com.example.bankcards.dto.card.ETaggedDto;
+import com.example.bankcards.dto.card.UserCardsVersionDto;
+import com.example.bankcards.dto.transfer.BatchTransferMode;
+import com.example.bankcards.dto.transfer.BatchTransferRequestDto;
+import com.example.bankcards.dto.transfer.BatchTransferResponseDto;
 import com.example.bankcards.dto.transfer.TransferRequestDto;
+import com.example.bankcards.dto.transfer.TransferResultDto;
+import com.example.bankcards.dto.transfer.TransferResultStatus;
 import com.example.bankcards.dto.user.UserRequestDto;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.CardExpiryMode;
 import com.example.bankcards.entity.enums.CardStatus;
 import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.CardNumberExistsException;
 import com.example.bankcards.exception.InsufficientFundsException;
 import com.example.bankcards.exception.InvalidCardOperationException;
+import com.example.bankcards.exception.ValidationException;
 import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.CardNumberHasher;
 import com.example.bankcards.util.CardUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.assertj.core.api.SoftAssertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -45,17 +75,42 @@ class CardServiceTest {
     @Mock
     private CardUtils cardUtils;
 
+    @Mock
+    private CardNumberHasher cardNumberHasher;
+
+    @Mock
+    private CardExpirationService cardExpirationService;
+
+    @Mock
+    private CardLedgerService cardLedgerService;
+
+    @Mock
+    private CardBalanceShardService cardBalanceShardService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private CardCacheService cardCacheService = new CardCacheService(mock(CacheInvalidationBus.class),
+        new SimpleMeterRegistry(), 100, 32, 60);
+
     @InjectMocks
     private CardService cardService;
 
     private User user;
     private Card card;
+    private CardSummaryDto cardSummary;
     private CardRequestDto cardRequestDto;
     private SoftAssertions softly;
 
     @BeforeEach
     void setUp() {
         softly = new SoftAssertions();
+        ReflectionTestUtils.setField(cardService, "transferBatchMaxSize", 1000);
+        ReflectionTestUtils.setField(cardService, "transferBatchDefaultMode", BatchTransferMode.ATOMIC);
+        ReflectionTestUtils.setField(cardService, "hotCardMaxShards", 64);
+        ReflectionTestUtils.setField(cardService, "cardExpiryMode", CardExpiryMode.EAGER);
+        ReflectionTestUtils.setField(cardService, "seekMaxSize", 100);
         user = new User();
         user.setId(1L);
         user.setUsername("testuser");
@@ -66,14 +121,19 @@ class CardServiceTest {
         card.setHolderName("Test User");
         card.setExpiryDate(LocalDate.now().plusYears(1));
         card.setStatus(CardStatus.ACTIVE);
-        card.setBalance(1000.0);
+        card.setBalance(100000L);
         card.setUser(user);
 
+        cardSummary = new CardSummaryDto(1L, "3456", "Test User", LocalDate.now().plusYears(1),
+            CardStatus.ACTIVE, 100000L, 0);
+        lenient().when(cardRepository.findCardsVersionByUserId(1L)).thenReturn(new UserCardsVersionDto(1, 7));
+        lenient().when(cardRepository.findVersionByIdAndUserId(1L, 1L)).thenReturn(Optional.of(new CardVersionDto(7, 0)));
+
         cardRequestDto = new CardRequestDto();
         cardRequestDto.setCardNumber("1234567890123456");
         cardRequestDto.setHolderName("Test User");
         cardRequestDto.setExpiryDate(LocalDate.now().plusYears(1));
-        cardRequestDto.setBalance(1000.0);
+        cardRequestDto.setBalance(100000L);
 
         UserRequestDto userRequestDto = new UserRequestDto();
         userRequestDto.setUsername("testuser");
@@ -83,24 +143,22 @@ class CardServiceTest {
 
     @Test
     void getUserCardsPageOfCards() {
-        when(userService.getUserByUsername(anyString())).thenReturn(user);
-        when(cardRepository.findByUser(any(User.class), any(Pageable.class)))
-            .thenReturn(new PageImpl<>(Collections.singletonList(card)));
+        when(cardRepository.findSummariesByUserId(eq(1L), any(Pageable.class)))
+            .thenReturn(new PageImpl<>(Collections.singletonList(cardSummary)));
 
-        Page<CardResponseDto> result = cardService.getUserCards(Pageable.unpaged(), "testuser");
+        Page<CardResponseDto> result = cardService.getUserCards(Pageable.unpaged(), 1L);
 
         softly.assertThat(result.getTotalElements()).isEqualTo(1);
-        verify(cardRepository).findByUser(user, Pageable.unpaged());
+        verify(cardRepository).findSummariesByUserId(1L, Pageable.unpaged());
         softly.assertAll();
     }
 
     @Test
     void getCardById() {
-        when(userService.getUserByUsername(anyString())).thenReturn(user);
-        when(cardRepository.findByIdAndUser(anyLong(), any(User.class))).thenReturn(Optional.of(card));
-        when(cardUtils.maskCardNumber(anyString())).thenReturn("**** **** **** 3456");
+        when(cardRepository.findSummaryByIdAndUserId(anyLong(), eq(1L))).thenReturn(Optional.of(cardSummary));
+        when(cardUtils.maskLastFour("3456")).thenReturn("**** **** **** 3456");
 
-        CardResponseDto result = cardService.getCardById(1L, "testuser");
+        CardResponseDto result = cardService.getCardById(1L, 1L);
 
         softly.assertThat(result).isNotNull();
         softly.assertThat(result.getId()).isEqualTo(1L);
@@ -108,51 +166,185 @@ class CardServiceTest {
         softly.assertAll();
     }
 
+    @Test
+    void getCardByIdServedFromCacheUntilCardChanges() {
+        when(cardRepository.findSummaryByIdAndUserId(1L, 1L)).thenReturn(Optional.of(cardSummary));
+        when(cardRepository.findByIdAndUserId(1L, 1L)).thenReturn(Optional.of(card));
+        when(cardRepository.save(card)).thenReturn(card);
+
+        cardService.getCardById(1L, 1L);
+        cardService.getCardById(1L, 1L);
+        cardService.updateCardStatus(1L, CardStatus.BLOCKED, 1L);
+        cardService.getCardById(1L, 1L);
+
+        verify(cardRepository, times(2)).findSummaryByIdAndUserId(1L, 1L);
+        verify(cardCacheService).evictAfterCommit(1L);
+    }
+
+    @Test
+    void cardCacheEvictionIsDeferredUntilCommit() {
+        when(cardRepository.findSummariesByUserId(1L)).thenReturn(List.of(cardSummary));
+        cardService.getAllUserCards(1L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cardCacheService.evictAfterCommit(1L);
+            cardService.getAllUserCards(1L);
+            verify(cardRepository, times(1)).findSummariesByUserId(1L);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(sync -> sync.afterCommit());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        cardService.getAllUserCards(1L);
+
+        verify(cardRepository, times(2)).findSummariesByUserId(1L);
+    }
+
+    @Test
+    void cardETagFollowsRowVersionAndPendingShardCredits() {
+        long today = LocalDate.now().toEpochDay();
+        when(cardRepository.findSummaryByIdAndUserId(1L, 1L)).thenReturn(Optional.of(cardSummary));
+        when(cardRepository.findVersionByIdAndUserId(2L, 1L)).thenReturn(Optional.of(new CardVersionDto(9, 1500)));
+
+        ETaggedDto<CardResponseDto> response = cardService.getCardWithETag(1L, 1L);
+
+        softly.assertThat(response.etag()).isEqualTo("c1-7-0-" + today);
+        softly.assertThat(response.body().getId()).isEqualTo(1L);
+        softly.assertThat(cardService.getCardETag(1L, 1L)).contains(response.etag());
+        softly.assertThat(cardService.getCardETag(2L, 1L)).contains("c2-9-1500-" + today);
+        softly.assertThat(cardService.getUserCardsETag(1L)).isEqualTo("u1-1-7-" + today);
+        softly.assertAll();
+    }
+
+    // Сумма подбалансов горячей карты приходит в проекции, отдельных запросов по строкам списка нет
+    @Test
+    void cardListAddsPendingShardBalanceFromProjection() {
+        CardSummaryDto hotSummary = new CardSummaryDto(2L, "7890", "Test User", LocalDate.now().plusYears(2),
+            CardStatus.ACTIVE, 5000L, 2500L);
+        when(cardRepository.findSummariesByUserId(1L)).thenReturn(List.of(cardSummary, hotSummary));
+
+        List<CardResponseDto> result = cardService.getAllUserCards(1L);
+
+        softly.assertThat(result).extracting(CardResponseDto::getBalance).containsExactly(100000L, 7500L);
+        verify(cardBalanceShardService, never()).pendingBalance(anyLong());
+        softly.assertAll();
+    }
+
+    @Test
+    void cachedCardListKeepsETagOfItsSnapshot() {
+        when(cardRepository.findSummariesByUserId(1L)).thenReturn(List.of(cardSummary));
+
+        ETaggedDto<List<CardResponseDto>> first = cardService.getAllUserCardsWithETag(1L);
+        when(cardRepository.findCardsVersionByUserId(1L)).thenReturn(new UserCardsVersionDto(1, 8));
+        ETaggedDto<List<CardResponseDto>> cached = cardService.getAllUserCardsWithETag(1L);
+
+        softly.assertThat(cached.etag()).isEqualTo(first.etag());
+        softly.assertThat(cardService.getUserCardsETag(1L)).isNotEqualTo(first.etag());
+        verify(cardRepository, times(1)).findSummariesByUserId(1L);
+        softly.assertAll();
+    }
+
+    // Свежий ETag уже прочитан для If-None-Match и не совпал с закэшированным (свёртка на другом узле,
+    // смена дня): запись перезагружается, а ответ несёт свежий ETag
+    @Test
+    void cachedCardListIsReloadedWhenCurrentETagDiffers() {
+        when(cardRepository.findSummariesByUserId(1L)).thenReturn(List.of(cardSummary));
+        ETaggedDto<List<CardResponseDto>> first = cardService.getAllUserCardsWithETag(1L);
+        when(cardRepository.findCardsVersionByUserId(1L)).thenReturn(new UserCardsVersionDto(1, 8));
+        String current = cardService.getUserCardsETag(1L);
+
+        ETaggedDto<List<CardResponseDto>> reloaded = cardService.getAllUserCardsWithETag(1L, current);
+        ETaggedDto<List<CardResponseDto>> cached = cardService.getAllUserCardsWithETag(1L, current);
+
+        softly.assertThat(reloaded.etag()).isEqualTo(current).isNotEqualTo(first.etag());
+        softly.assertThat(cached.etag()).isEqualTo(current);
+        verify(cardRepository, times(2)).findSummariesByUserId(1L);
+        softly.assertAll();
+    }
+
     @Test
     void getCardByIdNotFoundException() {
-        when(userService.getUserByUsername(anyString())).thenReturn(user);
-        when(cardRepository.findByIdAndUser(anyLong(), any(User.class))).thenReturn(Optional.empty());
+        when(cardRepository.findSummaryByIdAndUserId(anyLong(), eq(1L))).thenReturn(Optional.empty());
 
-        softly.assertThatThrownBy(() -> cardService.getCardById(1L, "testuser"))
+        softly.assertThatThrownBy(() -> cardService.getCardById(1L, 1L))
             .isInstanceOf(CardNotFoundException.class);
         softly.assertAll();
     }
 
     @Test
     void createCard() {
-        when(userService.getUserByUsername(anyString())).thenReturn(user);
+        when(cardNumberHasher.hash("1234567890123456")).thenReturn("hash-3456");
+        when(cardUtils.lastFour("1234567890123456")).thenReturn("3456");
+        when(userService.getUserReference(1L)).thenReturn(user);
         when(cardRepository.save(any(Card.class))).thenReturn(card);
         when(cardUtils.maskCardNumber(anyString())).thenReturn("**** **** **** 3456");
 
-        CardResponseDto result = cardService.createCard(cardRequestDto, "testuser");
+        CardResponseDto result = cardService.createCard(cardRequestDto, 1L);
 
         softly.assertThat(result).isNotNull();
         softly.assertThat(result.getId()).isEqualTo(1L);
-        verify(cardRepository).save(any(Card.class));
+        verify(cardRepository).save(argThat(saved -> "3456".equals(saved.getCardLast4())));
+        verify(cardLedgerService).recordOpening(card);
+        softly.assertAll();
+    }
+
+    @Test
+    void createCardExceptionCardNumberExists() {
+        when(cardNumberHasher.hash("1234567890123456")).thenReturn("hash-3456");
+        when(cardRepository.existsByCardNumberHash("hash-3456")).thenReturn(true);
+
+        softly.assertThatThrownBy(() -> cardService.createCard(cardRequestDto, 1L))
+            .isInstanceOf(CardNumberExistsException.class);
+        verify(cardRepository, never()).save(any(Card.class));
         softly.assertAll();
     }
 
     @Test
     void updateCardStatus() {
-        when(userService.getUserByUsername(anyString())).thenReturn(user);
-        when(cardRepository.findByIdAndUser(anyLong(), any(User.class)))
+        when(cardRepository.findByIdAndUserId(anyLong(), eq(1L)))
             .thenReturn(Optional.of(card));
         when(cardRepository.save(any(Card.class))).thenReturn(card);
         when(cardUtils.maskCardNumber(anyString())).thenReturn("**** **** **** 3456");
 
-        CardResponseDto result = cardService.updateCardStatus(1L, CardStatus.BLOCKED, "testuser");
+        CardResponseDto result = cardService.updateCardStatus(1L, CardStatus.BLOCKED, 1L);
 
         softly.assertThat(result.getStatus()).isEqualTo(CardStatus.BLOCKED);
         verify(cardRepository).save(card);
         softly.assertAll();
     }
+    @Test
+    void updateAnyCardStatusFindsCardOfAnyUser() {
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
+        when(cardRepository.save(any(Card.class))).thenReturn(card);
+        when(cardUtils.maskCardNumber(anyString())).thenReturn("**** **** **** 3456");
+
+        CardResponseDto result = cardService.updateAnyCardStatus(1L, CardStatus.BLOCKED);
+
+        softly.assertThat(result.getStatus()).isEqualTo(CardStatus.BLOCKED);
+        verify(cardRepository, never()).findByIdAndUserId(anyLong(), anyLong());
+        softly.assertAll();
+    }
+
+    // Без владельца методы пользователя не откатываются к доступу администратора
+    @Test
+    void ownerScopedMethodsRejectMissingUserId() {
+        softly.assertThatThrownBy(() -> cardService.updateCardStatus(1L, CardStatus.BLOCKED, null))
+            .isInstanceOf(IllegalArgumentException.class);
+        softly.assertThatThrownBy(() -> cardService.deleteCard(1L, null))
+            .isInstanceOf(IllegalArgumentException.class);
+        softly.assertThatThrownBy(() -> cardService.getCardById(1L, null))
+            .isInstanceOf(IllegalArgumentException.class);
+        verify(cardRepository, never()).findById(anyLong());
+        softly.assertAll();
+    }
+
     @Test
     void updateCardStatusExpiredException() {
         card.setStatus(CardStatus.EXPIRED);
-        when(userService.getUserByUsername(anyString())).thenReturn(user);
-        when(cardRepository.findByIdAndUser(anyLong(), any(User.class))).thenReturn(Optional.of(card));
+        when(cardRepository.findByIdAndUserId(anyLong(), eq(1L))).thenReturn(Optional.of(card));
 
-        softly.assertThatThrownBy(() -> cardService.updateCardStatus(1L, CardStatus.ACTIVE, "testuser"))
+        softly.assertThatThrownBy(() -> cardService.updateCardStatus(1L, CardStatus.ACTIVE, 1L))
             .isInstanceOf(InvalidCardOperationException.class);
         softly.assertAll();
     }
@@ -161,32 +353,115 @@ class CardServiceTest {
     void transferBetweenCardsFunds() {
         Card sourceCard = new Card();
         sourceCard.setId(1L);
-        sourceCard.setBalance(1000.0);
+        sourceCard.setBalance(100000L);
         sourceCard.setStatus(CardStatus.ACTIVE);
         sourceCard.setExpiryDate(LocalDate.now().plusYears(1));
         sourceCard.setUser(user);
 
         Card destCard = new Card();
         destCard.setId(2L);
-        destCard.setBalance(500.0);
+        destCard.setBalance(50000L);
         destCard.setStatus(CardStatus.ACTIVE);
         destCard.setExpiryDate(LocalDate.now().plusYears(1));
         destCard.setUser(user);
 
-        when(userService.getUserByUsername(anyString())).thenReturn(user);
-        when(cardRepository.findByIdAndUser(1L, user)).thenReturn(Optional.of(sourceCard));
-        when(cardRepository.findByIdAndUser(2L, user)).thenReturn(Optional.of(destCard));
+        when(cardRepository.findAllByIdInAndUserIdForUpdate(anyCollection(), eq(1L)))
+            .thenReturn(Arrays.asList(sourceCard, destCard));
 
         TransferRequestDto transferRequest = new TransferRequestDto();
         transferRequest.setSourceCardId(1L);
         transferRequest.setDestinationCardId(2L);
-        transferRequest.setAmount(200.0);
+        transferRequest.setAmount(20000L);
 
-        cardService.transferBetweenCards(transferRequest, "testuser");
+        cardService.transferBetweenCards(transferRequest, 1L);
 
-        softly.assertThat(sourceCard.getBalance()).isEqualTo(800.0);
-        softly.assertThat(destCard.getBalance()).isEqualTo(700.0);
+        softly.assertThat(sourceCard.getBalance()).isEqualTo(80000L);
+        softly.assertThat(destCard.getBalance()).isEqualTo(70000L);
         verify(cardRepository, times(2)).save(any(Card.class));
+        verify(cardLedgerService).recordTransfer(sourceCard, destCard, 20000L);
+        softly.assertAll();
+    }
+
+    @Test
+    void transferToHotCardCreditsShardUnderShareLock() {
+        Card sourceCard = activeCard(1L, 100000L);
+        Card destCard = activeCard(2L, 50000L);
+        destCard.setBalanceShards(8);
+
+        when(cardBalanceShardService.isHot(2L)).thenReturn(true);
+        when(cardRepository.findAllByIdInAndUserIdForUpdate(List.of(1L), 1L)).thenReturn(List.of(sourceCard));
+        when(cardBalanceShardService.lockForShardedCredit(2L, 1L)).thenReturn(true);
+        when(cardRepository.findByIdAndUserId(2L, 1L)).thenReturn(Optional.of(destCard));
+
+        cardService.transferBetweenCards(transfer(1L, 2L, 20000L), 1L);
+
+        softly.assertThat(sourceCard.getBalance()).isEqualTo(80000L);
+        softly.assertThat(destCard.getBalance()).isEqualTo(50000L);
+        verify(cardRepository).save(sourceCard);
+        verify(cardRepository, never()).save(destCard);
+        verify(cardBalanceShardService).credit(destCard, 20000L);
+        verify(cardLedgerService).transferEntries(sourceCard, destCard, 20000L, 80000L, null);
+        verify(cardLedgerService, never()).recordTransfer(any(), any(), anyLong());
+        softly.assertAll();
+    }
+
+    @Test
+    void transferToCardWithShardsDisabledSinceRefreshLocksRowForUpdateInstead() {
+        Card sourceCard = activeCard(1L, 100000L);
+        Card destCard = activeCard(2L, 50000L);
+
+        when(cardBalanceShardService.isHot(2L)).thenReturn(true);
+        when(cardRepository.findAllByIdInAndUserIdForUpdate(List.of(1L), 1L)).thenReturn(List.of(sourceCard));
+        when(cardBalanceShardService.lockForShardedCredit(2L, 1L)).thenReturn(false);
+        when(cardRepository.findAllByIdInAndUserIdForUpdate(List.of(2L), 1L)).thenReturn(List.of(destCard));
+
+        cardService.transferBetweenCards(transfer(1L, 2L, 20000L), 1L);
+
+        softly.assertThat(destCard.getBalance()).isEqualTo(70000L);
+        verify(cardRepository, never()).findByIdAndUserId(2L, 1L);
+        verify(cardRepository).save(destCard);
+        verify(cardBalanceShardService, never()).credit(any(), anyLong());
+        verify(cardLedgerService).recordTransfer(sourceCard, destCard, 20000L);
+        softly.assertAll();
+    }
+
+    @Test
+    void transferFromHotCardDrainsShardsWhenMainBalanceIsShort() {
+        Card sourceCard = activeCard(1L, 10000L);
+        sourceCard.setBalanceShards(4);
+        Card destCard = activeCard(2L, 0L);
+
+        when(cardRepository.findAllByIdInAndUserIdForUpdate(anyCollection(), eq(1L)))
+            .thenReturn(Arrays.asList(sourceCard, destCard));
+        when(cardBalanceShardService.drain(sourceCard)).thenReturn(30000L);
+
+        cardService.transferBetweenCards(transfer(1L, 2L, 25000L), 1L);
+
+        softly.assertThat(sourceCard.getBalance()).isEqualTo(15000L);
+        softly.assertThat(destCard.getBalance()).isEqualTo(25000L);
+        verify(cardLedgerService).recordTransfer(sourceCard, destCard, 25000L);
+        softly.assertAll();
+    }
+
+    @Test
+    void updateBalanceShardsDisableFoldsShardsIntoCard() {
+        card.setBalanceShards(8);
+        when(cardRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(card));
+        when(cardBalanceShardService.drain(card)).thenReturn(5000L);
+        when(cardRepository.save(card)).thenReturn(card);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            CardResponseDto result = cardService.updateBalanceShards(1L, 0);
+
+            softly.assertThat(result.getBalance()).isEqualTo(105000L);
+            softly.assertThat(card.getBalanceShards()).isZero();
+            verify(cardBalanceShardService).deleteShardsFrom(1L, 0);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        softly.assertThatThrownBy(() -> cardService.updateBalanceShards(1L, 65))
+            .isInstanceOf(ValidationException.class);
         softly.assertAll();
     }
 
@@ -194,78 +469,298 @@ class CardServiceTest {
     void transferBetweenCardsInsufficientFundsException() {
         Card sourceCard = new Card();
         sourceCard.setId(1L);
-        sourceCard.setBalance(100.0);
+        sourceCard.setBalance(10000L);
         sourceCard.setStatus(CardStatus.ACTIVE);
         sourceCard.setUser(user);
 
         Card destCard = new Card();
         destCard.setId(2L);
-        destCard.setBalance(500.0);
+        destCard.setBalance(50000L);
         destCard.setStatus(CardStatus.ACTIVE);
         destCard.setUser(user);
 
-        when(userService.getUserByUsername(anyString())).thenReturn(user);
-        when(cardRepository.findByIdAndUser(1L, user)).thenReturn(Optional.of(sourceCard));
-        when(cardRepository.findByIdAndUser(2L, user)).thenReturn(Optional.of(destCard));
+        when(cardRepository.findAllByIdInAndUserIdForUpdate(anyCollection(), eq(1L)))
+            .thenReturn(Arrays.asList(sourceCard, destCard));
 
         TransferRequestDto transferRequest = new TransferRequestDto();
         transferRequest.setSourceCardId(1L);
         transferRequest.setDestinationCardId(2L);
-        transferRequest.setAmount(200.0);
+        transferRequest.setAmount(20000L);
 
-        softly.assertThatThrownBy(() -> cardService.transferBetweenCards(transferRequest, "testuser"))
+        softly.assertThatThrownBy(() -> cardService.transferBetweenCards(transferRequest, 1L))
             .isInstanceOf(InsufficientFundsException.class);
         softly.assertAll();
     }
 
+    @Test
+    void transferBetweenCardsDestinationNotFoundException() {
+        when(cardRepository.findAllByIdInAndUserIdForUpdate(anyCollection(), eq(1L)))
+            .thenReturn(Collections.singletonList(card));
+
+        TransferRequestDto transferRequest = new TransferRequestDto();
+        transferRequest.setSourceCardId(1L);
+        transferRequest.setDestinationCardId(2L);
+        transferRequest.setAmount(20000L);
+
+        softly.assertThatThrownBy(() -> cardService.transferBetweenCards(transferRequest, 1L))
+            .isInstanceOf(CardNotFoundException.class);
+        softly.assertAll();
+    }
+
+    @Test
+    void transferBetweenCardsSameCardException() {
+        TransferRequestDto transferRequest = new TransferRequestDto();
+        transferRequest.setSourceCardId(1L);
+        transferRequest.setDestinationCardId(1L);
+        transferRequest.setAmount(20000L);
+
+        softly.assertThatThrownBy(() -> cardService.transferBetweenCards(transferRequest, 1L))
+            .isInstanceOf(InvalidCardOperationException.class);
+        verify(cardRepository, never()).findAllByIdInAndUserIdForUpdate(anyCollection(), anyLong());
+        softly.assertAll();
+    }
+
+    @Test
+    void transferBatchAtomicRolledBackOnFailure() {
+        Card sourceCard = new Card();
+        sourceCard.setId(1L);
+        sourceCard.setBalance(30000L);
+        sourceCard.setStatus(CardStatus.ACTIVE);
+        sourceCard.setExpiryDate(LocalDate.now().plusYears(1));
+        sourceCard.setUser(user);
+
+        Card destCard = new Card();
+        destCard.setId(2L);
+        destCard.setBalance(0L);
+        destCard.setStatus(CardStatus.ACTIVE);
+        destCard.setExpiryDate(LocalDate.now().plusYears(1));
+        destCard.setUser(user);
+
+        when(cardRepository.findAllByIdInAndUserIdForUpdate(anyCollection(), eq(1L)))
+            .thenReturn(Arrays.asList(sourceCard, destCard));
+
+        BatchTransferRequestDto batchRequest = new BatchTransferRequestDto();
+        batchRequest.setTransfers(Arrays.asList(transfer(1L, 2L, 20000L), transfer(1L, 2L, 20000L)));
+
+        BatchTransferResponseDto result = cardService.transferBatch(batchRequest, 1L);
+
+        softly.assertThat(result.isCommitted()).isFalse();
+        softly.assertThat(result.getApplied()).isZero();
+        softly.assertThat(result.getFailed()).isEqualTo(1);
+        softly.assertThat(result.getResults())
+            .extracting(TransferResultDto::getStatus)
+            .containsExactly(TransferResultStatus.ROLLED_BACK, TransferResultStatus.FAILED);
+        verify(cardRepository, never()).addToBalance(anyLong(), anyLong());
+        verify(cardLedgerService, never()).append(any());
+        softly.assertAll();
+    }
+
+    @Test
+    void transferBatchBestEffortAggregatesPerCard() {
+        Card sourceCard = new Card();
+        sourceCard.setId(1L);
+        sourceCard.setBalance(30000L);
+        sourceCard.setStatus(CardStatus.ACTIVE);
+        sourceCard.setExpiryDate(LocalDate.now().plusYears(1));
+        sourceCard.setUser(user);
+
+        Card destCard = new Card();
+        destCard.setId(2L);
+        destCard.setBalance(0L);
+        destCard.setStatus(CardStatus.ACTIVE);
+        destCard.setExpiryDate(LocalDate.now().plusYears(1));
+        destCard.setUser(user);
+
+        when(cardRepository.findAllByIdInAndUserIdForUpdate(anyCollection(), eq(1L)))
+            .thenReturn(Arrays.asList(sourceCard, destCard));
+
+        BatchTransferRequestDto batchRequest = new BatchTransferRequestDto();
+        batchRequest.setMode(BatchTransferMode.BEST_EFFORT);
+        batchRequest.setTransfers(Arrays.asList(
+            transfer(1L, 2L, 10000L),
+            transfer(1L, 2L, 15000L),
+            transfer(1L, 2L, 10000L),
+            transfer(1L, 3L, 1000L)));
+
+        BatchTransferResponseDto result = cardService.transferBatch(batchRequest, 1L);
+
+        softly.assertThat(result.isCommitted()).isTrue();
+        softly.assertThat(result.getApplied()).isEqualTo(2);
+        softly.assertThat(result.getFailed()).isEqualTo(2);
+        softly.assertThat(result.getResults())
+            .extracting(TransferResultDto::getStatus)
+            .containsExactly(
+                TransferResultStatus.APPLIED,
+                TransferResultStatus.APPLIED,
+                TransferResultStatus.FAILED,
+                TransferResultStatus.FAILED);
+        verify(cardRepository).addToBalance(1L, -25000L);
+        verify(cardRepository).addToBalance(2L, 25000L);
+        verify(cardRepository, never()).save(any(Card.class));
+        verify(cardLedgerService).transferEntries(sourceCard, destCard, 10000L, 20000L, 10000L);
+        verify(cardLedgerService).transferEntries(sourceCard, destCard, 15000L, 5000L, 25000L);
+        verify(cardLedgerService).append(any());
+        softly.assertAll();
+    }
+
     @Test
     void getAllCards() {
-        when(cardRepository.findAllOrderedById()).thenReturn(Collections.singletonList(card));
-        when(cardUtils.maskCardNumber(anyString())).thenReturn("**** **** **** 3456");
+        when(cardRepository.findAllSummariesOrderedById()).thenReturn(Collections.singletonList(cardSummary));
+        when(cardUtils.maskLastFour("3456")).thenReturn("**** **** **** 3456");
 
         List<CardResponseDto> result = cardService.getAllCards();
 
         softly.assertThat(result.size()).isEqualTo(1);
-        verify(cardRepository).findAllOrderedById();
+        softly.assertThat(result.get(0).getMaskedCardNumber()).isEqualTo("**** **** **** 3456");
+        verify(cardRepository).findAllSummariesOrderedById();
+        verify(cardUtils, never()).maskCardNumber(anyString());
         softly.assertAll();
     }
 
     @Test
-    void checkAndUpdateExpiredCards() {
-        Card expiredCard = new Card();
-        expiredCard.setId(2L);
-        expiredCard.setExpiryDate(LocalDate.now().minusDays(1));
-        expiredCard.setStatus(CardStatus.ACTIVE);
+    void scheduleCheckAndUpdateExpiredCards() {
+        cardService.scheduleCheckAndUpdateExpiredCards();
 
-        when(cardRepository.findAll()).thenReturn(Arrays.asList(card, expiredCard));
+        verify(cardExpirationService).checkAndUpdateExpiredCards();
+        verify(cardRepository, never()).findAll();
+    }
 
-        cardService.checkAndUpdateExpiredCards();
+    @Test
+    void scheduleCheckAndUpdateExpiredCardsSkippedInLazyMode() {
+        ReflectionTestUtils.setField(cardService, "cardExpiryMode", CardExpiryMode.LAZY);
+
+        cardService.scheduleCheckAndUpdateExpiredCards();
 
-        softly.assertThat(expiredCard.getStatus()).isEqualTo(CardStatus.EXPIRED);
-        verify(cardRepository, times(1)).save(expiredCard);
+        verify(cardExpirationService, never()).checkAndUpdateExpiredCards();
+    }
+
+    @Test
+    void getCardByIdReportsExpiredStatusBeforeReconciliation() {
+        CardSummaryDto expiredSummary = new CardSummaryDto(1L, "3456", "Test User", LocalDate.now().minusDays(1),
+            CardStatus.ACTIVE, 100000L, 0);
+        when(cardRepository.findSummaryByIdAndUserId(anyLong(), eq(1L))).thenReturn(Optional.of(expiredSummary));
+
+        CardResponseDto result = cardService.getCardById(1L, 1L);
+
+        softly.assertThat(result.getStatus()).isEqualTo(CardStatus.EXPIRED);
         softly.assertAll();
     }
 
     @Test
-    void filterUserCards() {
-        User user = new User();
-        user.setId(1L);
+    void transferFromCardPastExpiryDoesNotSaveStatus() {
+        Card sourceCard = activeCard(1L, 100000L);
+        sourceCard.setExpiryDate(LocalDate.now().minusDays(1));
+        Card destCard = activeCard(2L, 0L);
+
+        when(cardRepository.findAllByIdInAndUserIdForUpdate(anyCollection(), eq(1L)))
+            .thenReturn(Arrays.asList(sourceCard, destCard));
+
+        softly.assertThatThrownBy(() -> cardService.transferBetweenCards(transfer(1L, 2L, 100L), 1L))
+            .isInstanceOf(InvalidCardOperationException.class)
+            .hasMessage("Карта просрочена");
+        softly.assertThat(sourceCard.getStatus()).isEqualTo(CardStatus.ACTIVE);
+        verify(cardRepository, never()).save(any(Card.class));
+        softly.assertAll();
+    }
 
-        when(userService.getUserByUsername(anyString())).thenReturn(user);
-        when(cardRepository.findWithFilters(
-            any(), any(), any(), any(), any(), any(), any()))
-            .thenReturn(new PageImpl<>(Collections.singletonList(card)));
+    @Test
+    void filterUserCards() {
+        CardFilterDto filter = new CardFilterDto(CardStatus.ACTIVE, LocalDate.now(), LocalDate.now().plusYears(1),
+            0L, 100000L, 1L);
+        when(cardRepository.findSummaries(eq(filter), eq(LocalDate.now()), any()))
+            .thenReturn(new PageImpl<>(Collections.singletonList(cardSummary)));
 
         Page<CardResponseDto> result = cardService.filterUserCards(
             CardStatus.ACTIVE,
             LocalDate.now(),
             LocalDate.now().plusYears(1),
-            0.0,
-            1000.0,
-            "testuser",
+            0L,
+            100000L,
+            1L,
             Pageable.unpaged());
 
         softly.assertThat(result.getTotalElements()).isEqualTo(1);
         softly.assertAll();
     }
+
+    @Test
+    void seekCardsReturnsCursorOfLastRowWithoutCount() {
+        CardFilterDto filter = CardFilterDto.ofUser(1L);
+        CardSummaryDto nextSummary = new CardSummaryDto(2L, "7890", "Test User", LocalDate.now().plusYears(2),
+            CardStatus.ACTIVE, 5000L, 0);
+        CardSummaryDto extraSummary = new CardSummaryDto(3L, "1111", "Test User", LocalDate.now().plusYears(3),
+            CardStatus.ACTIVE, 100L, 0);
+        when(cardRepository.seekSummaries(eq(filter), eq(LocalDate.now()), eq(CardSortKey.BALANCE),
+            eq(Sort.Direction.DESC), any(), eq(3)))
+            .thenReturn(List.of(cardSummary, nextSummary, extraSummary));
+
+        CardSeekPageDto page = cardService.seekCards(filter, CardSortKey.BALANCE, Sort.Direction.DESC, null, 2, false);
+
+        softly.assertThat(page.getItems()).extracting(CardResponseDto::getId).containsExactly(1L, 2L);
+        softly.assertThat(CardCursor.decode(page.getNextCursor(), CardSortKey.BALANCE, Sort.Direction.DESC))
+            .isEqualTo(new CardCursor(CardSortKey.BALANCE, Sort.Direction.DESC, 5000L, 2L));
+        softly.assertThat(page.getTotalElements()).isNull();
+        verify(cardRepository, never()).countSummaries(any(), any());
+        softly.assertAll();
+    }
+
+    @Test
+    void seekCardsLastPageHasNoCursorAndCountsOnRequest() {
+        CardFilterDto filter = CardFilterDto.ofUser(1L);
+        String cursor = new CardCursor(CardSortKey.ID, Sort.Direction.ASC, 0L, 0L).encode();
+        when(cardRepository.seekSummaries(eq(filter), eq(LocalDate.now()), eq(CardSortKey.ID),
+            eq(Sort.Direction.ASC), eq(new CardCursor(CardSortKey.ID, Sort.Direction.ASC, 0L, 0L)), eq(21)))
+            .thenReturn(List.of(cardSummary));
+        when(cardRepository.countSummaries(filter, LocalDate.now())).thenReturn(1L);
+
+        CardSeekPageDto page = cardService.seekCards(filter, CardSortKey.ID, Sort.Direction.ASC, cursor, 20, true);
+
+        softly.assertThat(page.getItems()).hasSize(1);
+        softly.assertThat(page.getNextCursor()).isNull();
+        softly.assertThat(page.getTotalElements()).isEqualTo(1L);
+        softly.assertAll();
+    }
+
+    @Test
+    void seekCardsRejectsCursorIssuedForAnotherSort() {
+        String cursor = new CardCursor(CardSortKey.BALANCE, Sort.Direction.DESC, 5000L, 2L).encode();
+
+        softly.assertThatThrownBy(() -> cardService.seekCards(CardFilterDto.ofUser(1L), CardSortKey.EXPIRY_DATE,
+                Sort.Direction.DESC, cursor, 20, false))
+            .isInstanceOf(ValidationException.class);
+        softly.assertThatThrownBy(() -> cardService.seekCards(CardFilterDto.ofUser(1L), CardSortKey.ID,
+                Sort.Direction.ASC, "not-a-cursor", 20, false))
+            .isInstanceOf(ValidationException.class);
+        verify(cardRepository, never()).seekSummaries(any(), any(), any(), any(), any(), anyInt());
+        softly.assertAll();
+    }
+
+    @Test
+    void seekCardsRejectsBalanceSortAcrossAllOwners() {
+        CardFilterDto filter = new CardFilterDto(null, null, null, null, null, null);
+
+        softly.assertThatThrownBy(() -> cardService.seekCards(filter, CardSortKey.BALANCE,
+                Sort.Direction.DESC, null, 20, false))
+            .isInstanceOf(ValidationException.class);
+        verify(cardRepository, never()).seekSummaries(any(), any(), any(), any(), any(), anyInt());
+        softly.assertAll();
+    }
+
+    private Card activeCard(Long id, long balance) {
+        Card activeCard = new Card();
+        activeCard.setId(id);
+        activeCard.setBalance(balance);
+        activeCard.setStatus(CardStatus.ACTIVE);
+        activeCard.setExpiryDate(LocalDate.now().plusYears(1));
+        activeCard.setUser(user);
+        return activeCard;
+    }
+
+    private TransferRequestDto transfer(Long sourceCardId, Long destinationCardId, long amount) {
+        TransferRequestDto transferRequest = new TransferRequestDto();
+        transferRequest.setSourceCardId(sourceCardId);
+        transferRequest.setDestinationCardId(destinationCardId);
+        transferRequest.setAmount(amount);
+        return transferRequest;
+    }
 }
\ No newline at end of file
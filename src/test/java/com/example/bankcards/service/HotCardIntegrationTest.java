@@ -0,0 +1,214 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.card.CardFilterDto;
+import com.example.bankcards.dto.card.CardSortKey;
+import com.example.bankcards.dto.card.CardSummaryDto;
+import com.example.bankcards.dto.transfer.TransferRequestDto;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.CardStatus;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Горячие карты на встроенной PostgreSQL: блокировки зачислений и чтение несвёрнутых подбалансов в проекциях.
+ */
+@SpringBootTest(properties = {
+    "app.bcrypt-cost=10",
+    "app.rate-limit.enabled=false",
+    "app.transfer-lock-timeout-milliseconds=10000",
+    "app.hot-card-fold-interval-milliseconds=3600000"
+})
+class HotCardIntegrationTest {
+    private static final EmbeddedPostgres POSTGRES = startPostgres();
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private CardBalanceShardService cardBalanceShardService;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private SoftAssertions softly;
+
+    private static EmbeddedPostgres startPostgres() {
+        try {
+            EmbeddedPostgres postgres = EmbeddedPostgres.start();
+            try (Connection connection = postgres.getPostgresDatabase().getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("CREATE EXTENSION IF NOT EXISTS pgcrypto");
+            }
+            return postgres;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> POSTGRES.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        POSTGRES.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        jdbcTemplate.update("DELETE FROM card_ledger_entries");
+        jdbcTemplate.update("DELETE FROM cards");
+        jdbcTemplate.update("DELETE FROM users");
+    }
+
+    // Оба перевода сначала берут FOR SHARE и, увидев balance_shards = 0, должны перейти на FOR UPDATE
+    // без взаимоблокировки
+    @Test
+    void concurrentCreditsToCardWithShardsDisabledSinceRefreshDoNotDeadlock() throws Exception {
+        User user = owner();
+        Card firstSource = cardRepository.save(activeCard(user, "4000000000000002", 0));
+        Card secondSource = cardRepository.save(activeCard(user, "4000000000000010", 0));
+        Card destination = cardRepository.save(activeCard(user, "4000000000000028", 4));
+        cardBalanceShardService.refreshHotCards();
+        jdbcTemplate.update("UPDATE cards SET balance_shards = 0 WHERE id = ?", destination.getId());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (Connection blocker = POSTGRES.getPostgresDatabase().getConnection()) {
+            // Строка карты зачисления держится FOR UPDATE, пока оба перевода не встанут в очередь за FOR SHARE:
+            // после её освобождения они получают FOR SHARE одновременно
+            blocker.setAutoCommit(false);
+            try (PreparedStatement statement = blocker.prepareStatement("SELECT 1 FROM cards WHERE id = ? FOR UPDATE")) {
+                statement.setLong(1, destination.getId());
+                statement.executeQuery().close();
+            }
+            List<Future<?>> transfers = List.of(
+                executor.submit(() -> cardService.transferBetweenCards(
+                    transfer(firstSource.getId(), destination.getId()), user.getId())),
+                executor.submit(() -> cardService.transferBetweenCards(
+                    transfer(secondSource.getId(), destination.getId()), user.getId())));
+            awaitLockWaiters(2);
+            blocker.commit();
+
+            for (Future<?> future : transfers) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        softly.assertThat(balanceOf(destination)).isEqualByComparingTo("200.00");
+        softly.assertThat(balanceOf(firstSource)).isEqualByComparingTo("0.00");
+        softly.assertThat(balanceOf(secondSource)).isEqualByComparingTo("0.00");
+        softly.assertThat(jdbcTemplate.queryForObject(
+            "SELECT count(*) FROM card_balance_shards WHERE card_id = ?", Long.class, destination.getId())).isZero();
+        softly.assertThat(cardBalanceShardService.isHot(destination.getId())).isFalse();
+        softly.assertAll();
+    }
+
+    // Подбалансы в копейках не теряются: сумма numeric переводится в минорные единицы, а не усекается до рублей
+    @Test
+    void summaryProjectionsIncludePendingShardBalance() {
+        User user = owner();
+        Card plain = cardRepository.save(activeCard(user, "4000000000000002", 0));
+        Card hot = cardRepository.save(activeCard(user, "4000000000000010", 4));
+        jdbcTemplate.update("INSERT INTO card_balance_shards (card_id, shard, balance) VALUES (?, 0, 10.25), (?, 3, 0.50)",
+            hot.getId(), hot.getId());
+        CardFilterDto filter = CardFilterDto.ofUser(user.getId());
+
+        softly.assertThat(cardRepository.findSummariesByUserId(user.getId()))
+            .extracting(CardSummaryDto::id, CardSummaryDto::pendingBalance)
+            .containsExactly(tuple(plain.getId(), 0L), tuple(hot.getId(), 1075L));
+        softly.assertThat(cardRepository.seekSummaries(filter, LocalDate.now(), CardSortKey.ID, Sort.Direction.ASC,
+                null, 10))
+            .extracting(CardSummaryDto::pendingBalance)
+            .containsExactly(0L, 1075L);
+        softly.assertThat(cardRepository.findSummaries(filter, LocalDate.now(), Pageable.unpaged()).getContent())
+            .extracting(CardSummaryDto::pendingBalance)
+            .containsExactly(0L, 1075L);
+        softly.assertThat(cardRepository.findVersionByIdAndUserId(hot.getId(), user.getId()))
+            .hasValueSatisfying(version -> softly.assertThat(version.pendingBalance()).isEqualTo(1075L));
+        softly.assertAll();
+    }
+
+    private void awaitLockWaiters(int waiters) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            Long waiting = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_stat_activity WHERE wait_event_type = 'Lock'", Long.class);
+            if (waiting != null && waiting >= waiters) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        throw new IllegalStateException("Переводы не встали в очередь за блокировкой карты");
+    }
+
+    private BigDecimal balanceOf(Card card) {
+        return jdbcTemplate.queryForObject("SELECT balance FROM cards WHERE id = ?", BigDecimal.class, card.getId());
+    }
+
+    private static TransferRequestDto transfer(Long sourceCardId, Long destinationCardId) {
+        TransferRequestDto transfer = new TransferRequestDto();
+        transfer.setSourceCardId(sourceCardId);
+        transfer.setDestinationCardId(destinationCardId);
+        transfer.setAmount(10000L);
+        return transfer;
+    }
+
+    private User owner() {
+        jdbcTemplate.update("INSERT INTO users (username, password, role) VALUES ('hot_card_owner', 'x', 'ROLE_USER')");
+        return userRepository.findByUsername("hot_card_owner").orElseThrow();
+    }
+
+    private static Card activeCard(User user, String cardNumber, int balanceShards) {
+        Card card = new Card();
+        card.setCardNumber(cardNumber);
+        card.setCardLast4(cardNumber.substring(cardNumber.length() - 4));
+        card.setHolderName("IVAN IVANOV");
+        card.setExpiryDate(LocalDate.now().plusYears(3));
+        card.setStatus(CardStatus.ACTIVE);
+        card.setBalance(balanceShards > 0 ? 0L : 10000L);
+        card.setBalanceShards(balanceShards);
+        card.setUser(user);
+        return card;
+    }
+}
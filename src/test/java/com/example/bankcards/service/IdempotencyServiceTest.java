@@ -0,0 +1,157 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.card.CardRequestDto;
+import com.example.bankcards.dto.card.CardResponseDto;
+import com.example.bankcards.entity.IdempotencyRecord;
+import com.example.bankcards.exception.IdempotencyKeyReuseException;
+import com.example.bankcards.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceTest {
+    @Mock
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private IdempotencyService idempotencyService;
+    private CardResponseDto cardResponseDto;
+    private CardRequestDto request;
+    private SoftAssertions softly;
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        idempotencyService = new IdempotencyService(
+            idempotencyRecordRepository, objectMapper, transactionManager, 60, 100);
+
+        cardResponseDto = new CardResponseDto();
+        cardResponseDto.setId(1L);
+        cardResponseDto.setHolderName("Test User");
+        cardResponseDto.setExpiryDate(LocalDate.now().plusYears(1));
+
+        request = new CardRequestDto();
+        request.setCardNumber("1234567890123456");
+        request.setHolderName("Test User");
+        request.setExpiryDate(LocalDate.now().plusYears(1));
+        request.setBalance(10000L);
+    }
+
+    @Test
+    void executeWithoutKeyRunsAction() {
+        AtomicInteger calls = new AtomicInteger();
+
+        idempotencyService.execute(null, "testuser", "card.create", request, CardResponseDto.class, () -> {
+            calls.incrementAndGet();
+            return cardResponseDto;
+        });
+        idempotencyService.execute(null, "testuser", "card.create", request, CardResponseDto.class, () -> {
+            calls.incrementAndGet();
+            return cardResponseDto;
+        });
+
+        softly.assertThat(calls.get()).isEqualTo(2);
+        verify(idempotencyRecordRepository, never()).saveAndFlush(any());
+        softly.assertAll();
+    }
+
+    @Test
+    void executeReplayServedFromMemory() {
+        AtomicInteger calls = new AtomicInteger();
+        when(idempotencyRecordRepository.findByUsernameAndOperationAndIdempotencyKey(anyString(), anyString(), anyString()))
+            .thenReturn(Optional.empty());
+
+        CardResponseDto first = idempotencyService.execute("key-1", "testuser", "card.create", request, CardResponseDto.class, () -> {
+            calls.incrementAndGet();
+            return cardResponseDto;
+        });
+        CardResponseDto replay = idempotencyService.execute("key-1", "testuser", "card.create", request, CardResponseDto.class, () -> {
+            calls.incrementAndGet();
+            return cardResponseDto;
+        });
+
+        softly.assertThat(calls.get()).isEqualTo(1);
+        softly.assertThat(replay.getId()).isEqualTo(first.getId());
+        softly.assertThat(replay.getExpiryDate()).isEqualTo(first.getExpiryDate());
+        verify(idempotencyRecordRepository, times(1))
+            .findByUsernameAndOperationAndIdempotencyKey("testuser", "card.create", "key-1");
+        softly.assertAll();
+    }
+
+    @Test
+    void executeReplayServedFromStoredRecord() {
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setCreatedAt(LocalDateTime.now());
+        record.setResponseBody("{\"id\":7}");
+        when(idempotencyRecordRepository.findByUsernameAndOperationAndIdempotencyKey("testuser", "card.create", "key-2"))
+            .thenReturn(Optional.of(record));
+
+        CardResponseDto result = idempotencyService.execute("key-2", "testuser", "card.create", request, CardResponseDto.class,
+            () -> {
+                throw new AssertionError("action must not run for a stored key");
+            });
+
+        softly.assertThat(result.getId()).isEqualTo(7L);
+        verify(idempotencyRecordRepository, never()).saveAndFlush(any());
+        softly.assertAll();
+    }
+
+    @Test
+    void executeRejectsKeyReusedWithDifferentBody() {
+        when(idempotencyRecordRepository.findByUsernameAndOperationAndIdempotencyKey(anyString(), anyString(), anyString()))
+            .thenReturn(Optional.empty());
+        idempotencyService.execute("key-3", "testuser", "card.create", request, CardResponseDto.class,
+            () -> cardResponseDto);
+
+        CardRequestDto changed = new CardRequestDto();
+        changed.setCardNumber(request.getCardNumber());
+        changed.setHolderName(request.getHolderName());
+        changed.setExpiryDate(request.getExpiryDate());
+        changed.setBalance(99999L);
+
+        softly.assertThatThrownBy(() -> idempotencyService.execute("key-3", "testuser", "card.create", changed,
+                CardResponseDto.class, () -> {
+                    throw new AssertionError("action must not run for a reused key");
+                }))
+            .isInstanceOf(IdempotencyKeyReuseException.class);
+        softly.assertAll();
+    }
+
+    @Test
+    void executeRejectsStoredRecordWithDifferentRequestHash() {
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setCreatedAt(LocalDateTime.now());
+        record.setRequestHash("0".repeat(64));
+        record.setResponseBody("{\"id\":7}");
+        when(idempotencyRecordRepository.findByUsernameAndOperationAndIdempotencyKey("testuser", "card.create", "key-4"))
+            .thenReturn(Optional.of(record));
+
+        softly.assertThatThrownBy(() -> idempotencyService.execute("key-4", "testuser", "card.create", request,
+                CardResponseDto.class, () -> cardResponseDto))
+            .isInstanceOf(IdempotencyKeyReuseException.class);
+        softly.assertAll();
+    }
+}
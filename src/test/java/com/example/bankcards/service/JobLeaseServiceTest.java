@@ -0,0 +1,130 @@
+package com.example.bankcards.service;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class JobLeaseServiceTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private Supplier<List<JobLeaseService.Range>> planner;
+
+    private JobLeaseService jobLeaseService;
+    private SoftAssertions softly;
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        jobLeaseService = new JobLeaseService(jdbcTemplate, transactionManager);
+        ReflectionTestUtils.setField(jobLeaseService, "leaseSeconds", 300);
+    }
+
+    @Test
+    void claimRegistersPartitionsAndReturnsCheckpoint() {
+        stubClaim(3, "2026-01-01/42", null);
+
+        Optional<JobLeaseService.Lease> lease = jobLeaseService.claim("card-expiration", "2026-01-02", 8);
+
+        verify(jdbcTemplate).update(anyString(), eq("card-expiration"), eq(8));
+        verify(jdbcTemplate).update(contains("run_key IS DISTINCT FROM"), eq("2026-01-02"), eq("card-expiration"),
+            eq(8), eq("2026-01-02"));
+        softly.assertThat(lease).contains(
+            new JobLeaseService.Lease("card-expiration", 3, 8, "2026-01-02", "2026-01-01/42", null));
+        softly.assertAll();
+    }
+
+    // Разделы сверх плана завершаются сразу, чтобы их не захватил ни один узел
+    @Test
+    void plannedClaimOpensRunWithRangesUnderLock() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), eq("card-expiration"), eq(3),
+            eq("2026-01-02"))).thenReturn(false);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(jdbcTemplate.queryForList(contains("FOR UPDATE"), eq(String.class), eq("card-expiration"), eq(3)))
+            .thenReturn(List.of("2026-01-01", "2026-01-01", "2026-01-01"));
+        when(planner.get()).thenReturn(List.of(
+            new JobLeaseService.Range(null, "2025-12-31/7"),
+            new JobLeaseService.Range("2025-12-31/7", null)));
+        stubClaim(0, null, "2025-12-31/7");
+
+        Optional<JobLeaseService.Lease> lease = jobLeaseService.claim("card-expiration", "2026-01-02", 3, planner);
+
+        verify(jdbcTemplate).update(contains("completed = ?"), eq("2026-01-02"), isNull(), eq("2025-12-31/7"),
+            eq(false), eq("card-expiration"), eq(0));
+        verify(jdbcTemplate).update(contains("completed = ?"), eq("2026-01-02"), eq("2025-12-31/7"), isNull(),
+            eq(false), eq("card-expiration"), eq(1));
+        verify(jdbcTemplate).update(contains("completed = ?"), eq("2026-01-02"), isNull(), isNull(),
+            eq(true), eq("card-expiration"), eq(2));
+        softly.assertThat(lease).contains(
+            new JobLeaseService.Lease("card-expiration", 0, 3, "2026-01-02", null, "2025-12-31/7"));
+        softly.assertAll();
+    }
+
+    // Другой узел открыл запуск, пока этот ждал блокировку: его план не перезаписывается
+    @Test
+    void plannedClaimKeepsPlanOfRunOpenedByAnotherNode() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), eq("card-expiration"), eq(2),
+            eq("2026-01-02"))).thenReturn(false);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(jdbcTemplate.queryForList(contains("FOR UPDATE"), eq(String.class), eq("card-expiration"), eq(2)))
+            .thenReturn(List.of("2026-01-02", "2026-01-02"));
+        stubClaim(1, "2025-12-31/7", null);
+
+        Optional<JobLeaseService.Lease> lease = jobLeaseService.claim("card-expiration", "2026-01-02", 2, planner);
+
+        verify(planner, never()).get();
+        verify(jdbcTemplate, never()).update(contains("completed = ?"), any(Object[].class));
+        softly.assertThat(lease).hasValueSatisfying(
+            claimed -> softly.assertThat(claimed.checkpoint()).isEqualTo("2025-12-31/7"));
+        softly.assertAll();
+    }
+
+    @Test
+    void checkpointReportsLostLease() {
+        JobLeaseService.Lease lease = new JobLeaseService.Lease("card-expiration", 0, 8, "2026-01-02", null, null);
+        when(jdbcTemplate.update(anyString(), eq("2026-01-01/7"), eq(300), eq("card-expiration"), eq(0),
+            eq("2026-01-02"), anyString())).thenReturn(0);
+
+        softly.assertThat(jobLeaseService.checkpoint(lease, "2026-01-01/7")).isFalse();
+        softly.assertAll();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubClaim(int partition, String checkpoint, String rangeEnd) {
+        ResultSet resultSet = mock(ResultSet.class);
+        doAnswer(invocation -> {
+            when(resultSet.getInt(1)).thenReturn(partition);
+            when(resultSet.getString(2)).thenReturn(checkpoint);
+            when(resultSet.getString(3)).thenReturn(rangeEnd);
+            RowMapper<JobLeaseService.Lease> rowMapper = invocation.getArgument(1);
+            return List.of(rowMapper.mapRow(resultSet, 0));
+        }).when(jdbcTemplate).query(anyString(), any(RowMapper.class), any(), any(), any(), any(), any());
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.bankcards.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TokenRevocationServiceTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private MeterRegistry meterRegistry;
+    private TokenRevocationService tokenRevocationService;
+    private SoftAssertions softly;
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        meterRegistry = new SimpleMeterRegistry();
+        tokenRevocationService = new TokenRevocationService(jdbcTemplate, meterRegistry);
+        ReflectionTestUtils.setField(tokenRevocationService, "expectedEntries", 1000L);
+        ReflectionTestUtils.setField(tokenRevocationService, "falsePositiveRate", 0.01);
+    }
+
+    @Test
+    void isRevokedSkipsDatabaseForTokensOutsideFilter() throws Exception {
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getString(1)).thenReturn("revoked-1");
+        when(resultSet.getTimestamp(2)).thenReturn(Timestamp.from(Instant.now()));
+        doAnswer(invocation -> {
+            invocation.<RowCallbackHandler>getArgument(1).processRow(resultSet);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), eq("revoked-1"))).thenReturn(true);
+
+        tokenRevocationService.rebuild();
+
+        softly.assertThat(tokenRevocationService.isRevoked("active-1")).isFalse();
+        softly.assertThat(tokenRevocationService.isRevoked("revoked-1")).isTrue();
+        verify(jdbcTemplate, never()).queryForObject(anyString(), eq(Boolean.class), eq("active-1"));
+        softly.assertThat(meterRegistry.counter("auth.token.revocation.lookups").count()).isEqualTo(1.0);
+        softly.assertAll();
+    }
+
+    // Отзыв приходит, когда снимок таблицы уже прочитан: новый фильтр должен его содержать
+    @Test
+    void revokeDuringRebuildReachesRebuiltFilter() {
+        tokenRevocationService.rebuild();
+        doAnswer(invocation -> {
+            tokenRevocationService.revoke("token-1", 1L, Instant.now().plusSeconds(60));
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), eq("token-1"))).thenReturn(true);
+
+        tokenRevocationService.rebuild();
+
+        softly.assertThat(tokenRevocationService.isRevoked("token-1")).isTrue();
+        softly.assertThat(meterRegistry.counter("auth.token.revocation.lookups").count()).isEqualTo(1.0);
+        softly.assertAll();
+    }
+
+    @Test
+    void revokeAddsTokenToFilter() {
+        tokenRevocationService.rebuild();
+        Instant expiresAt = Instant.now().plusSeconds(60);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class), eq("token-1"))).thenReturn(true);
+
+        tokenRevocationService.revoke("token-1", 1L, expiresAt);
+
+        verify(jdbcTemplate).update(anyString(), eq("token-1"), eq(1L), eq(Timestamp.from(expiresAt)));
+        softly.assertThat(tokenRevocationService.isRevoked("token-1")).isTrue();
+        softly.assertAll();
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.UserRepository;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import java.util.Optional;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TokenVersionServiceTest {
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private CacheInvalidationBus invalidationBus;
+
+    private TokenVersionService tokenVersionService;
+    private SoftAssertions softly;
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        tokenVersionService = new TokenVersionService(userRepository, invalidationBus, 100, 30);
+    }
+
+    @Test
+    void isCurrentReadsVersionOnce() {
+        when(userRepository.findTokenVersionById(1L)).thenReturn(Optional.of(2));
+
+        softly.assertThat(tokenVersionService.isCurrent(1L, 2)).isTrue();
+        softly.assertThat(tokenVersionService.isCurrent(1L, 1)).isFalse();
+        verify(userRepository, times(1)).findTokenVersionById(1L);
+        softly.assertAll();
+    }
+
+    @Test
+    void isCurrentRejectsDeletedUser() {
+        when(userRepository.findTokenVersionById(1L)).thenReturn(Optional.empty());
+
+        softly.assertThat(tokenVersionService.isCurrent(1L, 0)).isFalse();
+        softly.assertAll();
+    }
+
+    @Test
+    void revokeEvictsCachedVersion() {
+        when(userRepository.findTokenVersionById(1L)).thenReturn(Optional.of(0), Optional.of(1));
+
+        softly.assertThat(tokenVersionService.isCurrent(1L, 0)).isTrue();
+        tokenVersionService.revoke(1L);
+
+        verify(userRepository).incrementTokenVersion(1L);
+        softly.assertThat(tokenVersionService.isCurrent(1L, 0)).isFalse();
+        softly.assertAll();
+    }
+}
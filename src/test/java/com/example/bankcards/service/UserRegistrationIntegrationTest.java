@@ -0,0 +1,105 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.user.UserRequestDto;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * Регистрация хеширует пароль вне транзакции: пока запрос ждёт в очереди хеширования и хеширует,
+ * он не держит соединение из пула. Соединение или EntityManager, привязанные к потоку запроса, видны
+ * в ресурсах TransactionSynchronizationManager; счётчик активных соединений пула не подходит, так как
+ * пул делят фоновые задачи.
+ */
+@SpringBootTest(properties = {
+    "app.bcrypt-cost=10",
+    "app.rate-limit.enabled=false"
+})
+class UserRegistrationIntegrationTest {
+    private static final EmbeddedPostgres POSTGRES = startPostgres();
+
+    @Autowired
+    private AuthService authService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoSpyBean
+    private PasswordEncoder passwordEncoder;
+
+    private SoftAssertions softly;
+
+    private static EmbeddedPostgres startPostgres() {
+        try {
+            EmbeddedPostgres postgres = EmbeddedPostgres.start();
+            try (Connection connection = postgres.getPostgresDatabase().getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("CREATE EXTENSION IF NOT EXISTS pgcrypto");
+            }
+            return postgres;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> POSTGRES.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        POSTGRES.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        jdbcTemplate.update("DELETE FROM users WHERE username = 'registration_user'");
+    }
+
+    @Test
+    void registerHashesPasswordWithoutTransactionOrConnection() {
+        List<Boolean> transactionActive = new ArrayList<>();
+        List<Boolean> resourcesBound = new ArrayList<>();
+        doAnswer(invocation -> {
+            transactionActive.add(TransactionSynchronizationManager.isActualTransactionActive());
+            resourcesBound.add(!TransactionSynchronizationManager.getResourceMap().isEmpty());
+            return invocation.callRealMethod();
+        }).when(passwordEncoder).encode(any());
+        UserRequestDto request = new UserRequestDto();
+        request.setUsername("registration_user");
+        request.setPassword("password123");
+
+        authService.register(request);
+
+        softly.assertThat(transactionActive).containsExactly(false);
+        softly.assertThat(resourcesBound).containsExactly(false);
+        softly.assertThat(jdbcTemplate.queryForObject(
+            "SELECT count(*) FROM users WHERE username = 'registration_user'", Integer.class)).isEqualTo(1);
+        softly.assertAll();
+    }
+}
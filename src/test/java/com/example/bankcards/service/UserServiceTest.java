@@ -29,6 +29,9 @@ class UserServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private TokenVersionService tokenVersionService;
+
     @InjectMocks
     private UserService userService;
 
@@ -87,6 +90,17 @@ class UserServiceTest {
         userService.deleteUser(1L);
 
         verify(userRepository).deleteById(1L);
+        verify(tokenVersionService).evictAfterCommit(1L);
+        softly.assertAll();
+    }
+
+    @Test
+    void revokeTokensUserExists() {
+        when(userRepository.existsById(anyLong())).thenReturn(true);
+
+        userService.revokeTokens(1L);
+
+        verify(tokenVersionService).revoke(1L);
         softly.assertAll();
     }
 
@@ -0,0 +1,89 @@
+package com.example.bankcards.util;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.TimeUnit;
+
+class KeyedRateLimiterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long START = 1_000 * SECOND;
+
+    private KeyedRateLimiter limiter;
+    private SoftAssertions softly;
+
+    @BeforeEach
+    void setUp() {
+        softly = new SoftAssertions();
+        limiter = new KeyedRateLimiter(3, 1.0);
+    }
+
+    @Test
+    void burstEqualsCapacity() {
+        KeyedRateLimiter.Decision first = limiter.tryAcquire("user:a", START);
+        KeyedRateLimiter.Decision second = limiter.tryAcquire("user:a", START);
+        KeyedRateLimiter.Decision third = limiter.tryAcquire("user:a", START);
+        KeyedRateLimiter.Decision fourth = limiter.tryAcquire("user:a", START);
+
+        softly.assertThat(first).isEqualTo(new KeyedRateLimiter.Decision(true, 3, 2, 0L, SECOND));
+        softly.assertThat(second).isEqualTo(new KeyedRateLimiter.Decision(true, 3, 1, 0L, 2 * SECOND));
+        softly.assertThat(third).isEqualTo(new KeyedRateLimiter.Decision(true, 3, 0, 0L, 3 * SECOND));
+        softly.assertThat(fourth).isEqualTo(new KeyedRateLimiter.Decision(false, 3, 0, SECOND, 3 * SECOND));
+        softly.assertAll();
+    }
+
+    @Test
+    void refillIntervalIsHonored() {
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire("user:a", START);
+        }
+
+        KeyedRateLimiter.Decision early = limiter.tryAcquire("user:a", START + SECOND / 4);
+        KeyedRateLimiter.Decision refilled = limiter.tryAcquire("user:a", START + SECOND);
+        KeyedRateLimiter.Decision again = limiter.tryAcquire("user:a", START + SECOND);
+
+        softly.assertThat(early.allowed()).isFalse();
+        softly.assertThat(early.retryAfterNanos()).isEqualTo(SECOND * 3 / 4);
+        softly.assertThat(refilled).isEqualTo(new KeyedRateLimiter.Decision(true, 3, 0, 0L, 3 * SECOND));
+        softly.assertThat(again.allowed()).isFalse();
+        softly.assertThat(again.retryAfterNanos()).isEqualTo(SECOND);
+        softly.assertAll();
+    }
+
+    // После долгого простоя корзина полна, но не сверх capacity
+    @Test
+    void idleBucketRefillsOnlyUpToCapacity() {
+        limiter.tryAcquire("user:a", START);
+
+        KeyedRateLimiter.Decision afterIdle = limiter.tryAcquire("user:a", START + 100 * SECOND);
+
+        softly.assertThat(afterIdle).isEqualTo(new KeyedRateLimiter.Decision(true, 3, 2, 0L, SECOND));
+        softly.assertAll();
+    }
+
+    @Test
+    void keysHaveSeparateBuckets() {
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire("user:a", START);
+        }
+
+        softly.assertThat(limiter.tryAcquire("user:a", START).allowed()).isFalse();
+        softly.assertThat(limiter.tryAcquire("ip:10.0.0.1", START).remaining()).isEqualTo(2);
+        softly.assertThat(limiter.size()).isEqualTo(2);
+        softly.assertAll();
+    }
+
+    @Test
+    void evictIdleRemovesOnlyFullBuckets() {
+        long now = System.nanoTime();
+        limiter.tryAcquire("ip:10.0.0.1", now - 10 * SECOND);
+        limiter.tryAcquire("ip:10.0.0.2", now);
+
+        int evicted = limiter.evictIdle(5 * SECOND);
+
+        softly.assertThat(evicted).isEqualTo(1);
+        softly.assertThat(limiter.size()).isEqualTo(1);
+        softly.assertThat(limiter.tryAcquire("ip:10.0.0.2", now).remaining()).isEqualTo(1);
+        softly.assertAll();
+    }
+}